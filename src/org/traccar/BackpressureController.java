@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import org.traccar.helper.Log;
+
+/**
+ * Suspends reading from tracker connections while writer queue and bus
+ * backlog are above high-water mark and resumes it below low-water mark
+ *
+ * Unread data stays in socket buffers, so TCP flow control makes devices
+ * keep the backlog instead of the server heap.
+ */
+public class BackpressureController {
+
+    private final List<TrackerServer> servers;
+    private final PositionWriter positionWriter;
+    private final int highWater;
+    private final int lowWater;
+    private final long checkInterval;
+
+    private final AtomicBoolean suspended = new AtomicBoolean();
+
+    /**
+     * Position bus, its backlog is added to writer queue (optional)
+     */
+    private PositionBus positionBus;
+
+    public void setPositionBus(PositionBus positionBus) {
+        this.positionBus = positionBus;
+    }
+
+    public BackpressureController(
+            List<TrackerServer> servers, PositionWriter positionWriter,
+            int highWater, int lowWater, long checkInterval) {
+        this.servers = servers;
+        this.positionWriter = positionWriter;
+        this.highWater = highWater;
+        this.lowWater = lowWater;
+        this.checkInterval = checkInterval;
+    }
+
+    public boolean isSuspended() {
+        return suspended.get();
+    }
+
+    private long getDepth() {
+        long depth = 0;
+        if (positionWriter != null) {
+            depth += positionWriter.getQueueSize();
+        }
+        if (positionBus != null) {
+            depth += positionBus.getBacklog();
+        }
+        return depth;
+    }
+
+    /**
+     * Check queue depth, called after every queued position
+     */
+    public void check() {
+        if (!suspended.get() && getDepth() >= highWater
+                && suspended.compareAndSet(false, true)) {
+            Log.warning("Queued positions above " + highWater + ", suspending reads");
+            setReadable(false);
+            scheduleResumeCheck();
+        }
+    }
+
+    /**
+     * Reads are suspended, so queue depth is polled until it drops
+     */
+    private void scheduleResumeCheck() {
+        GlobalTimer.getTimer().newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                if (getDepth() <= lowWater) {
+                    if (suspended.compareAndSet(true, false)) {
+                        Log.info("Queued positions below " + lowWater + ", resuming reads");
+                        setReadable(true);
+                    }
+                } else {
+                    scheduleResumeCheck();
+                }
+            }
+        }, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void setReadable(boolean readable) {
+        for (TrackerServer server : servers) {
+            server.setReadable(readable);
+        }
+    }
+
+}
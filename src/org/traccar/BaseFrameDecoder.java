@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+
+/**
+ * Base class for protocol frame decoders
+ *
+ * Frames are returned as slices of received data instead of copies. It is
+ * safe because Netty 3 frame decoder accumulates data by wrapping received
+ * buffers and never writes into them again. Frame readers have own indexes
+ * and frames start at index 0 same as copies.
+ */
+public abstract class BaseFrameDecoder extends FrameDecoder {
+
+    /**
+     * Read frame of given length from current position without copying
+     */
+    protected static ChannelBuffer readFrame(ChannelBuffer buf, int length) {
+        return buf.readSlice(length);
+    }
+
+    /**
+     * Index of byte in [from, to), -1 if not found
+     */
+    public static int indexOf(ChannelBuffer buf, int from, int to, byte value) {
+        return buf.indexOf(from, to, value);
+    }
+
+    /**
+     * Index of byte sequence starting in [from, to - length], -1 if not found
+     */
+    public static int indexOf(ChannelBuffer buf, int from, int to, byte[] pattern) {
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            i = buf.indexOf(i, last + 1, pattern[0]);
+            if (i < 0) {
+                return -1;
+            }
+            int j = 1;
+            while (j < pattern.length && buf.getByte(i + j) == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -16,13 +16,20 @@
 package org.traccar;
 
 import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 import org.jboss.netty.handler.logging.LoggingHandler;
 import org.jboss.netty.handler.timeout.IdleStateHandler;
 import org.traccar.geocode.ReverseGeocoder;
 import org.traccar.helper.Log;
+import org.traccar.http.PositionForwarder;
 import org.traccar.model.DataManager;
 
 /**
@@ -32,9 +39,19 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
 
     private TrackerServer server;
     private DataManager dataManager;
+    private PositionWriter positionWriter;
+    private PositionForwarder positionForwarder;
+    private LatestPositionTracker latestPositionTracker;
+    private BackpressureController backpressureController;
+    private DuplicateFilterHandler duplicateFilterHandler;
+    private FleetState fleetState;
+    private PositionBus positionBus;
+    private PositionSpool databaseSpool;
     private Boolean loggerEnabled;
+    private CaptureHandler captureHandler;
     private Integer resetDelay;
     private ReverseGeocoder reverseGeocoder;
+    private ExecutionHandler executionHandler;
 
     /**
      * Open channel handler
@@ -50,6 +67,29 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
         @Override
         public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
             server.getChannelGroup().add(e.getChannel());
+
+            // New connections start suspended while storage catches up
+            if (backpressureController != null && backpressureController.isSuspended()) {
+                e.getChannel().setReadable(false);
+                if (!backpressureController.isSuspended()) {
+                    e.getChannel().setReadable(true);
+                }
+            }
+        }
+
+        /**
+         * Worker pool resumes reading when channel memory drops, that must
+         * not override storage backpressure, so resume requests are ignored
+         * while it is suspended (controller resumes channels itself)
+         */
+        @Override
+        public void setInterestOpsRequested(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+            if (backpressureController != null && backpressureController.isSuspended()
+                    && (((Integer) e.getValue()) & Channel.OP_READ) != 0) {
+                e.getFuture().setSuccess();
+                return;
+            }
+            super.setInterestOpsRequested(ctx, e);
         }
     }
 
@@ -61,6 +101,9 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
         @Override
         public void log(ChannelEvent e) {
             if (e instanceof MessageEvent) {
+                if (!Log.isDebugEnabled() || !Log.sample("message")) {
+                    return;
+                }
                 MessageEvent event = (MessageEvent) e;
                 StringBuilder msg = new StringBuilder();
 
@@ -86,13 +129,63 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
     public BasePipelineFactory(ServerManager serverManager, TrackerServer server, String protocol) {
         this.server = server;
         dataManager = serverManager.getDataManager();
+        positionWriter = serverManager.getPositionWriter();
+        positionForwarder = serverManager.getPositionForwarder();
+        latestPositionTracker = serverManager.getLatestPositionTracker();
+        backpressureController = serverManager.getBackpressureController();
+        duplicateFilterHandler = serverManager.getDuplicateFilterHandler();
+        fleetState = serverManager.getFleetState();
+        positionBus = serverManager.getPositionBus();
+        databaseSpool = serverManager.getDatabaseSpool();
         loggerEnabled = serverManager.isLoggerEnabled();
         reverseGeocoder = serverManager.getReverseGeocoder();
 
+        if (serverManager.getTrafficCapture() != null && Boolean.valueOf(
+                TrackerServer.getProperty(serverManager.getProperties(), protocol, "capture.enable", "false"))) {
+            captureHandler = new CaptureHandler(serverManager.getTrafficCapture());
+        }
+
         String resetDelayProperty = serverManager.getProperties().getProperty(protocol + ".resetDelay");
         if (resetDelayProperty != null) {
             resetDelay = Integer.valueOf(resetDelayProperty);
         }
+
+        initExecutionHandler(serverManager.getProperties(), protocol);
+    }
+
+    /**
+     * Worker pool for everything after framing, ordered per channel,
+     * reading stops while channel or pool memory limit is exceeded
+     */
+    private void initExecutionHandler(Properties properties, final String protocol) {
+        if (!Boolean.valueOf(TrackerServer.getProperty(properties, protocol, "executor.enable", "false"))) {
+            return;
+        }
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, protocol + "-executor-" + index.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        executionHandler = new ExecutionHandler(new OrderedMemoryAwareThreadPoolExecutor(
+                Integer.valueOf(TrackerServer.getProperty(properties, protocol, "executor.threads", "16")),
+                Long.valueOf(TrackerServer.getProperty(properties, protocol, "executor.channelMemory", "1048576")),
+                Long.valueOf(TrackerServer.getProperty(properties, protocol, "executor.totalMemory", "67108864")),
+                Long.valueOf(TrackerServer.getProperty(properties, protocol, "executor.keepAlive", "60000")),
+                TimeUnit.MILLISECONDS, threadFactory));
+    }
+
+    /**
+     * Stop worker pool, called when server is stopped
+     */
+    public void release() {
+        if (executionHandler != null) {
+            executionHandler.releaseExternalResources();
+        }
     }
 
     protected DataManager getDataManager() {
@@ -108,14 +201,29 @@ public abstract class BasePipelineFactory implements ChannelPipelineFactory {
             pipeline.addLast("idleHandler", new IdleStateHandler(GlobalTimer.getTimer(), resetDelay, 0, 0));
         }
         pipeline.addLast("openHandler", new OpenChannelHandler(server));
+        if (captureHandler != null) {
+            pipeline.addLast("capture", captureHandler);
+        }
         if (loggerEnabled) {
             pipeline.addLast("logger", new StandardLoggingHandler());
         }
+        String lastCommon = pipeline.getNames().get(pipeline.getNames().size() - 1);
         addSpecificHandlers(pipeline);
+        if (executionHandler != null) {
+            if (pipeline.get("frameDecoder") != null) {
+                pipeline.addAfter("frameDecoder", "executor", executionHandler);
+            } else {
+                pipeline.addAfter(lastCommon, "executor", executionHandler);
+            }
+        }
+        if (duplicateFilterHandler != null) {
+            pipeline.addLast("duplicateFilter", duplicateFilterHandler);
+        }
         if (reverseGeocoder != null) {
             pipeline.addLast("geocoder", new ReverseGeocoderHandler(reverseGeocoder));
         }
-        pipeline.addLast("handler", new TrackerEventHandler(dataManager));
+        pipeline.addLast("handler", new TrackerEventHandler(dataManager, positionWriter, positionForwarder,
+                latestPositionTracker, backpressureController, fleetState, positionBus, databaseSpool));
         return pipeline;
     }
 
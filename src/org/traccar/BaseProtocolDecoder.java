@@ -25,9 +25,11 @@ public abstract class BaseProtocolDecoder extends OneToOneDecoder {
 
     private ServerManager serverManager;
     private DataManager dataManager;
+    private DeviceProvisioner deviceProvisioner;
 
     public final void setDataManager(DataManager dataManager) {
         this.dataManager = dataManager;
+        deviceProvisioner = new DeviceProvisioner(dataManager, 1, 0, 0);
     }
 
     public final DataManager getDataManager() {
@@ -42,6 +44,20 @@ public abstract class BaseProtocolDecoder extends OneToOneDecoder {
         return serverManager;
     }
 
+    /**
+     * Find device id, null if device is unknown
+     */
+    public Long getDeviceId(String imei) {
+        return deviceProvisioner.getDeviceId(imei);
+    }
+
+    /**
+     * Find device id or create new device, null if creation failed
+     */
+    public Long getOrCreateDeviceId(String imei) {
+        return deviceProvisioner.getOrCreateDeviceId(imei);
+    }
+
     public BaseProtocolDecoder() {
     }
 
@@ -49,6 +65,10 @@ public abstract class BaseProtocolDecoder extends OneToOneDecoder {
         if (serverManager != null) {
             this.serverManager = serverManager;
             dataManager = serverManager.getDataManager();
+            deviceProvisioner = serverManager.getDeviceProvisioner();
+        }
+        if (deviceProvisioner == null) {
+            deviceProvisioner = new DeviceProvisioner(dataManager, 1, 0, 0);
         }
     }
 
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.DatagramChannel;
+import org.traccar.helper.Log;
+
+/**
+ * Writes received raw data to traffic capture before any decoding
+ */
+@ChannelHandler.Sharable
+public class CaptureHandler extends SimpleChannelUpstreamHandler {
+
+    private final TrafficCapture capture;
+
+    public CaptureHandler(TrafficCapture capture) {
+        this.capture = capture;
+    }
+
+    private void write(Channel channel, byte type, SocketAddress remoteAddress, ChannelBuffer payload) {
+        if (!(remoteAddress instanceof InetSocketAddress) || !(channel.getLocalAddress() instanceof InetSocketAddress)
+                || !capture.isSampled((InetSocketAddress) remoteAddress)) {
+            return;
+        }
+        try {
+            capture.write(System.currentTimeMillis(), type,
+                    channel instanceof DatagramChannel ? TrafficCapture.TRANSPORT_UDP : TrafficCapture.TRANSPORT_TCP,
+                    ((InetSocketAddress) channel.getLocalAddress()).getPort(),
+                    (InetSocketAddress) remoteAddress, payload);
+        } catch (IOException error) {
+            Log.warning("Traffic capture failed", error);
+        }
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof ChannelBuffer) {
+            write(e.getChannel(), TrafficCapture.TYPE_DATA, e.getRemoteAddress(), (ChannelBuffer) e.getMessage());
+        }
+        super.messageReceived(ctx, e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        if (!(e.getChannel() instanceof DatagramChannel)) {
+            write(e.getChannel(), TrafficCapture.TYPE_CLOSE, e.getChannel().getRemoteAddress(), null);
+        }
+        super.channelClosed(ctx, e);
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.traccar.helper.Log;
+import org.traccar.model.DataManager;
+import org.traccar.model.Device;
+
+/**
+ * Resolves device ids and creates unknown devices
+ *
+ * Concurrent requests for the same IMEI share one pending request, new
+ * devices are inserted in batches by a single thread.
+ */
+public class DeviceProvisioner {
+
+    private final DataManager dataManager;
+    private final int batchSize;
+    private final long maxDelay;
+    private final long timeout;
+
+    private final ConcurrentMap<String, Request> pending = new ConcurrentHashMap<String, Request>();
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+    private Thread thread;
+    private volatile boolean running;
+
+    public DeviceProvisioner(DataManager dataManager, int batchSize, long maxDelay, long timeout) {
+        this.dataManager = dataManager;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        this.timeout = timeout;
+    }
+
+    private static class Request {
+
+        private final String imei;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Long deviceId;
+
+        public Request(String imei) {
+            this.imei = imei;
+        }
+
+    }
+
+    /**
+     * Find device id, null if device is unknown
+     */
+    public Long getDeviceId(String imei) {
+        try {
+            Device device = dataManager.getDeviceByImei(imei);
+            if (device != null) {
+                return device.getId();
+            }
+        } catch (Exception error) {
+            Log.warning(error);
+        }
+        return null;
+    }
+
+    /**
+     * Find device id or create new device, null if creation failed
+     */
+    public Long getOrCreateDeviceId(String imei) {
+
+        Long deviceId = getDeviceId(imei);
+        if (deviceId != null || imei == null) {
+            return deviceId;
+        }
+
+        Request request = new Request(imei);
+        Request existing = pending.putIfAbsent(imei, request);
+        if (existing != null) {
+            request = existing;
+        } else {
+            Log.info("Unknown device - " + imei + " creating new...");
+            if (running) {
+                queue.add(request);
+            } else {
+                process(request);
+            }
+        }
+
+        try {
+            if (!request.done.await(timeout, TimeUnit.MILLISECONDS)) {
+                Log.warning("Device creation timeout - " + imei);
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+        return request.deviceId;
+    }
+
+    private void process(Request request) {
+        List<Request> batch = new ArrayList<Request>(1);
+        batch.add(request);
+        process(batch);
+    }
+
+    private void process(List<Request> batch) {
+        // Skip devices created by a request that completed meanwhile
+        List<String> imeis = new ArrayList<String>(batch.size());
+        for (Request request : batch) {
+            if (getDeviceId(request.imei) == null) {
+                imeis.add(request.imei);
+            }
+        }
+        // Data manager checks database again, cache can miss existing devices
+        Map<String, Long> created = new HashMap<String, Long>();
+        if (!imeis.isEmpty()) {
+            try {
+                List<Device> devices = dataManager.addDevices(imeis);
+                if (devices != null) {
+                    for (Device device : devices) {
+                        created.put(device.getImei(), device.getId());
+                    }
+                }
+            } catch (Exception error) {
+                Log.warning("Failed to add " + imeis.size() + " devices", error);
+            }
+        }
+        for (Request request : batch) {
+            request.deviceId = created.get(request.imei);
+            if (request.deviceId == null) {
+                request.deviceId = getDeviceId(request.imei);
+            }
+            if (request.deviceId != null) {
+                Log.info("Created device - " + request.imei + " OK");
+            }
+            pending.remove(request.imei);
+            request.done.countDown();
+        }
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<Request> batch = new ArrayList<Request>(batchSize);
+                while (running) {
+                    try {
+                        Request first = queue.poll(1, TimeUnit.SECONDS);
+                        if (first == null) {
+                            continue;
+                        }
+                        batch.add(first);
+
+                        // Give concurrent logins a chance to join the batch
+                        long deadline = System.currentTimeMillis() + maxDelay;
+                        while (batch.size() < batchSize) {
+                            long delay = deadline - System.currentTimeMillis();
+                            Request next = delay > 0 ? queue.poll(delay, TimeUnit.MILLISECONDS) : queue.poll();
+                            if (next == null) {
+                                break;
+                            }
+                            batch.add(next);
+                        }
+                    } catch (InterruptedException error) {
+                        if (batch.isEmpty()) {
+                            break;
+                        }
+                    }
+                    process(batch);
+                    batch.clear();
+                }
+            }
+        }, "device-provisioner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+
+        // Complete requests queued before shutdown
+        List<Request> batch = new ArrayList<Request>();
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            process(batch);
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+import org.traccar.model.Position;
+
+/**
+ * Drops positions retransmitted by devices
+ *
+ * Each device keeps a small ring of fingerprints of recent positions
+ * (time, location, validity and attributes), a position with known
+ * fingerprint is a duplicate. Attributes are included so that alarm and
+ * status messages repeating the last fix are kept.
+ */
+@ChannelHandler.Sharable
+public class DuplicateFilterHandler extends OneToOneDecoder {
+
+    private final int windowSize;
+    private final ConcurrentMap<Long, Window> windows = new ConcurrentHashMap<Long, Window>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public DuplicateFilterHandler(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Ring of recent fingerprints for one device
+     */
+    private static class Window {
+
+        private final long[] fingerprints;
+        private int next;
+        private int size;
+
+        public Window(int windowSize) {
+            fingerprints = new long[windowSize];
+        }
+
+        /**
+         * Add fingerprint, returns false if it's already present
+         */
+        public synchronized boolean add(long fingerprint) {
+            for (int i = 0; i < size; i++) {
+                if (fingerprints[i] == fingerprint) {
+                    return false;
+                }
+            }
+            fingerprints[next] = fingerprint;
+            next = (next + 1) % fingerprints.length;
+            if (size < fingerprints.length) {
+                size++;
+            }
+            return true;
+        }
+
+    }
+
+    private static long mix(long hash, long value) {
+        hash ^= value;
+        hash *= 0x9e3779b97f4a7c15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static long fingerprint(Position position) {
+        long hash = mix(17, position.getTimeMillis());
+        if (position.hasLatitude()) {
+            hash = mix(hash, Double.doubleToLongBits(position.getLatitudeValue()));
+        }
+        if (position.hasLongitude()) {
+            hash = mix(hash, Double.doubleToLongBits(position.getLongitudeValue()));
+        }
+        hash = mix(hash, !position.hasValid() ? 2 : position.isValid() ? 1 : 0);
+        if (position.getAttributes() != null) {
+            hash = mix(hash, position.getAttributes().hash());
+        } else if (position.getExtendedInfo() != null) {
+            hash = mix(hash, position.getExtendedInfo().hashCode());
+        }
+        return hash;
+    }
+
+    /**
+     * Check position, positions without device or time are never duplicates
+     */
+    public boolean isDuplicate(Position position) {
+        if (position.getDeviceId() == null || !position.hasTime()) {
+            return false;
+        }
+        Window window = windows.get(position.getDeviceId());
+        if (window == null) {
+            window = new Window(windowSize);
+            Window existing = windows.putIfAbsent(position.getDeviceId(), window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        if (window.add(fingerprint(position))) {
+            return false;
+        }
+        dropped.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+
+        if (msg instanceof Position) {
+            return isDuplicate((Position) msg) ? null : msg;
+        } else if (msg instanceof List) {
+            List<Position> positions = (List<Position>) msg;
+            List<Position> result = new ArrayList<Position>(positions.size());
+            for (Position position : positions) {
+                if (position == null || !isDuplicate(position)) {
+                    result.add(position);
+                }
+            }
+            return result.isEmpty() ? null : result;
+        }
+
+        return msg;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.traccar.model.Position;
+
+/**
+ * Last known position of every device
+ *
+ * Every change gets a new version number, changes since given version are
+ * found through a version index without scanning the whole fleet.
+ */
+public class FleetState {
+
+    /**
+     * Immutable table row
+     */
+    public static class Entry {
+
+        private final Position position;
+        private final long version;
+
+        public Entry(Position position, long version) {
+            this.position = position;
+            this.version = version;
+        }
+
+        public Position getPosition() {
+            return position;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+    }
+
+    /**
+     * Change notification, called on the thread that updated the table
+     */
+    public interface Listener {
+        void onUpdate(Entry entry);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private final ConcurrentMap<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+    private final ConcurrentNavigableMap<Long, Long> versions = new ConcurrentSkipListMap<Long, Long>();
+    private final Object lock = new Object();
+    private volatile long version;
+
+    /**
+     * Latest version, all changes up to it are already in the version index
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static boolean isNewer(Position position, Position current) {
+        if (!position.hasTime() || !current.hasTime()) {
+            return true;
+        }
+        return position.getTimeMillis() >= current.getTimeMillis();
+    }
+
+    /**
+     * Store position unless device already has a newer one
+     */
+    public boolean update(Position position) {
+        if (position == null || position.getDeviceId() == null) {
+            return false;
+        }
+        Long deviceId = position.getDeviceId();
+
+        // Version is published only after entry is indexed, so readers never see a gap
+        Entry entry;
+        synchronized (lock) {
+            Entry current = entries.get(deviceId);
+            if (current != null && !isNewer(position, current.getPosition())) {
+                return false;
+            }
+            entry = new Entry(position, version + 1);
+            entries.put(deviceId, entry);
+            versions.put(entry.getVersion(), deviceId);
+            if (current != null) {
+                versions.remove(current.getVersion());
+            }
+            version = entry.getVersion();
+        }
+
+        for (Listener listener : listeners) {
+            listener.onUpdate(entry);
+        }
+        return true;
+    }
+
+    public Entry get(Long deviceId) {
+        return entries.get(deviceId);
+    }
+
+    /**
+     * Entries changed after given version in version order
+     */
+    public List<Entry> getChangedSince(long since) {
+        List<Entry> result = new ArrayList<Entry>();
+        for (Map.Entry<Long, Long> item : versions.tailMap(since, false).entrySet()) {
+            // Skip index items replaced during iteration
+            Entry entry = entries.get(item.getValue());
+            if (entry != null && entry.getVersion() == item.getKey()) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+}
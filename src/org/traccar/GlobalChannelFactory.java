@@ -15,38 +15,123 @@
  */
 package org.traccar;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.socket.DatagramChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramWorkerPool;
+import org.jboss.netty.channel.socket.nio.NioServerBossPool;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.util.ThreadNameDeterminer;
+import org.jboss.netty.util.ThreadRenamingRunnable;
 
+/**
+ * Shared I/O threads of all servers
+ *
+ * Servers share one boss and worker pool unless protocol is listed in
+ * "io.dedicated", then it gets own pool sized by "protocol.io.workerThreads".
+ * Thread counts of 0 use Netty default of twice the number of cores.
+ */
 public class GlobalChannelFactory {
 
+    private static Properties properties = new Properties();
+
     private static ChannelFactory channelFactory = null;
     private static DatagramChannelFactory datagramChannelFactory = null;
+    private static final Map<String, ChannelFactory> dedicatedFactories = new HashMap<String, ChannelFactory>();
+    private static final Set<String> dedicatedProtocols = new HashSet<String>();
+
+    /**
+     * Set thread model options, has to be called before servers are created
+     */
+    public static synchronized void setProperties(Properties newProperties) {
+        properties = newProperties;
+        dedicatedProtocols.clear();
+        for (String protocol : properties.getProperty("io.dedicated", "").split(",")) {
+            if (!protocol.trim().isEmpty()) {
+                dedicatedProtocols.add(protocol.trim());
+            }
+        }
 
-    public static void release() {
+        // Keep names given by thread factories
+        ThreadRenamingRunnable.setThreadNameDeterminer(ThreadNameDeterminer.CURRENT);
+    }
+
+    public static synchronized void release() {
         if (channelFactory != null) {
             channelFactory.releaseExternalResources();
         }
         if (datagramChannelFactory != null) {
             datagramChannelFactory.releaseExternalResources();
         }
+        for (ChannelFactory factory : dedicatedFactories.values()) {
+            factory.releaseExternalResources();
+        }
         channelFactory = null;
         datagramChannelFactory = null;
+        dedicatedFactories.clear();
+    }
+
+    private static Executor createExecutor(final String prefix) {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, prefix + "-" + index.getAndIncrement());
+            }
+        });
+    }
+
+    private static int getThreadCount(String value) {
+        int count = Integer.valueOf(value);
+        return count > 0 ? count : Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    private static ChannelFactory createFactory(String name, int workerCount) {
+        return new NioServerSocketChannelFactory(
+                new NioServerBossPool(createExecutor(name + "-boss"),
+                        Integer.valueOf(properties.getProperty("io.bossThreads", "1"))),
+                new NioWorkerPool(createExecutor(name + "-worker"), workerCount));
     }
 
-    public static ChannelFactory getFactory() {
+    public static synchronized ChannelFactory getFactory() {
         if (channelFactory == null) {
-            channelFactory = new NioServerSocketChannelFactory();
+            channelFactory = createFactory("io", getThreadCount(properties.getProperty("io.workerThreads", "0")));
         }
         return channelFactory;
     }
-    
-    public static DatagramChannelFactory getDatagramFactory() {
+
+    /**
+     * Factory for given protocol, dedicated or shared
+     */
+    public static synchronized ChannelFactory getFactory(String protocol) {
+        if (!dedicatedProtocols.contains(protocol)) {
+            return getFactory();
+        }
+        ChannelFactory factory = dedicatedFactories.get(protocol);
+        if (factory == null) {
+            factory = createFactory(protocol, getThreadCount(properties.getProperty(
+                    protocol + ".io.workerThreads", properties.getProperty("io.workerThreads", "0"))));
+            dedicatedFactories.put(protocol, factory);
+        }
+        return factory;
+    }
+
+    public static synchronized DatagramChannelFactory getDatagramFactory() {
         if (datagramChannelFactory == null) {
-            datagramChannelFactory = new NioDatagramChannelFactory();
+            datagramChannelFactory = new NioDatagramChannelFactory(new NioDatagramWorkerPool(
+                    createExecutor("io-datagram"),
+                    getThreadCount(properties.getProperty("io.datagramThreads", "0"))));
         }
         return datagramChannelFactory;
     }
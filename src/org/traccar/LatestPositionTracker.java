@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.traccar.helper.Log;
+import org.traccar.model.DataManager;
+import org.traccar.model.Position;
+
+/**
+ * Keeps newest position per device and flushes latest position pointers
+ * periodically as one batch
+ */
+public class LatestPositionTracker {
+
+    private final DataManager dataManager;
+    private final long flushInterval;
+
+    private final ConcurrentMap<Long, Entry> latest = new ConcurrentHashMap<Long, Entry>();
+
+    private Thread thread;
+    private volatile boolean running;
+
+    public LatestPositionTracker(DataManager dataManager, long flushInterval) {
+        this.dataManager = dataManager;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Immutable latest position reference
+     */
+    private static class Entry {
+
+        private final long positionId;
+        private final long time;
+        private final boolean dirty;
+
+        public Entry(long positionId, long time, boolean dirty) {
+            this.positionId = positionId;
+            this.time = time;
+            this.dirty = dirty;
+        }
+
+        public boolean isNewer(Entry other) {
+            return time > other.time || time == other.time && positionId > other.positionId;
+        }
+
+    }
+
+    /**
+     * Store entry if it is newer than current one, returns null for late fixes
+     */
+    private Entry remember(Position position) {
+        if (position == null || position.getId() == null || position.getDeviceId() == null) {
+            return null;
+        }
+        long time = position.hasTime() ? position.getTimeMillis() : System.currentTimeMillis();
+        Entry entry = new Entry(position.getId(), time, true);
+
+        while (true) {
+            Entry current = latest.putIfAbsent(position.getDeviceId(), entry);
+            if (current == null) {
+                return entry;
+            }
+            if (!entry.isNewer(current)) {
+                return null;
+            }
+            if (latest.replace(position.getDeviceId(), current, entry)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Remember position if it is newer than current one, returns false for late fixes
+     */
+    public boolean update(Position position) {
+        Entry entry = remember(position);
+        if (entry == null) {
+            return false;
+        }
+
+        // Without flush interval only pointer of this device is written
+        if (flushInterval <= 0) {
+            write(Collections.singletonMap(position.getDeviceId(), entry));
+        }
+        return true;
+    }
+
+    public void update(List<Position> positions) {
+        Map<Long, Entry> updated = new HashMap<Long, Entry>();
+        for (Position position : positions) {
+            Entry entry = remember(position);
+            if (entry != null) {
+                updated.put(position.getDeviceId(), entry);
+            }
+        }
+        if (flushInterval <= 0 && !updated.isEmpty()) {
+            write(updated);
+        }
+    }
+
+    /**
+     * Latest known position id for device
+     */
+    public Long getPositionId(Long deviceId) {
+        Entry entry = latest.get(deviceId);
+        return entry != null ? entry.positionId : null;
+    }
+
+    /**
+     * Write given pointers and mark them clean, entries replaced meanwhile stay dirty
+     */
+    private void write(Map<Long, Entry> entries) {
+        Map<Long, Long> batch = new HashMap<Long, Long>();
+        for (Map.Entry<Long, Entry> item : entries.entrySet()) {
+            batch.put(item.getKey(), item.getValue().positionId);
+        }
+
+        try {
+            dataManager.updateLatestPositions(batch);
+        } catch (Exception error) {
+            Log.warning("Failed to update " + batch.size() + " latest positions", error);
+            return;
+        }
+
+        for (Map.Entry<Long, Entry> item : entries.entrySet()) {
+            Entry entry = item.getValue();
+            latest.replace(item.getKey(), entry, new Entry(entry.positionId, entry.time, false));
+        }
+    }
+
+    /**
+     * Write all changed pointers
+     */
+    public void flush() {
+        Map<Long, Entry> dirty = new HashMap<Long, Entry>();
+        for (Map.Entry<Long, Entry> item : latest.entrySet()) {
+            if (item.getValue().dirty) {
+                dirty.put(item.getKey(), item.getValue());
+            }
+        }
+        if (!dirty.isEmpty()) {
+            write(dirty);
+        }
+    }
+
+    public void start() {
+        if (flushInterval <= 0) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        Thread.sleep(flushInterval);
+                    } catch (InterruptedException error) {
+                        break;
+                    }
+                    flush();
+                }
+            }
+        }, "latest-position");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        flush();
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import org.traccar.helper.Log;
+import org.traccar.model.Position;
+
+/**
+ * Ring buffer between network handlers and position consumers
+ *
+ * Publishers claim slots in a pre-allocated ring, every consumer reads the
+ * whole ring on its own thread with its own sequence. A slot is reused only
+ * after all consumers have passed it, failures of one consumer don't affect
+ * the others. Idle consumers spin briefly and then park until a publisher
+ * wakes them up.
+ */
+public class PositionBus {
+
+    /**
+     * Batch handler, called on consumer thread
+     */
+    public interface Consumer {
+        void consume(List<Position> positions) throws Exception;
+    }
+
+    private static final int SPIN_TRIES = 100;
+
+    private final Position[] ring;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final int batchSize;
+
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    private volatile boolean running;
+
+    /**
+     * Size is rounded up to power of two
+     */
+    public PositionBus(int size, int batchSize) {
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        ring = new Position[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        mask = capacity - 1;
+        this.batchSize = batchSize;
+    }
+
+    public int getSize() {
+        return ring.length;
+    }
+
+    /**
+     * Register consumer, has to be called before start
+     */
+    public void addConsumer(String name, Consumer consumer) {
+        Subscription subscription = new Subscription(name, consumer);
+        subscription.sequence.set(cursor.get());
+        subscriptions.add(subscription);
+    }
+
+    private long getMinimumSequence(long defaultValue) {
+        long minimum = defaultValue;
+        for (Subscription subscription : subscriptions) {
+            minimum = Math.min(minimum, subscription.sequence.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * Publish position, returns false if slowest consumer is a full ring behind
+     */
+    public boolean publish(Position position) {
+        long current;
+        long next;
+        do {
+            current = cursor.get();
+            next = current + 1;
+            if (next - ring.length > getMinimumSequence(current)) {
+                return false;
+            }
+        } while (!cursor.compareAndSet(current, next));
+
+        int index = (int) next & mask;
+        ring[index] = position;
+        // Volatile write, pairs with waiting flag so that wake up is never lost
+        published.set(index, next);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.waiting) {
+                LockSupport.unpark(subscription.thread);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of positions not yet processed by the slowest consumer
+     */
+    public long getBacklog() {
+        long current = cursor.get();
+        return current - getMinimumSequence(current);
+    }
+
+    public long getProcessedCount(String name) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.name.equals(name)) {
+                return subscription.processed.get();
+            }
+        }
+        return 0;
+    }
+
+    public long getFailedCount(String name) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.name.equals(name)) {
+                return subscription.failed.get();
+            }
+        }
+        return 0;
+    }
+
+    public void start() {
+        running = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.thread = new Thread(subscription, "position-bus-" + subscription.name);
+            subscription.thread.setDaemon(true);
+            subscription.thread.start();
+        }
+    }
+
+    /**
+     * Stop consumers after they process already published positions
+     */
+    public void stop() {
+        running = false;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.thread != null) {
+                LockSupport.unpark(subscription.thread);
+            }
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.thread != null) {
+                try {
+                    subscription.thread.join();
+                } catch (InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                }
+                subscription.thread = null;
+            }
+        }
+    }
+
+    /**
+     * Consumer sequence and thread
+     */
+    private class Subscription implements Runnable {
+
+        private final String name;
+        private final Consumer consumer;
+        private final AtomicLong sequence = new AtomicLong(-1);
+        private volatile Thread thread;
+        private volatile boolean waiting;
+
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        public Subscription(String name, Consumer consumer) {
+            this.name = name;
+            this.consumer = consumer;
+        }
+
+        /**
+         * Process next batch of published positions, returns false if there was nothing
+         */
+        private boolean process(List<Position> batch) {
+            long next = sequence.get() + 1;
+            long last = next - 1;
+            while (last - next + 1 < batchSize && published.get((int) (last + 1) & mask) == last + 1) {
+                last++;
+                batch.add(ring[(int) last & mask]);
+            }
+            if (batch.isEmpty()) {
+                return false;
+            }
+
+            try {
+                consumer.consume(batch);
+                processed.addAndGet(batch.size());
+            } catch (Exception error) {
+                failed.addAndGet(batch.size());
+                Log.warning("Bus consumer " + name + " failed on " + batch.size() + " positions", error);
+            }
+            batch.clear();
+            sequence.lazySet(last);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            List<Position> batch = new ArrayList<Position>(batchSize);
+            int idle = 0;
+            while (true) {
+                if (process(batch)) {
+                    idle = 0;
+                } else if (!running) {
+                    break;
+                } else if (idle < SPIN_TRIES) {
+                    idle++;
+                    Thread.yield();
+                } else {
+                    waiting = true;
+                    long next = sequence.get() + 1;
+                    if (running && published.get((int) next & mask) != next) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                }
+            }
+        }
+
+    }
+
+}
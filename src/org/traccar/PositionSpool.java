@@ -0,0 +1,501 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import org.traccar.helper.Log;
+import org.traccar.model.Position;
+
+/**
+ * Durable append-only position spool on memory-mapped segment files
+ *
+ * Each record is stored as length, segment check value and payload. Record
+ * is valid only if check value matches segment number, so recycled segment
+ * files can be reused without clearing old content.
+ *
+ * Writers send new positions to a non-empty spool instead of the
+ * destination, so that replay keeps the original order.
+ *
+ * Appended positions survive a process crash as soon as append returns,
+ * mapped pages belong to the operating system. On power loss only data
+ * forced to disk survives: finished segments are forced when the next one
+ * is started, the current segment and checkpoint every sync interval and
+ * on stop, so up to one sync interval of appends can be lost.
+ */
+public class PositionSpool {
+
+    /**
+     * Replay destination
+     */
+    public interface Sink {
+        void write(List<Position> positions) throws Exception;
+    }
+
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String SPARE_PREFIX = "spare-";
+    private static final int HEADER_SIZE = 8;
+    private static final int END_MARKER = -1;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int spareSegments;
+    private final int replayBatchSize;
+    private final long replayInterval;
+
+    /**
+     * Maximum delay before appended data is forced to disk
+     */
+    private long syncInterval = 1000;
+
+    public void setSyncInterval(long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    private volatile boolean dirty;
+    private long lastSync;
+
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private int writeOffset;
+
+    private long readSegment;
+    private MappedByteBuffer readBuffer;
+    private int readOffset;
+    private int pendingOffset;
+
+    private MappedByteBuffer checkpoint;
+
+    private volatile boolean empty;
+
+    private final ByteArrayOutputStream serializeBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream serializeOutput = new DataOutputStream(serializeBuffer);
+
+    private Thread replayThread;
+    private volatile boolean running;
+
+    public PositionSpool(
+            File directory, int segmentSize, int spareSegments, int replayBatchSize, long replayInterval)
+            throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.spareSegments = spareSegments;
+        this.replayBatchSize = replayBatchSize;
+        this.replayInterval = replayInterval;
+        open();
+    }
+
+    private File segmentFile(long segment) {
+        return new File(directory, String.format("%020d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (randomAccessFile.length() != size) {
+                randomAccessFile.setLength(size);
+            }
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Restore read checkpoint and write position
+     */
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create spool directory " + directory);
+        }
+
+        List<Long> segments = new ArrayList<Long>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX) && !name.startsWith(SPARE_PREFIX)) {
+                    segments.add(Long.valueOf(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        Long[] sorted = segments.toArray(new Long[segments.size()]);
+        Arrays.sort(sorted);
+
+        checkpoint = map(new File(directory, CHECKPOINT), 12);
+        readSegment = checkpoint.getLong(0);
+        readOffset = checkpoint.getInt(8);
+
+        if (sorted.length == 0) {
+            readOffset = 0;
+            writeSegment = readSegment;
+            writeBuffer = map(segmentFile(writeSegment), segmentSize);
+            writeOffset = 0;
+        } else {
+            if (readSegment < sorted[0] || readSegment > sorted[sorted.length - 1]) {
+                readSegment = sorted[0];
+                readOffset = 0;
+            }
+            for (Long segment : sorted) {
+                if (segment < readSegment) {
+                    recycle(segment);
+                }
+            }
+            writeSegment = sorted[sorted.length - 1];
+            writeBuffer = map(segmentFile(writeSegment), segmentSize);
+            writeOffset = writeSegment == readSegment ? readOffset : 0;
+            while (recordLength(writeBuffer, writeSegment, writeOffset) > 0) {
+                writeOffset += HEADER_SIZE + recordLength(writeBuffer, writeSegment, writeOffset);
+            }
+        }
+
+        readBuffer = readSegment == writeSegment ? writeBuffer : map(segmentFile(readSegment), segmentSize);
+        pendingOffset = readOffset;
+        saveCheckpoint();
+        updateEmpty();
+    }
+
+    /**
+     * Return record length, zero if there is no valid record or END_MARKER
+     */
+    private int recordLength(MappedByteBuffer buffer, long segment, int offset) {
+        if (offset + HEADER_SIZE > segmentSize || buffer.getInt(offset + 4) != (int) segment) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length == END_MARKER) {
+            return END_MARKER;
+        }
+        if (length <= 0 || offset + HEADER_SIZE + length > segmentSize) {
+            return 0;
+        }
+        return length;
+    }
+
+    private void updateEmpty() {
+        empty = readSegment == writeSegment && readOffset == writeOffset;
+    }
+
+    private void saveCheckpoint() {
+        checkpoint.putLong(0, readSegment);
+        checkpoint.putInt(8, readOffset);
+    }
+
+    /**
+     * Keep finished segment file for reuse or delete it
+     */
+    private void recycle(long segment) {
+        File file = segmentFile(segment);
+        File[] spares = directory.listFiles();
+        int spareCount = 0;
+        if (spares != null) {
+            for (File spare : spares) {
+                if (spare.getName().startsWith(SPARE_PREFIX)) {
+                    spareCount++;
+                }
+            }
+        }
+        if (spareCount < spareSegments
+                && file.renameTo(new File(directory, SPARE_PREFIX + file.getName()))) {
+            return;
+        }
+        if (!file.delete()) {
+            Log.warning("Failed to delete spool segment " + file);
+        }
+    }
+
+    private MappedByteBuffer createSegment(long segment) throws IOException {
+        File file = segmentFile(segment);
+        File[] spares = directory.listFiles();
+        if (spares != null) {
+            for (File spare : spares) {
+                if (spare.getName().startsWith(SPARE_PREFIX) && spare.renameTo(file)) {
+                    break;
+                }
+            }
+        }
+        return map(file, segmentSize);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeLong(DataOutputStream output, Long value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readLong() : null;
+    }
+
+    private static void writeDouble(DataOutputStream output, boolean present, double value) throws IOException {
+        output.writeBoolean(present);
+        if (present) {
+            output.writeDouble(value);
+        }
+    }
+
+    private static void serialize(DataOutputStream output, Position position) throws IOException {
+        writeLong(output, position.getDeviceId());
+        writeString(output, position.getDeviceIMEI());
+        output.writeBoolean(position.getServerTimeMillis() != 0);
+        if (position.getServerTimeMillis() != 0) {
+            output.writeLong(position.getServerTimeMillis());
+        }
+        writeString(output, position.getExtendedInfo());
+        output.writeBoolean(position.hasTime());
+        if (position.hasTime()) {
+            output.writeLong(position.getTimeMillis());
+        }
+        output.writeByte(!position.hasValid() ? -1 : position.isValid() ? 1 : 0);
+        writeDouble(output, position.hasLatitude(), position.getLatitudeValue());
+        writeDouble(output, position.hasLongitude(), position.getLongitudeValue());
+        writeDouble(output, position.hasAltitude(), position.getAltitudeValue());
+        writeDouble(output, position.hasSpeed(), position.getSpeedValue());
+        writeDouble(output, position.hasCourse(), position.getCourseValue());
+        writeString(output, position.getAddress());
+    }
+
+    private static Position deserialize(DataInputStream input) throws IOException {
+        Position position = new Position();
+        position.setDeviceId(readLong(input));
+        position.setDeviceIMEI(readString(input));
+        if (input.readBoolean()) {
+            position.setServerTimeMillis(input.readLong());
+        }
+        position.setExtendedInfo(readString(input));
+        if (input.readBoolean()) {
+            position.setTimeMillis(input.readLong());
+        }
+        byte valid = input.readByte();
+        if (valid != -1) {
+            position.setValid(valid == 1);
+        }
+        if (input.readBoolean()) {
+            position.setLatitude(input.readDouble());
+        }
+        if (input.readBoolean()) {
+            position.setLongitude(input.readDouble());
+        }
+        if (input.readBoolean()) {
+            position.setAltitude(input.readDouble());
+        }
+        if (input.readBoolean()) {
+            position.setSpeed(input.readDouble());
+        }
+        if (input.readBoolean()) {
+            position.setCourse(input.readDouble());
+        }
+        position.setAddress(readString(input));
+        return position;
+    }
+
+    /**
+     * Append position to the end of the spool
+     */
+    public synchronized void append(Position position) throws IOException {
+        serializeBuffer.reset();
+        serialize(serializeOutput, position);
+        int length = serializeBuffer.size();
+        if (HEADER_SIZE + length > segmentSize) {
+            throw new IOException("Position is too big for spool segment");
+        }
+
+        if (writeOffset + HEADER_SIZE + length > segmentSize) {
+            if (writeOffset + HEADER_SIZE <= segmentSize) {
+                writeBuffer.putInt(writeOffset + 4, (int) writeSegment);
+                writeBuffer.putInt(writeOffset, END_MARKER);
+            }
+            writeBuffer.force();
+            writeSegment += 1;
+            writeBuffer = createSegment(writeSegment);
+            writeOffset = 0;
+        }
+
+        // Length is written last so that partial record is never valid
+        byte[] data = serializeBuffer.toByteArray();
+        writeBuffer.position(writeOffset + HEADER_SIZE);
+        writeBuffer.put(data);
+        writeBuffer.putInt(writeOffset + 4, (int) writeSegment);
+        writeBuffer.putInt(writeOffset, length);
+        writeOffset += HEADER_SIZE + length;
+        empty = false;
+        dirty = true;
+    }
+
+    /**
+     * Append positions in order, on failure positions before the failed
+     * one stay spooled and the rest is left to the caller
+     */
+    public void append(List<Position> positions) throws IOException {
+        for (Position position : positions) {
+            append(position);
+        }
+    }
+
+    /**
+     * Force current segment and checkpoint to disk if sync interval passed
+     */
+    private void sync(boolean always) {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (!always && (!dirty || now - lastSync < syncInterval)) {
+                return;
+            }
+            dirty = false;
+            lastSync = now;
+            buffer = writeBuffer;
+        }
+        // Outside of lock, appends continue while pages are written
+        buffer.force();
+        checkpoint.force();
+    }
+
+    /**
+     * Check without locking, safe to call for every position
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Read positions after checkpoint without moving it
+     */
+    public synchronized List<Position> peek(int max) throws IOException {
+        List<Position> positions = new LinkedList<Position>();
+        int offset = readOffset;
+        while (positions.size() < max) {
+            int length = recordLength(readBuffer, readSegment, offset);
+            if (length <= 0) {
+                if (readSegment < writeSegment && positions.isEmpty()) {
+                    // Segment is finished, move checkpoint to the next one
+                    long finished = readSegment;
+                    readSegment += 1;
+                    readBuffer = readSegment == writeSegment ? writeBuffer : map(segmentFile(readSegment), segmentSize);
+                    readOffset = 0;
+                    offset = 0;
+                    saveCheckpoint();
+                    updateEmpty();
+                    recycle(finished);
+                    continue;
+                }
+                break;
+            }
+
+            byte[] data = new byte[length];
+            readBuffer.position(offset + HEADER_SIZE);
+            readBuffer.get(data);
+            positions.add(deserialize(new DataInputStream(new ByteArrayInputStream(data))));
+            offset += HEADER_SIZE + length;
+        }
+        pendingOffset = offset;
+        return positions;
+    }
+
+    /**
+     * Move checkpoint after positions returned by last peek
+     */
+    public synchronized void commit() {
+        readOffset = pendingOffset;
+        saveCheckpoint();
+        updateEmpty();
+    }
+
+    /**
+     * Sleep between replay attempts, syncing meanwhile
+     */
+    private void pause(long delay) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + delay;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            Thread.sleep(Math.min(remaining, Math.max(syncInterval, 1)));
+            sync(false);
+        }
+    }
+
+    public void start(final Sink sink) {
+        running = true;
+        replayThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        sync(false);
+                        List<Position> positions = peek(replayBatchSize);
+                        if (positions.isEmpty()) {
+                            pause(replayInterval);
+                            continue;
+                        }
+                        try {
+                            sink.write(positions);
+                            commit();
+                        } catch (InterruptedException error) {
+                            throw error;
+                        } catch (Exception error) {
+                            Log.warning("Spool replay failed", error);
+                            pause(replayInterval);
+                        }
+                    } catch (InterruptedException error) {
+                        break;
+                    } catch (IOException error) {
+                        Log.warning(error);
+                    }
+                }
+            }
+        }, "spool-" + directory.getName());
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (replayThread != null) {
+            replayThread.interrupt();
+            try {
+                replayThread.join();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            replayThread = null;
+        }
+        sync(true);
+    }
+
+}
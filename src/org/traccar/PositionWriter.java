@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.traccar.helper.Log;
+import org.traccar.model.DataManager;
+import org.traccar.model.Position;
+
+/**
+ * Asynchronous batched position writer
+ *
+ * Positions are distributed to independent lanes by device id, so positions
+ * of one device are written in order while different devices are written
+ * in parallel.
+ */
+public class PositionWriter {
+
+    private final DataManager dataManager;
+    private final Lane[] lanes;
+    private final int batchSize;
+    private final long maxDelay;
+    private long metricsInterval;
+
+    private volatile boolean running;
+
+    /**
+     * Spool for positions that can't be written (optional)
+     */
+    private PositionSpool spool;
+
+    public void setSpool(PositionSpool spool) {
+        this.spool = spool;
+    }
+
+    /**
+     * Latest position pointers, updated after successful write
+     */
+    private LatestPositionTracker latestPositionTracker;
+
+    public void setLatestPositionTracker(LatestPositionTracker latestPositionTracker) {
+        this.latestPositionTracker = latestPositionTracker;
+    }
+
+    /**
+     * Log lane metrics with given interval in milliseconds (0 to disable)
+     */
+    public void setMetricsInterval(long metricsInterval) {
+        this.metricsInterval = metricsInterval;
+    }
+
+    public PositionWriter(DataManager dataManager, int queueSize, int laneCount, int batchSize, long maxDelay) {
+        this.dataManager = dataManager;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+        lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, queueSize);
+        }
+    }
+
+    private Lane getLane(Position position) {
+        Long deviceId = position.getDeviceId();
+        if (deviceId == null || lanes.length == 1) {
+            return lanes[0];
+        }
+        int hash = (int) (deviceId ^ (deviceId >>> 32));
+        hash ^= (hash >>> 16);
+        return lanes[(hash & 0x7fffffff) % lanes.length];
+    }
+
+    /**
+     * Queue position for writing, returns false if queue is full and there is no spool
+     */
+    public boolean write(Position position) {
+        if (getLane(position).offer(position)) {
+            return true;
+        }
+        if (spool != null) {
+            try {
+                spool.append(position);
+                return true;
+            } catch (IOException error) {
+                Log.warning("Failed to spool position", error);
+            }
+        }
+        return false;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Total number of queued positions, reads lane counters without
+     * locking queues, so it is cheap enough to call for every position
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (Lane lane : lanes) {
+            size += lane.getDepth();
+        }
+        return size;
+    }
+
+    public int getQueueSize(int lane) {
+        return lanes[lane].getDepth();
+    }
+
+    /**
+     * Largest queue depth since last call
+     */
+    public int getMaxQueueSize(int lane) {
+        return lanes[lane].maxQueueSize.getAndSet(lanes[lane].getDepth());
+    }
+
+    public long getWrittenCount(int lane) {
+        return lanes[lane].written.get();
+    }
+
+    public long getFailedCount(int lane) {
+        return lanes[lane].failed.get();
+    }
+
+    public void start() {
+        running = true;
+        for (Lane lane : lanes) {
+            lane.thread = new Thread(lane, "position-writer-" + lane.index);
+            lane.thread.setDaemon(true);
+            lane.thread.start();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (Lane lane : lanes) {
+            if (lane.thread != null) {
+                lane.thread.interrupt();
+            }
+        }
+        for (Lane lane : lanes) {
+            if (lane.thread != null) {
+                try {
+                    lane.thread.join();
+                } catch (InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                }
+                lane.thread = null;
+            }
+        }
+
+        // Write remaining positions
+        for (Lane lane : lanes) {
+            List<Position> batch = new ArrayList<Position>(batchSize);
+            while (lane.queue.drainTo(batch, batchSize) > 0) {
+                lane.depth.addAndGet(-batch.size());
+                lane.flush(batch);
+            }
+        }
+    }
+
+    /**
+     * Queue and worker thread, collects batch limited by size and delay since first position
+     */
+    private class Lane implements Runnable {
+
+        private final int index;
+        private final BlockingQueue<Position> queue;
+        private Thread thread;
+
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicInteger maxQueueSize = new AtomicInteger();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private long lastReport = System.currentTimeMillis();
+
+        public Lane(int index, int queueSize) {
+            this.index = index;
+            queue = new ArrayBlockingQueue<Position>(queueSize);
+        }
+
+        public boolean offer(Position position) {
+            if (!queue.offer(position)) {
+                return false;
+            }
+            int size = depth.incrementAndGet();
+            int max = maxQueueSize.get();
+            while (size > max && !maxQueueSize.compareAndSet(max, size)) {
+                max = maxQueueSize.get();
+            }
+            return true;
+        }
+
+        /**
+         * Queued positions, updated on offer and once per taken batch
+         */
+        public int getDepth() {
+            return Math.max(depth.get(), 0);
+        }
+
+        private void flush(List<Position> batch) {
+            // Keep order, positions go after the ones waiting for replay
+            if (spool != null && !spool.isEmpty()) {
+                spool(batch);
+                batch.clear();
+                return;
+            }
+            try {
+                dataManager.addPositions(batch);
+                written.addAndGet(batch.size());
+                if (latestPositionTracker != null) {
+                    latestPositionTracker.update(batch);
+                }
+            } catch (Exception error) {
+                failed.addAndGet(batch.size());
+                if (spool != null) {
+                    Log.warning("Failed to write " + batch.size() + " positions, spooling", error);
+                    spool(batch);
+                } else {
+                    Log.warning("Failed to write " + batch.size() + " positions", error);
+                }
+            }
+            batch.clear();
+        }
+
+        private void spool(List<Position> batch) {
+            try {
+                spool.append(batch);
+            } catch (IOException error) {
+                Log.warning("Failed to spool " + batch.size() + " positions", error);
+            }
+        }
+
+        private void report() {
+            long now = System.currentTimeMillis();
+            if (metricsInterval > 0 && now - lastReport >= metricsInterval) {
+                lastReport = now;
+                Log.info("Writer lane " + index
+                        + " queue: " + getDepth()
+                        + ", max queue: " + getMaxQueueSize(index)
+                        + ", written: " + written.get()
+                        + ", failed: " + failed.get());
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Position> batch = new ArrayList<Position>(batchSize);
+            while (running) {
+                try {
+                    report();
+                    Position first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+
+                    long deadline = System.currentTimeMillis() + maxDelay;
+                    while (batch.size() < batchSize) {
+                        if (queue.drainTo(batch, batchSize - batch.size()) == 0) {
+                            long delay = deadline - System.currentTimeMillis();
+                            if (delay <= 0) {
+                                break;
+                            }
+                            Position next = queue.poll(delay, TimeUnit.MILLISECONDS);
+                            if (next == null) {
+                                break;
+                            }
+                            batch.add(next);
+                        }
+                    }
+                } catch (InterruptedException error) {
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                }
+
+                depth.addAndGet(-batch.size());
+                flush(batch);
+            }
+        }
+
+    }
+
+}
@@ -15,41 +15,151 @@
  */
 package org.traccar;
 
-import org.jboss.netty.channel.Channel;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.traccar.geocode.CachingReverseGeocoder;
 import org.traccar.geocode.ReverseGeocoder;
 import org.traccar.model.Position;
 
 /**
  * Reverse geocoding channel event handler
+ *
+ * With caching geocoder messages that need provider lookups wait until all
+ * addresses are resolved, later messages of the same channel wait for them
+ * to keep the order. Geocoder threads only schedule passing them on, which
+ * happens on the channel worker pool if there is one, otherwise on the I/O
+ * thread, so following handlers never run on geocoder threads.
  */
-public class ReverseGeocoderHandler extends OneToOneDecoder {
+public class ReverseGeocoderHandler extends SimpleChannelUpstreamHandler {
 
     /**
      * Geocoder object
      */
     private ReverseGeocoder geocoder;
 
+    /**
+     * Messages waiting for addresses, guarded by this
+     */
+    private final Queue<Pending> pending = new LinkedList<Pending>();
+
     public ReverseGeocoderHandler(ReverseGeocoder geocoder) {
         this.geocoder = geocoder;
     }
 
+    private static List<Position> getPositions(Object msg) {
+        if (msg instanceof Position) {
+            return Collections.singletonList((Position) msg);
+        } else if (msg instanceof List) {
+            return (List<Position>) msg;
+        }
+        return Collections.emptyList();
+    }
+
     @Override
-    protected Object decode(
-            ChannelHandlerContext ctx, Channel channel, Object msg)
-            throws Exception {
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
 
-        if (msg instanceof Position) {
-            Position position = (Position) msg;
-            if (geocoder != null) {
-                position.setAddress(geocoder.getAddress(
-                        position.getLatitude(), position.getLongitude()));
+        List<Position> positions = getPositions(e.getMessage());
+
+        if (!(geocoder instanceof CachingReverseGeocoder)) {
+            for (Position position : positions) {
+                if (position != null && position.hasLatitude() && position.hasLongitude()) {
+                    position.setAddress(geocoder.getAddress(position.getLatitudeValue(), position.getLongitudeValue()));
+                }
+            }
+            ctx.sendUpstream(e);
+            return;
+        }
+
+        CachingReverseGeocoder cachingGeocoder = (CachingReverseGeocoder) geocoder;
+        List<Position> missing = new LinkedList<Position>();
+        for (Position position : positions) {
+            if (position != null && position.hasLatitude() && position.hasLongitude()) {
+                String address = cachingGeocoder.getCachedAddress(position.getLatitudeValue(), position.getLongitudeValue());
+                if (address != null) {
+                    position.setAddress(address);
+                } else {
+                    missing.add(position);
+                }
             }
         }
 
-        return msg;
+        final Pending item = new Pending(ctx, e, missing.size());
+        synchronized (this) {
+            pending.add(item);
+        }
+        if (missing.isEmpty()) {
+            flush();
+            return;
+        }
+
+        for (final Position position : missing) {
+            cachingGeocoder.getAddress(position.getLatitudeValue(), position.getLongitudeValue(),
+                    new CachingReverseGeocoder.Callback() {
+                @Override
+                public void onAddress(String address) {
+                    position.setAddress(address);
+                    if (item.remaining.decrementAndGet() == 0) {
+                        scheduleFlush(item);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Run flush in channel's own thread, ordered with its other events
+     */
+    private void scheduleFlush(Pending item) {
+        ExecutionHandler executionHandler = item.ctx.getPipeline().get(ExecutionHandler.class);
+        if (executionHandler != null) {
+            executionHandler.getExecutor().execute(new ChannelEventRunnable(item.ctx, item.event,
+                    executionHandler.getExecutor()) {
+                @Override
+                protected void doRun() {
+                    flush();
+                }
+            });
+        } else {
+            item.ctx.getPipeline().execute(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }
+    }
+
+    /**
+     * Pass on resolved messages from the head of the queue, called only
+     * from channel threads
+     */
+    private synchronized void flush() {
+        while (!pending.isEmpty() && pending.peek().remaining.get() == 0) {
+            Pending item = pending.poll();
+            item.ctx.sendUpstream(item.event);
+        }
+    }
+
+    private static class Pending {
+
+        private final ChannelHandlerContext ctx;
+        private final MessageEvent event;
+        private final AtomicInteger remaining;
+
+        public Pending(ChannelHandlerContext ctx, MessageEvent event, int remaining) {
+            this.ctx = ctx;
+            this.event = event;
+            this.remaining = new AtomicInteger(remaining);
+        }
+
     }
 
 }
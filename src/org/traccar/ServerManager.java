@@ -15,6 +15,7 @@
  */
 package org.traccar;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
@@ -34,12 +35,17 @@ import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
 import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
 import org.jboss.netty.handler.codec.string.StringDecoder;
 import org.jboss.netty.handler.codec.string.StringEncoder;
+import org.traccar.geocode.CachingReverseGeocoder;
 import org.traccar.geocode.GoogleReverseGeocoder;
+import org.traccar.geocode.OfflineReverseGeocoder;
 import org.traccar.geocode.ReverseGeocoder;
 import org.traccar.helper.Log;
+import org.traccar.http.PositionForwarder;
+import org.traccar.http.PushBroker;
 import org.traccar.http.WebServer;
 import org.traccar.model.DataManager;
 import org.traccar.model.DatabaseDataManager;
+import org.traccar.model.Position;
 import org.traccar.protocol.*;
 
 /**
@@ -65,12 +71,75 @@ public class ServerManager {
         return dataManager;
     }
 
+    private DeviceProvisioner deviceProvisioner;
+
+    public DeviceProvisioner getDeviceProvisioner() {
+        return deviceProvisioner;
+    }
+
+    private LatestPositionTracker latestPositionTracker;
+
+    public LatestPositionTracker getLatestPositionTracker() {
+        return latestPositionTracker;
+    }
+
+    private PositionWriter positionWriter;
+
+    public PositionWriter getPositionWriter() {
+        return positionWriter;
+    }
+
+    private BackpressureController backpressureController;
+
+    public BackpressureController getBackpressureController() {
+        return backpressureController;
+    }
+
+    private DuplicateFilterHandler duplicateFilterHandler;
+
+    public DuplicateFilterHandler getDuplicateFilterHandler() {
+        return duplicateFilterHandler;
+    }
+
+    private PositionForwarder positionForwarder;
+
+    public PositionForwarder getPositionForwarder() {
+        return positionForwarder;
+    }
+
+    private final List<PositionSpool> spools = new LinkedList<PositionSpool>();
+
+    private TrafficCapture trafficCapture;
+
+    public TrafficCapture getTrafficCapture() {
+        return trafficCapture;
+    }
+
     private ReverseGeocoder reverseGeocoder;
 
+    /**
+     * Same object as geocoder if remote provider is used
+     */
+    private CachingReverseGeocoder cachingReverseGeocoder;
+
     public ReverseGeocoder getReverseGeocoder() {
         return reverseGeocoder;
     }
 
+    private PositionBus positionBus;
+
+    public PositionBus getPositionBus() {
+        return positionBus;
+    }
+
+    private FleetState fleetState;
+
+    public FleetState getFleetState() {
+        return fleetState;
+    }
+
+    private PushBroker pushBroker;
+
     private WebServer webServer;
 
     public WebServer getWebServer() {
@@ -97,8 +166,70 @@ public class ServerManager {
             Log.setupLogger(properties);
         }
 
+        GlobalChannelFactory.setProperties(properties);
+
+        // Keep-alive pool of HttpURLConnection is JVM-wide, so it is sized once here, command line value wins
+        if (Boolean.valueOf(properties.getProperty("forward.enable"))
+                && System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", properties.getProperty(
+                    "forward.maxConnections", properties.getProperty("forward.threads", "4")));
+        }
+
+        if (Boolean.valueOf(properties.getProperty("capture.enable"))) {
+            trafficCapture = new TrafficCapture(
+                    new File(properties.getProperty("capture.path", "capture")),
+                    Integer.valueOf(properties.getProperty("capture.fileSize", "67108864")),
+                    Integer.valueOf(properties.getProperty("capture.maxFiles", "16")),
+                    Integer.valueOf(properties.getProperty("capture.sample", "1")));
+        }
+
         dataManager = new DatabaseDataManager(properties);
 
+        deviceProvisioner = new DeviceProvisioner(dataManager,
+                Integer.valueOf(properties.getProperty("provision.batchSize", "50")),
+                Long.valueOf(properties.getProperty("provision.maxDelay", "20")),
+                Long.valueOf(properties.getProperty("provision.timeout", "10000")));
+
+        latestPositionTracker = new LatestPositionTracker(dataManager,
+                Long.valueOf(properties.getProperty("database.latestPositionInterval", "1000")));
+
+        if (Boolean.valueOf(properties.getProperty("filter.duplicate.enable"))) {
+            duplicateFilterHandler = new DuplicateFilterHandler(
+                    Integer.valueOf(properties.getProperty("filter.duplicate.window", "16")));
+        }
+
+        // Fleet state and push are only read by web server servlets
+        boolean httpEnabled = Boolean.valueOf(properties.getProperty("http.enable"));
+        boolean pushEnabled = httpEnabled && Boolean.valueOf(properties.getProperty("http.push.enable"));
+        if ((httpEnabled && Boolean.valueOf(properties.getProperty("http.fleet.enable"))) || pushEnabled) {
+            fleetState = new FleetState();
+        }
+        if (pushEnabled) {
+            pushBroker = new PushBroker(
+                    Integer.valueOf(properties.getProperty("http.push.bufferSize", "1000")),
+                    Long.valueOf(properties.getProperty("http.push.expire", "120000")));
+            fleetState.addListener(pushBroker);
+        }
+
+        initPositionWriter(properties);
+
+        if (Boolean.valueOf(properties.getProperty("forward.enable"))) {
+            positionForwarder = new PositionForwarder(properties);
+        }
+
+        initSpools(properties);
+
+        initPositionBus(properties);
+
+        if ((positionWriter != null || positionBus != null)
+                && Boolean.valueOf(properties.getProperty("backpressure.enable"))) {
+            backpressureController = new BackpressureController(serverList, positionWriter,
+                    Integer.valueOf(properties.getProperty("backpressure.highWater", "8000")),
+                    Integer.valueOf(properties.getProperty("backpressure.lowWater", "2000")),
+                    Long.valueOf(properties.getProperty("backpressure.checkInterval", "100")));
+            backpressureController.setPositionBus(positionBus);
+        }
+
         initGeocoder(properties);
 
         initXexunServer("xexun");
@@ -160,12 +291,40 @@ public class ServerManager {
         initEasyTrackServer("easytrack");
         
         // Initialize web server
-        if (Boolean.valueOf(properties.getProperty("http.enable"))) {
-            webServer = new WebServer(properties);
+        if (httpEnabled) {
+            webServer = new WebServer(properties, fleetState, pushBroker);
         }
     }
 
     public void start() {
+        deviceProvisioner.start();
+        latestPositionTracker.start();
+        if (positionWriter != null) {
+            positionWriter.start();
+        }
+        if (positionForwarder != null) {
+            positionForwarder.start();
+        }
+        if (positionBus != null) {
+            positionBus.start();
+        }
+        if (cachingReverseGeocoder != null) {
+            cachingReverseGeocoder.start();
+        }
+        for (PositionSpool spool : spools) {
+            spool.start(spool == databaseSpool ? new PositionSpool.Sink() {
+                @Override
+                public void write(List<Position> positions) throws Exception {
+                    dataManager.addPositions(positions);
+                    latestPositionTracker.update(positions);
+                }
+            } : new PositionSpool.Sink() {
+                @Override
+                public void write(List<Position> positions) throws Exception {
+                    positionForwarder.send(positions);
+                }
+            });
+        }
         if (webServer != null) {
             webServer.start();
         }
@@ -178,6 +337,30 @@ public class ServerManager {
         for (Object server: serverList) {
             ((TrackerServer) server).stop();
         }
+        if (trafficCapture != null) {
+            trafficCapture.close();
+        }
+
+        if (cachingReverseGeocoder != null) {
+            cachingReverseGeocoder.stop();
+        }
+        if (positionBus != null) {
+            positionBus.stop();
+        }
+        if (positionWriter != null) {
+            positionWriter.stop();
+        }
+        if (positionForwarder != null) {
+            positionForwarder.stop();
+        }
+        for (PositionSpool spool : spools) {
+            spool.stop();
+        }
+        deviceProvisioner.stop();
+        latestPositionTracker.stop();
+        if (dataManager instanceof DatabaseDataManager) {
+            ((DatabaseDataManager) dataManager).close();
+        }
 
         // Release resources
         GlobalChannelFactory.release();
@@ -186,15 +369,155 @@ public class ServerManager {
         if (webServer != null) {
             webServer.stop();
         }
+
+        Log.close();
     }
 
     public void destroy() {
         serverList.clear();
     }
 
+    private void initPositionWriter(Properties properties) {
+        if (Boolean.valueOf(properties.getProperty("writer.enable"))) {
+            positionWriter = new PositionWriter(dataManager,
+                    Integer.valueOf(properties.getProperty("writer.queueSize", "10000")),
+                    Integer.valueOf(properties.getProperty("writer.lanes",
+                            properties.getProperty("writer.threads", "1"))),
+                    Integer.valueOf(properties.getProperty("writer.batchSize", "100")),
+                    Long.valueOf(properties.getProperty("writer.maxDelay", "1000")));
+            positionWriter.setMetricsInterval(Long.valueOf(properties.getProperty("writer.metricsInterval", "0")));
+            positionWriter.setLatestPositionTracker(latestPositionTracker);
+        }
+    }
+
+    private void initPositionBus(Properties properties) {
+        if (!Boolean.valueOf(properties.getProperty("bus.enable"))) {
+            return;
+        }
+        positionBus = new PositionBus(
+                Integer.valueOf(properties.getProperty("bus.size", "65536")),
+                Integer.valueOf(properties.getProperty("bus.batchSize", "100")));
+
+        positionBus.addConsumer("log", new PositionBus.Consumer() {
+            @Override
+            public void consume(List<Position> positions) {
+                for (Position position : positions) {
+                    TrackerEventHandler.logPosition(position);
+                }
+            }
+        });
+
+        if (fleetState != null) {
+            positionBus.addConsumer("fleet", new PositionBus.Consumer() {
+                @Override
+                public void consume(List<Position> positions) {
+                    for (Position position : positions) {
+                        fleetState.update(position);
+                    }
+                }
+            });
+        }
+
+        if (positionForwarder != null) {
+            positionBus.addConsumer("forward", new PositionBus.Consumer() {
+                @Override
+                public void consume(List<Position> positions) {
+                    for (Position position : positions) {
+                        if (!positionForwarder.forward(position)) {
+                            Log.warning("Forward queue is full, position dropped");
+                        }
+                    }
+                }
+            });
+        }
+
+        // Batch insert on bus thread unless lanes of asynchronous writer are used
+        positionBus.addConsumer("database", new PositionBus.Consumer() {
+            @Override
+            public void consume(List<Position> positions) throws Exception {
+                if (positionWriter != null) {
+                    for (Position position : positions) {
+                        if (!positionWriter.write(position)) {
+                            Log.warning("Writer queue is full, position dropped");
+                        }
+                    }
+                } else if (databaseSpool != null && !databaseSpool.isEmpty()) {
+                    // Keep order, positions go after the ones waiting for replay
+                    databaseSpool.append(positions);
+                } else {
+                    try {
+                        dataManager.addPositions(positions);
+                    } catch (Exception error) {
+                        if (databaseSpool == null) {
+                            throw error;
+                        }
+                        Log.warning("Failed to write " + positions.size() + " positions, spooling", error);
+                        databaseSpool.append(positions);
+                        return;
+                    }
+                    latestPositionTracker.update(positions);
+                }
+            }
+        });
+    }
+
+    private PositionSpool databaseSpool;
+
+    public PositionSpool getDatabaseSpool() {
+        return databaseSpool;
+    }
+
+    private PositionSpool createSpool(Properties properties, String name) throws IOException {
+        PositionSpool spool = new PositionSpool(
+                new File(properties.getProperty("spool.path", "spool"), name),
+                Integer.valueOf(properties.getProperty("spool.segmentSize", "16777216")),
+                Integer.valueOf(properties.getProperty("spool.spareSegments", "2")),
+                Integer.valueOf(properties.getProperty("spool.replayBatchSize", "100")),
+                Long.valueOf(properties.getProperty("spool.replayInterval", "5000")));
+        spool.setSyncInterval(Long.valueOf(properties.getProperty("spool.syncInterval", "1000")));
+        return spool;
+    }
+
+    private void initSpools(Properties properties) throws IOException {
+        if (Boolean.valueOf(properties.getProperty("spool.enable"))) {
+            databaseSpool = createSpool(properties, "database");
+            if (positionWriter != null) {
+                positionWriter.setSpool(databaseSpool);
+            }
+            spools.add(databaseSpool);
+            if (positionForwarder != null) {
+                PositionSpool forwardSpool = createSpool(properties, "forward");
+                positionForwarder.setSpool(forwardSpool);
+                spools.add(forwardSpool);
+            }
+        }
+    }
+
     private void initGeocoder(Properties properties) throws IOException {
-        if (Boolean.parseBoolean(properties.getProperty("geocoder.enable"))) {
-            reverseGeocoder = new GoogleReverseGeocoder();
+        if (!Boolean.parseBoolean(properties.getProperty("geocoder.enable"))) {
+            return;
+        }
+        if (properties.getProperty("geocoder.type", "google").equals("offline")) {
+            OfflineReverseGeocoder offlineGeocoder = new OfflineReverseGeocoder(
+                    Double.valueOf(properties.getProperty("geocoder.offline.maxDistance", "1000")));
+            offlineGeocoder.load(new File(properties.getProperty("geocoder.offline.file", "places.csv")));
+            Log.info("Offline geocoder loaded " + offlineGeocoder.size() + " places");
+            reverseGeocoder = offlineGeocoder;
+        } else {
+            cachingReverseGeocoder = new CachingReverseGeocoder(
+                    new GoogleReverseGeocoder(
+                            properties.getProperty("geocoder.url", GoogleReverseGeocoder.DEFAULT_URL),
+                            Integer.valueOf(properties.getProperty("geocoder.timeout", "10000"))),
+                    Integer.valueOf(properties.getProperty("geocoder.precision", "4")),
+                    Integer.valueOf(properties.getProperty("geocoder.cacheSize", "100000")),
+                    Double.valueOf(properties.getProperty("geocoder.rateLimit", "10")),
+                    Integer.valueOf(properties.getProperty("geocoder.threads", "2")),
+                    Integer.valueOf(properties.getProperty("geocoder.queueSize", "1000")));
+            String cacheFile = properties.getProperty("geocoder.cacheFile");
+            if (cacheFile != null && !cacheFile.isEmpty()) {
+                cachingReverseGeocoder.setCacheFile(new File(cacheFile));
+            }
+            reverseGeocoder = cachingReverseGeocoder;
         }
     }
 
@@ -231,7 +554,6 @@ public class ServerManager {
                             ChannelBuffers.wrappedBuffer(delimiter1),
                             ChannelBuffers.wrappedBuffer(delimiter2),
                             ChannelBuffers.wrappedBuffer(delimiter3)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
                     pipeline.addLast("stringEncoder", new StringEncoder());
                     pipeline.addLast("objectDecoder", new Gps103ProtocolDecoder(ServerManager.this));
                 }
@@ -247,7 +569,6 @@ public class ServerManager {
                     byte delimiter[] = { (byte) ')' };
                     pipeline.addLast("frameDecoder",
                             new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
                     pipeline.addLast("stringEncoder", new StringEncoder());
                     pipeline.addLast("objectDecoder", new Tk103ProtocolDecoder(ServerManager.this));
                 }
@@ -282,7 +603,6 @@ public class ServerManager {
                             new DelimiterBasedFrameDecoder(1024,
                                     ChannelBuffers.wrappedBuffer(delimiter1),
                                     ChannelBuffers.wrappedBuffer(delimiter2)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
                     pipeline.addLast("stringEncoder", new StringEncoder());
                     pipeline.addLast("objectDecoder", new Gl200ProtocolDecoder(ServerManager.this));
                 }
@@ -298,7 +618,6 @@ public class ServerManager {
                     byte delimiter[] = { (byte) '\r', (byte) '\n' };
                     pipeline.addLast("frameDecoder",
                             new DelimiterBasedFrameDecoder(1024, ChannelBuffers.wrappedBuffer(delimiter)));
-                    pipeline.addLast("stringDecoder", new StringDecoder());
                     pipeline.addLast("stringEncoder", new StringEncoder());
                     pipeline.addLast("objectDecoder", new T55ProtocolDecoder(ServerManager.this));
                 }
@@ -15,11 +15,13 @@
  */
 package org.traccar;
 
+import java.io.IOException;
 import java.util.List;
 import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.timeout.IdleStateAwareChannelHandler;
 import org.jboss.netty.handler.timeout.IdleStateEvent;
 import org.traccar.helper.Log;
+import org.traccar.http.PositionForwarder;
 import org.traccar.model.DataManager;
 import org.traccar.model.Position;
 
@@ -34,31 +36,135 @@ public class TrackerEventHandler extends IdleStateAwareChannelHandler {
      */
     private DataManager dataManager;
 
-    TrackerEventHandler(DataManager newDataManager) {
+    /**
+     * Asynchronous writer (optional)
+     */
+    private PositionWriter positionWriter;
+
+    /**
+     * Web service forwarder (optional)
+     */
+    private PositionForwarder positionForwarder;
+
+    /**
+     * Latest position pointers (optional)
+     */
+    private LatestPositionTracker latestPositionTracker;
+
+    /**
+     * Read suspension by writer queue depth (optional)
+     */
+    private BackpressureController backpressureController;
+
+    /**
+     * Live fleet state (optional)
+     */
+    private FleetState fleetState;
+
+    /**
+     * Position consumers bus (optional), replaces direct calls to other components
+     */
+    private PositionBus positionBus;
+
+    /**
+     * Spool for positions that can't be written to database (optional)
+     */
+    private PositionSpool spool;
+
+    TrackerEventHandler(
+            DataManager newDataManager, PositionWriter newPositionWriter, PositionForwarder newPositionForwarder,
+            LatestPositionTracker newLatestPositionTracker, BackpressureController newBackpressureController,
+            FleetState newFleetState, PositionBus newPositionBus, PositionSpool newSpool) {
         super();
         dataManager = newDataManager;
+        positionWriter = newPositionWriter;
+        positionForwarder = newPositionForwarder;
+        latestPositionTracker = newLatestPositionTracker;
+        backpressureController = newBackpressureController;
+        fleetState = newFleetState;
+        positionBus = newPositionBus;
+        spool = newSpool;
+    }
+
+    static void logPosition(Position position) {
+        if (!Log.isInfoEnabled() || !Log.sample("position")) {
+            return;
+        }
+        StringBuilder s = new StringBuilder();
+        s.append("device: ").append(position.getDeviceId()).append(", ");
+        s.append("time: ").append(position.getTime()).append(", ");
+        s.append("lat: ").append(position.getLatitude()).append(", ");
+        s.append("lon: ").append(position.getLongitude());
+        Log.info(s.toString());
     }
 
     private void processSinglePosition(Position position) {
         if (position == null) {
             Log.info("processSinglePosition null message");
+        } else if (positionBus != null) {
+            if (!positionBus.publish(position)) {
+                Log.warning("Position bus is full, position dropped");
+            }
+            if (backpressureController != null) {
+                backpressureController.check();
+            }
+            return;
         } else {
-            StringBuilder s = new StringBuilder();
-            s.append("device: ").append(position.getDeviceId()).append(", ");
-            s.append("time: ").append(position.getTime()).append(", ");
-            s.append("lat: ").append(position.getLatitude()).append(", ");
-            s.append("lon: ").append(position.getLongitude());
-            Log.info(s.toString());
+            logPosition(position);
+        }
+
+        if (fleetState != null && position != null) {
+            fleetState.update(position);
+        }
+
+        // Queue position for forwarding
+        if (positionForwarder != null && position != null) {
+            if (!positionForwarder.forward(position)) {
+                Log.warning("Forward queue is full, position dropped");
+            }
+        }
+
+        // Queue position for asynchronous write
+        if (positionWriter != null) {
+            if (position != null && !positionWriter.write(position)) {
+                Log.warning("Writer queue is full, position dropped");
+            }
+            if (backpressureController != null) {
+                backpressureController.check();
+            }
+            return;
+        }
+
+        // Keep order, positions go after the ones waiting for replay
+        if (spool != null && !spool.isEmpty()) {
+            spoolPosition(position);
+            return;
         }
 
         // Write position to database
         try {
             Long id = dataManager.addPosition(position);
             if (id != null) {
-                dataManager.updateLatestPosition(position.getDeviceId(), id);
+                if (latestPositionTracker != null) {
+                    position.setId(id);
+                    latestPositionTracker.update(position);
+                } else {
+                    dataManager.updateLatestPosition(position.getDeviceId(), id);
+                }
             }
         } catch (Exception error) {
             Log.warning(error);
+            if (spool != null) {
+                spoolPosition(position);
+            }
+        }
+    }
+
+    private void spoolPosition(Position position) {
+        try {
+            spool.append(position);
+        } catch (IOException error) {
+            Log.warning("Failed to spool position", error);
         }
     }
 
@@ -17,6 +17,7 @@ package org.traccar;
 
 import java.net.InetSocketAddress;
 import java.nio.ByteOrder;
+import java.util.Properties;
 import org.jboss.netty.bootstrap.Bootstrap;
 import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
@@ -27,6 +28,7 @@ import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.ChannelGroupFuture;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.SocketChannel;
 
 /**
  * Tracker server
@@ -47,10 +49,18 @@ public abstract class TrackerServer {
         this.protocol = protocol;
 
         // Set appropriate channel factory
+        Properties properties = serverManager.getProperties();
         if (bootstrap instanceof ServerBootstrap) {
-            bootstrap.setFactory(GlobalChannelFactory.getFactory());
+            bootstrap.setFactory(GlobalChannelFactory.getFactory(protocol));
+            setOption(properties, "io.backlog", "backlog");
+            setOption(properties, "io.tcpNoDelay", "child.tcpNoDelay");
+            setOption(properties, "io.keepAlive", "child.keepAlive");
+            setOption(properties, "io.receiveBufferSize", "child.receiveBufferSize");
+            setOption(properties, "io.sendBufferSize", "child.sendBufferSize");
         } else if (bootstrap instanceof ConnectionlessBootstrap) {
             bootstrap.setFactory(GlobalChannelFactory.getDatagramFactory());
+            setOption(properties, "io.receiveBufferSize", "receiveBufferSize");
+            setOption(properties, "io.sendBufferSize", "sendBufferSize");
         }
 
         address = serverManager.getProperties().getProperty(protocol + ".address");
@@ -67,6 +77,27 @@ public abstract class TrackerServer {
 
     protected abstract void addSpecificHandlers(ChannelPipeline pipeline);
 
+    /**
+     * Protocol specific value with fallback to global one
+     */
+    static String getProperty(Properties properties, String protocol, String key, String defaultValue) {
+        return properties.getProperty(protocol + "." + key, properties.getProperty(key, defaultValue));
+    }
+
+    /**
+     * Copy socket option from configuration if set
+     */
+    private void setOption(Properties properties, String key, String option) {
+        String value = getProperty(properties, protocol, key, null);
+        if (value != null && !value.isEmpty()) {
+            if (value.equals("true") || value.equals("false")) {
+                bootstrap.setOption(option, Boolean.valueOf(value));
+            } else {
+                bootstrap.setOption(option, Integer.valueOf(value));
+            }
+        }
+    }
+
     /**
      * Server port
      */
@@ -109,6 +140,18 @@ public abstract class TrackerServer {
         return allChannels;
     }
 
+    /**
+     * Suspend or resume reading from connected devices
+     */
+    public void setReadable(boolean readable) {
+        for (Channel channel : getChannelGroup()) {
+            // Listening and datagram channels are not affected
+            if (channel instanceof SocketChannel && channel.isReadable() != readable) {
+                channel.setReadable(readable);
+            }
+        }
+    }
+
     public void setPipelineFactory(ChannelPipelineFactory pipelineFactory) {
         bootstrap.setPipelineFactory(pipelineFactory);
     }
@@ -142,6 +185,10 @@ public abstract class TrackerServer {
     public void stop() {
         ChannelGroupFuture future = getChannelGroup().close();
         future.awaitUninterruptibly();
+
+        if (bootstrap.getPipelineFactory() instanceof BasePipelineFactory) {
+            ((BasePipelineFactory) bootstrap.getPipelineFactory()).release();
+        }
     }
 
 }
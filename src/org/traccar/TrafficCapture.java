@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.traccar.helper.Log;
+
+/**
+ * Raw traffic capture on rotating memory-mapped files
+ *
+ * File starts with magic and version, followed by records of length,
+ * time, type, transport, local port, remote address, remote port and
+ * payload. Length is written last, so reader stops at the first record
+ * with zero length, files are not truncated after writing. When file is
+ * full a new one is started and oldest files above the limit are deleted.
+ */
+public class TrafficCapture {
+
+    public static final byte TYPE_DATA = 1;
+    public static final byte TYPE_CLOSE = 2;
+
+    public static final byte TRANSPORT_TCP = 0;
+    public static final byte TRANSPORT_UDP = 1;
+
+    private static final int MAGIC = 0x54434150;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 8 + 1 + 1 + 2 + 1 + 2;
+    private static final String SUFFIX = ".cap";
+
+    private final File directory;
+    private final int fileSize;
+    private final int maxFiles;
+    private final int sample;
+
+    private long fileIndex;
+    private MappedByteBuffer buffer;
+    private int offset;
+
+    private long dropped;
+
+    public TrafficCapture(File directory, int fileSize, int maxFiles, int sample) throws IOException {
+        this.directory = directory;
+        this.fileSize = fileSize;
+        this.maxFiles = maxFiles;
+        this.sample = Math.max(sample, 1);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create capture directory " + directory);
+        }
+    }
+
+    private static MappedByteBuffer map(File file, int size, boolean write) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, write ? "rw" : "r");
+        try {
+            if (write) {
+                randomAccessFile.setLength(size);
+                return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Capture files in directory or the file itself, oldest first
+     */
+    public static File[] listFiles(File path) {
+        if (!path.isDirectory()) {
+            return new File[] { path };
+        }
+        File[] files = path.listFiles();
+        List<File> result = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SUFFIX)) {
+                    result.add(file);
+                }
+            }
+        }
+        File[] sorted = result.toArray(new File[result.size()]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Connections are sampled by remote address, so capture keeps whole sessions
+     */
+    public boolean isSampled(InetSocketAddress remoteAddress) {
+        return sample == 1 || (remoteAddress.hashCode() & Integer.MAX_VALUE) % sample == 0;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Start next file, name is creation time so that files sort in order
+     */
+    private void rotate() throws IOException {
+        fileIndex = Math.max(fileIndex + 1, System.currentTimeMillis());
+        buffer = map(new File(directory, String.format("%020d", fileIndex) + SUFFIX), fileSize, true);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        offset = FILE_HEADER_SIZE;
+
+        File[] files = listFiles(directory);
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            if (!files[i].delete()) {
+                Log.warning("Failed to delete capture file " + files[i]);
+            }
+        }
+    }
+
+    /**
+     * Append record, payload can be null for close records
+     */
+    public synchronized void write(
+            long time, byte type, byte transport, int localPort,
+            InetSocketAddress remoteAddress, ChannelBuffer payload) throws IOException {
+
+        byte[] address = remoteAddress.getAddress().getAddress();
+        int payloadLength = payload != null ? payload.readableBytes() : 0;
+        int length = RECORD_HEADER_SIZE + address.length + payloadLength;
+        if (FILE_HEADER_SIZE + length > fileSize) {
+            dropped++;
+            return;
+        }
+        if (buffer == null || offset + length > fileSize) {
+            rotate();
+        }
+
+        buffer.position(offset + 4);
+        buffer.putLong(time);
+        buffer.put(type);
+        buffer.put(transport);
+        buffer.putShort((short) localPort);
+        buffer.put((byte) address.length);
+        buffer.put(address);
+        buffer.putShort((short) remoteAddress.getPort());
+        if (payload != null) {
+            buffer.put(payload.toByteBuffer());
+        }
+        buffer.putInt(offset, length);
+        offset += length;
+    }
+
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (dropped > 0) {
+            Log.warning(dropped + " captured messages were too big for capture file");
+        }
+    }
+
+    /**
+     * Sequential reader of one capture file
+     */
+    public static class Reader {
+
+        private final MappedByteBuffer buffer;
+        private int offset = FILE_HEADER_SIZE;
+
+        private long time;
+        private byte type;
+        private byte transport;
+        private int localPort;
+        private InetSocketAddress remoteAddress;
+        private ChannelBuffer payload;
+
+        public Reader(File file) throws IOException {
+            buffer = map(file, 0, false);
+            if (buffer.limit() < FILE_HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a capture file " + file);
+            }
+        }
+
+        /**
+         * Move to next record, returns false at the end of file
+         */
+        public boolean next() throws IOException {
+            if (offset + RECORD_HEADER_SIZE > buffer.limit()) {
+                return false;
+            }
+            int length = buffer.getInt(offset);
+            if (length < RECORD_HEADER_SIZE || offset + length > buffer.limit()) {
+                return false;
+            }
+
+            buffer.position(offset + 4);
+            time = buffer.getLong();
+            type = buffer.get();
+            transport = buffer.get();
+            localPort = buffer.getShort() & 0xffff;
+            byte[] address = new byte[buffer.get()];
+            buffer.get(address);
+            remoteAddress = new InetSocketAddress(InetAddress.getByAddress(address), buffer.getShort() & 0xffff);
+
+            int payloadLength = offset + length - buffer.position();
+            if (payloadLength < 0) {
+                throw new IOException("Malformed capture record");
+            }
+            byte[] data = new byte[payloadLength];
+            buffer.get(data);
+            payload = ChannelBuffers.wrappedBuffer(data);
+            offset += length;
+            return true;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public byte getTransport() {
+            return transport;
+        }
+
+        public int getLocalPort() {
+            return localPort;
+        }
+
+        public InetSocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        public ChannelBuffer getPayload() {
+            return payload;
+        }
+
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.DatagramChannel;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+
+/**
+ * Sends traffic capture to a running server
+ *
+ * Every captured connection gets own client channel to the captured local
+ * port on target host, so devices keep their sessions. Records are sent
+ * with original timing divided by speed, speed 0 sends as fast as possible.
+ * Server responses are discarded.
+ *
+ * Arguments: capture file or directory, target host and optional speed.
+ */
+public class TrafficReplay {
+
+    private final String host;
+    private final double speed;
+
+    private final ClientBootstrap tcpBootstrap;
+    private final ConnectionlessBootstrap udpBootstrap;
+
+    private final Map<String, Channel> channels = new HashMap<String, Channel>();
+
+    private long firstTime;
+    private long startNanos;
+
+    private long records;
+    private long bytes;
+    private long sessions;
+
+    /**
+     * Drop responses and close channel on error
+     */
+    private static class DiscardHandler extends SimpleChannelUpstreamHandler {
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+
+    }
+
+    public TrafficReplay(String host, double speed) {
+        this.host = host;
+        this.speed = speed;
+
+        ChannelPipelineFactory pipelineFactory = new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new DiscardHandler());
+            }
+        };
+
+        tcpBootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        tcpBootstrap.setPipelineFactory(pipelineFactory);
+        tcpBootstrap.setOption("tcpNoDelay", true);
+
+        udpBootstrap = new ConnectionlessBootstrap(new NioDatagramChannelFactory(Executors.newCachedThreadPool()));
+        udpBootstrap.setPipelineFactory(pipelineFactory);
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Sleep until record time scaled by speed
+     */
+    private void await(long time) throws InterruptedException {
+        if (records == 0) {
+            firstTime = time;
+            startNanos = System.nanoTime();
+        }
+        if (speed > 0) {
+            long delay = (long) ((time - firstTime) * 1000000 / speed) - (System.nanoTime() - startNanos);
+            if (delay > 0) {
+                Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+            }
+        }
+    }
+
+    private Channel getChannel(TrafficCapture.Reader reader, String key) throws IOException {
+        Channel channel = channels.get(key);
+        if (channel == null || !channel.isOpen()) {
+            if (reader.getTransport() == TrafficCapture.TRANSPORT_UDP) {
+                channel = udpBootstrap.bind(new InetSocketAddress(0));
+            } else {
+                ChannelFuture future = tcpBootstrap.connect(new InetSocketAddress(host, reader.getLocalPort()));
+                channel = future.awaitUninterruptibly().getChannel();
+                if (!future.isSuccess()) {
+                    throw new IOException("Connection to port " + reader.getLocalPort() + " failed");
+                }
+            }
+            channels.put(key, channel);
+            sessions++;
+        }
+        return channel;
+    }
+
+    /**
+     * Send all records of capture file
+     */
+    public void replay(File file) throws IOException, InterruptedException {
+        TrafficCapture.Reader reader = new TrafficCapture.Reader(file);
+        while (reader.next()) {
+            await(reader.getTime());
+            records++;
+
+            String key = reader.getTransport() + ":" + reader.getLocalPort() + ":" + reader.getRemoteAddress();
+            if (reader.getType() == TrafficCapture.TYPE_CLOSE) {
+                Channel channel = channels.remove(key);
+                if (channel != null) {
+                    // Empty write completes after pending ones, close would discard them
+                    channel.write(ChannelBuffers.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+                }
+            } else {
+                Channel channel = getChannel(reader, key);
+                bytes += reader.getPayload().readableBytes();
+                if (reader.getTransport() == TrafficCapture.TRANSPORT_UDP) {
+                    channel.write(reader.getPayload(), new InetSocketAddress(host, reader.getLocalPort()));
+                } else {
+                    channel.write(reader.getPayload());
+                }
+            }
+        }
+    }
+
+    /**
+     * Close remaining channels after pending writes and release threads
+     */
+    public void close() {
+        for (Channel channel : channels.values()) {
+            if (!(channel instanceof DatagramChannel)) {
+                channel.write(ChannelBuffers.EMPTY_BUFFER).awaitUninterruptibly();
+            }
+            channel.close().awaitUninterruptibly();
+        }
+        channels.clear();
+        tcpBootstrap.releaseExternalResources();
+        udpBootstrap.releaseExternalResources();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: TrafficReplay <capture file or directory> <host> [speed]");
+            return;
+        }
+
+        TrafficReplay replay = new TrafficReplay(args[1], args.length > 2 ? Double.valueOf(args[2]) : 1);
+        long start = System.currentTimeMillis();
+        try {
+            for (File file : TrafficCapture.listFiles(new File(args[0]))) {
+                replay.replay(file);
+            }
+        } finally {
+            replay.close();
+        }
+        System.out.println(String.format("%d records, %d bytes, %d sessions in %d ms",
+                replay.getRecords(), replay.getBytes(), replay.getSessions(), System.currentTimeMillis() - start));
+    }
+
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.traccar.helper.Log;
+import org.traccar.helper.RateLimiter;
+
+/**
+ * Asynchronous reverse geocoder with address cache
+ *
+ * Coordinates are rounded to a grid cell, addresses are cached per cell in
+ * LRU order. Concurrent lookups of the same cell share one provider request,
+ * provider requests are made by worker threads within a rate limit. Cache is
+ * saved to a file on stop and loaded on start.
+ */
+public class CachingReverseGeocoder implements ReverseGeocoder {
+
+    /**
+     * Lookup result handler, called with null if address is unknown
+     */
+    public interface Callback {
+        void onAddress(String address);
+    }
+
+    private static final int FILE_VERSION = 1;
+
+    private final ReverseGeocoder provider;
+    private final double scale;
+    private final int cacheSize;
+    private final RateLimiter rateLimiter;
+    private final int threadCount;
+
+    private final Map<Long, String> cache;
+    private final ConcurrentMap<Long, Lookup> inFlight = new ConcurrentHashMap<Long, Lookup>();
+    private final BlockingQueue<Lookup> queue;
+    private final List<Thread> threads = new LinkedList<Thread>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private File cacheFile;
+
+    private volatile boolean running;
+
+    /**
+     * Precision is number of decimal digits kept in coordinates, rate is
+     * maximum provider requests per second (0 for unlimited)
+     */
+    public CachingReverseGeocoder(
+            ReverseGeocoder provider, int precision, final int cacheSize,
+            double rate, int threadCount, int queueSize) {
+        this.provider = provider;
+        this.scale = Math.pow(10, precision);
+        this.cacheSize = cacheSize;
+        this.rateLimiter = new RateLimiter(rate, Math.max(rate, 1));
+        this.threadCount = threadCount;
+        cache = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        queue = new ArrayBlockingQueue<Lookup>(queueSize);
+    }
+
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public synchronized int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Grid cell containing given coordinates
+     */
+    public long getCell(double latitude, double longitude) {
+        long latitudeCell = Math.round(latitude * scale);
+        long longitudeCell = Math.round(longitude * scale);
+        return (latitudeCell << 32) | (longitudeCell & 0xffffffffL);
+    }
+
+    private double getCellLatitude(long cell) {
+        return (cell >> 32) / scale;
+    }
+
+    private double getCellLongitude(long cell) {
+        return ((int) cell) / scale;
+    }
+
+    /**
+     * Cached address, null if cell has not been resolved yet
+     */
+    public String getCachedAddress(double latitude, double longitude) {
+        String address;
+        synchronized (this) {
+            address = cache.get(getCell(latitude, longitude));
+        }
+        if (address != null) {
+            hits.incrementAndGet();
+        }
+        return address;
+    }
+
+    /**
+     * Resolve address, callback may be called on the caller thread
+     */
+    public void getAddress(double latitude, double longitude, Callback callback) {
+        String address = getCachedAddress(latitude, longitude);
+        if (address != null) {
+            callback.onAddress(address);
+            return;
+        }
+
+        long cell = getCell(latitude, longitude);
+        Lookup lookup = new Lookup(cell);
+        Lookup existing = inFlight.putIfAbsent(cell, lookup);
+        if (existing != null) {
+            existing.addCallback(callback);
+            return;
+        }
+        lookup.addCallback(callback);
+
+        if (!running) {
+            resolve(lookup);
+        } else if (!queue.offer(lookup)) {
+            rejected.incrementAndGet();
+            complete(lookup, null);
+        }
+    }
+
+    /**
+     * Blocking lookup through cache
+     */
+    @Override
+    public String getAddress(double latitude, double longitude) {
+        final String[] result = new String[1];
+        final CountDownLatch latch = new CountDownLatch(1);
+        getAddress(latitude, longitude, new Callback() {
+            @Override
+            public void onAddress(String address) {
+                result[0] = address;
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+        return result[0];
+    }
+
+    private void resolve(Lookup lookup) {
+        String address = null;
+        try {
+            rateLimiter.acquire();
+            requests.incrementAndGet();
+            address = provider.getAddress(getCellLatitude(lookup.cell), getCellLongitude(lookup.cell));
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException error) {
+            Log.warning(error);
+        }
+        complete(lookup, address);
+    }
+
+    private void complete(Lookup lookup, String address) {
+        if (address != null) {
+            synchronized (this) {
+                cache.put(lookup.cell, address);
+            }
+        }
+        // Removed after caching so that new lookups find the address
+        inFlight.remove(lookup.cell, lookup);
+        for (Callback callback : lookup.complete(address)) {
+            callback.onAddress(address);
+        }
+    }
+
+    public void start() {
+        load();
+        running = true;
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(new Worker(), "reverse-geocoder-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        threads.clear();
+
+        // Waiting lookups are answered without address
+        List<Lookup> remaining = new ArrayList<Lookup>();
+        queue.drainTo(remaining);
+        for (Lookup lookup : remaining) {
+            complete(lookup, null);
+        }
+        save();
+    }
+
+    private void load() {
+        if (cacheFile == null || !cacheFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (in.readInt() != FILE_VERSION || in.readDouble() != scale) {
+                Log.info("Geocoder cache file format changed, ignoring " + cacheFile);
+                return;
+            }
+            int count = in.readInt();
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    long cell = in.readLong();
+                    cache.put(cell, in.readUTF());
+                }
+            }
+        } catch (IOException error) {
+            Log.warning("Failed to load geocoder cache", error);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException error) {
+                    Log.warning(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write cache in LRU order through temporary file
+     */
+    private void save() {
+        if (cacheFile == null) {
+            return;
+        }
+        List<Map.Entry<Long, String>> entries;
+        synchronized (this) {
+            entries = new ArrayList<Map.Entry<Long, String>>(cache.entrySet());
+        }
+        File temporary = new File(cacheFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(FILE_VERSION);
+            out.writeDouble(scale);
+            out.writeInt(entries.size());
+            for (Map.Entry<Long, String> entry : entries) {
+                out.writeLong(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.close();
+            out = null;
+            if (cacheFile.exists() && !cacheFile.delete() || !temporary.renameTo(cacheFile)) {
+                Log.warning("Failed to replace geocoder cache " + cacheFile);
+            }
+        } catch (IOException error) {
+            Log.warning("Failed to save geocoder cache", error);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException error) {
+                    Log.warning(error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Provider request shared by all callers asking for the same cell
+     */
+    private static class Lookup {
+
+        private final long cell;
+        private List<Callback> callbacks = new ArrayList<Callback>(1);
+        private boolean completed;
+        private String address;
+
+        public Lookup(long cell) {
+            this.cell = cell;
+        }
+
+        public void addCallback(Callback callback) {
+            synchronized (this) {
+                if (!completed) {
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            callback.onAddress(address);
+        }
+
+        public synchronized List<Callback> complete(String address) {
+            this.address = address;
+            completed = true;
+            List<Callback> result = callbacks;
+            callbacks = null;
+            return result;
+        }
+
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    resolve(queue.take());
+                } catch (InterruptedException error) {
+                    break;
+                }
+            }
+        }
+
+    }
+
+}
@@ -27,16 +27,36 @@ public class GoogleReverseGeocoder implements ReverseGeocoder {
 
     private final static String MARKER = "\"formatted_address\" : \"";
 
+    public final static String DEFAULT_URL = "http://maps.googleapis.com/maps/api/geocode/json";
+
+    private final String url;
+    private final int timeout;
+
+    public GoogleReverseGeocoder() {
+        this(DEFAULT_URL, 10000);
+    }
+
+    /**
+     * Custom service address (for proxies and tests), timeout in milliseconds
+     */
+    public GoogleReverseGeocoder(String url, int timeout) {
+        this.url = url;
+        this.timeout = timeout;
+    }
+
     @Override
     public String getAddress(double latitude, double longitude) {
 
+        BufferedReader reader = null;
         try {
-            URL url = new URL("http://maps.googleapis.com/maps/api/geocode/json?latlng=" + latitude + "," + longitude + "&sensor=false");
+            URL url = new URL(this.url + "?latlng=" + latitude + "," + longitude + "&sensor=false");
             URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
 
             connection.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
             
-            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),Charset.forName("UTF-8")));
+            reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),Charset.forName("UTF-8")));
 
             // Find address line
             String line;
@@ -47,10 +67,15 @@ public class GoogleReverseGeocoder implements ReverseGeocoder {
                 }
             }
 
-            reader.close();
-
         } catch(Exception error) {
             Log.warning(error);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception error) {
+                }
+            }
         }
 
         return null;
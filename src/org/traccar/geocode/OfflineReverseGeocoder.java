@@ -0,0 +1,276 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.geocode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.traccar.helper.Log;
+
+/**
+ * Reverse geocoder using local list of places
+ *
+ * Places are stored as points on a unit sphere in an implicit k-d tree:
+ * coordinate arrays are ordered so that the median of every range is the
+ * node splitting it. Straight line distance between such points grows with
+ * great circle distance, so nearest neighbour search is exact.
+ *
+ * File format is one place per line: "latitude,longitude,address".
+ */
+public class OfflineReverseGeocoder implements ReverseGeocoder {
+
+    private static final double EARTH_RADIUS = 6371000.0;
+
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private String[] addresses;
+    private int size;
+
+    private final double maxChord;
+
+    /**
+     * Places farther than max distance in meters are not returned
+     */
+    public OfflineReverseGeocoder(double maxDistance) {
+        maxChord = 2 * Math.sin(Math.min(maxDistance / EARTH_RADIUS, Math.PI) / 2);
+        x = new double[1024];
+        y = new double[1024];
+        z = new double[1024];
+        addresses = new String[1024];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add place, index has to be built before queries
+     */
+    public void add(double latitude, double longitude, String address) {
+        if (size == x.length) {
+            int capacity = size * 2;
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            z = Arrays.copyOf(z, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
+        }
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        x[size] = Math.cos(phi) * Math.cos(lambda);
+        y[size] = Math.cos(phi) * Math.sin(lambda);
+        z[size] = Math.sin(phi);
+        addresses[size] = address;
+        size++;
+    }
+
+    /**
+     * Load places from file, repeated addresses share one string
+     */
+    public void load(File file) throws IOException {
+        Map<String, String> strings = new HashMap<String, String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            int skipped = 0;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] values = line.split(",", 3);
+                if (values.length < 3) {
+                    skipped++;
+                    continue;
+                }
+                try {
+                    String address = values[2].trim();
+                    String existing = strings.get(address);
+                    if (existing == null) {
+                        strings.put(address, address);
+                        existing = address;
+                    }
+                    add(Double.parseDouble(values[0]), Double.parseDouble(values[1]), existing);
+                } catch (NumberFormatException error) {
+                    skipped++;
+                }
+            }
+            if (skipped > 0) {
+                Log.warning("Skipped " + skipped + " invalid lines in " + file);
+            }
+        } finally {
+            reader.close();
+        }
+        build();
+    }
+
+    /**
+     * Arrange places into tree, trims arrays to size
+     */
+    public void build() {
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        z = Arrays.copyOf(z, size);
+        addresses = Arrays.copyOf(addresses, size);
+        build(0, size, 0);
+    }
+
+    private double[] getAxis(int depth) {
+        switch (depth % 3) {
+            case 0:
+                return x;
+            case 1:
+                return y;
+            default:
+                return z;
+        }
+    }
+
+    private void build(int from, int to, int depth) {
+        if (to - from <= 1) {
+            return;
+        }
+        int median = (from + to) >>> 1;
+        select(getAxis(depth), from, to - 1, median);
+        build(from, median, depth + 1);
+        build(median + 1, to, depth + 1);
+    }
+
+    /**
+     * Quickselect, puts k-th smallest value of the axis at index k
+     */
+    private void select(double[] axis, int left, int right, int k) {
+        while (right > left) {
+            double pivot = axis[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (axis[i] < pivot) {
+                    i++;
+                }
+                while (axis[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double t = x[i];
+        x[i] = x[j];
+        x[j] = t;
+        t = y[i];
+        y[i] = y[j];
+        y[j] = t;
+        t = z[i];
+        z[i] = z[j];
+        z[j] = t;
+        String s = addresses[i];
+        addresses[i] = addresses[j];
+        addresses[j] = s;
+    }
+
+    /**
+     * Search state, best is index and squared distance of nearest place
+     */
+    private static class Query {
+
+        private final double x;
+        private final double y;
+        private final double z;
+        private int best = -1;
+        private double bestDistance;
+
+        public Query(double x, double y, double z, double maxDistance) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            bestDistance = maxDistance;
+        }
+
+    }
+
+    private void search(Query query, int from, int to, int depth) {
+        while (from < to) {
+            int median = (from + to) >>> 1;
+            double dx = x[median] - query.x;
+            double dy = y[median] - query.y;
+            double dz = z[median] - query.z;
+            double distance = dx * dx + dy * dy + dz * dz;
+            if (distance <= query.bestDistance) {
+                query.best = median;
+                query.bestDistance = distance;
+            }
+
+            double delta;
+            switch (depth % 3) {
+                case 0:
+                    delta = dx;
+                    break;
+                case 1:
+                    delta = dy;
+                    break;
+                default:
+                    delta = dz;
+                    break;
+            }
+
+            // Near side first, far side only if splitting plane is closer than best match
+            if (delta > 0) {
+                search(query, from, median, depth + 1);
+                if (delta * delta > query.bestDistance) {
+                    return;
+                }
+                from = median + 1;
+            } else {
+                search(query, median + 1, to, depth + 1);
+                if (delta * delta > query.bestDistance) {
+                    return;
+                }
+                to = median;
+            }
+            depth++;
+        }
+    }
+
+    @Override
+    public String getAddress(double latitude, double longitude) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        Query query = new Query(
+                Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi),
+                maxChord * maxChord);
+        search(query, 0, size, 0);
+        return query.best >= 0 ? addresses[query.best] : null;
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.nio.ByteOrder;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Pre-encoded acknowledgement message
+ *
+ * Constant bytes are prepared once, every message copies the template into
+ * a heap buffer and patches only variable fields. Checksum over a range is
+ * precomputed up to the first variable field and continued from there.
+ * Templates are immutable after setup and can be shared between channels.
+ */
+public class AckTemplate {
+
+    public static final int CRC16_CCITT = 1;
+    public static final int CRC16_X25 = 2;
+
+    private static final int MAX_FIELDS = 4;
+
+    private final ByteOrder order;
+    private final byte[] template;
+
+    private final int[] fieldOffsets = new int[MAX_FIELDS];
+    private final int[] fieldSizes = new int[MAX_FIELDS];
+    private int fieldCount;
+
+    private int crcType;
+    private int crcFrom;
+    private int crcTo;
+    private int crcOffset;
+    private int crcResume;
+    private int crcPrefix;
+
+    public AckTemplate(ByteOrder order, byte... template) {
+        this.order = order;
+        this.template = template;
+    }
+
+    public AckTemplate(byte... template) {
+        this(ByteOrder.BIG_ENDIAN, template);
+    }
+
+    public int getLength() {
+        return template.length;
+    }
+
+    /**
+     * Add variable field of 1, 2 or 4 bytes, fields are filled in order of adding
+     */
+    public AckTemplate field(int offset, int size) {
+        fieldOffsets[fieldCount] = offset;
+        fieldSizes[fieldCount] = size;
+        fieldCount++;
+        updatePrefix();
+        return this;
+    }
+
+    /**
+     * Two byte checksum of given type over [from, to) written at offset
+     */
+    public AckTemplate crc(int type, int from, int to, int offset) {
+        crcType = type;
+        crcFrom = from;
+        crcTo = to;
+        crcOffset = offset;
+        updatePrefix();
+        return this;
+    }
+
+    private static int crcUpdate(int type, int crc, byte[] data, int from, int to) {
+        if (type == CRC16_CCITT) {
+            return Crc.crc16CcittUpdate(crc, data, from, to);
+        } else {
+            return Crc.crc16X25Update(crc, data, from, to);
+        }
+    }
+
+    /**
+     * Precompute checksum over constant bytes before the first variable field
+     */
+    private void updatePrefix() {
+        if (crcType == 0) {
+            return;
+        }
+        crcResume = crcTo;
+        for (int i = 0; i < fieldCount; i++) {
+            if (fieldOffsets[i] + fieldSizes[i] > crcFrom && fieldOffsets[i] < crcResume) {
+                crcResume = Math.max(crcFrom, fieldOffsets[i]);
+            }
+        }
+        crcPrefix = crcUpdate(crcType, Crc.crc16CcittStart, template, crcFrom, crcResume);
+    }
+
+    private void writeField(byte[] data, int index, long value) {
+        int offset = fieldOffsets[index];
+        int size = fieldSizes[index];
+        for (int i = 0; i < size; i++) {
+            int shift = order == ByteOrder.BIG_ENDIAN ? (size - 1 - i) * 8 : i * 8;
+            data[offset + i] = (byte) (value >> shift);
+        }
+    }
+
+    private ChannelBuffer finish(byte[] data) {
+        if (crcType != 0) {
+            int crc = crcUpdate(crcType, crcPrefix, data, crcResume, crcTo);
+            if (crcType == CRC16_CCITT) {
+                crc ^= Crc.crc16CcittXorout;
+            }
+            if (order == ByteOrder.BIG_ENDIAN) {
+                data[crcOffset] = (byte) (crc >> 8);
+                data[crcOffset + 1] = (byte) crc;
+            } else {
+                data[crcOffset] = (byte) crc;
+                data[crcOffset + 1] = (byte) (crc >> 8);
+            }
+        }
+        return ChannelBuffers.wrappedBuffer(order, data);
+    }
+
+    public ChannelBuffer create() {
+        return finish(template.clone());
+    }
+
+    public ChannelBuffer create(long value) {
+        byte[] data = template.clone();
+        writeField(data, 0, value);
+        return finish(data);
+    }
+
+    public ChannelBuffer create(long value1, long value2) {
+        byte[] data = template.clone();
+        writeField(data, 0, value1);
+        writeField(data, 1, value2);
+        return finish(data);
+    }
+
+    public ChannelBuffer create(long value1, long value2, long value3) {
+        byte[] data = template.clone();
+        writeField(data, 0, value1);
+        writeField(data, 1, value2);
+        writeField(data, 2, value3);
+        return finish(data);
+    }
+
+}
@@ -17,7 +17,10 @@ package org.traccar.helper;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class AdvancedConnection {
 
@@ -32,6 +35,11 @@ public class AdvancedConnection {
     private String url;
     private String user;
     private String password;
+
+    /**
+     * Prepared statements cache
+     */
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
     
     public AdvancedConnection(String url, String user, String password) {
         this.url = url;
@@ -40,10 +48,7 @@ public class AdvancedConnection {
     }
     
     public final void reset() throws SQLException {
-        if (connection != null) {
-            connection.close();
-            connection = null;
-        }
+        close();
         if (user != null && password != null) {
             connection = DriverManager.getConnection(url, user, password);
         } else {
@@ -58,4 +63,43 @@ public class AdvancedConnection {
         return connection;
     }
 
+    /**
+     * Return cached statement or prepare a new one
+     */
+    public PreparedStatement prepareStatement(String query, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + query;
+        PreparedStatement statement = statements.get(key);
+        if (statement == null) {
+            statement = getInstance().prepareStatement(query, autoGeneratedKeys);
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Check that connection is still alive
+     */
+    public boolean isValid(int timeout) {
+        try {
+            return connection != null && connection.isValid(timeout);
+        } catch (SQLException error) {
+            return false;
+        }
+    }
+
+    /**
+     * Close connection and cached statements
+     */
+    public void close() {
+        statements.clear();
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException error) {
+                Log.warning(error);
+            }
+            connection = null;
+        }
+    }
+
 }
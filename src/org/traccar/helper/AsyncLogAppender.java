@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.io.Flushable;
+import java.io.IOException;
+import org.apache.log4j.Appender;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Log appender that writes events on a background thread
+ *
+ * Events are kept in a fixed size ring. If the ring is full, info and debug
+ * events are dropped and the number of dropped events is logged later,
+ * warnings and errors are never dropped, logging thread waits for space. Target appender is flushed whenever the ring
+ * becomes empty, so it can use buffered output.
+ */
+public class AsyncLogAppender extends AppenderSkeleton {
+
+    private final Appender appender;
+
+    private final LoggingEvent[] ring;
+    private int head;
+    private int size;
+    private long dropped;
+    private boolean closing;
+
+    private final Thread thread;
+
+    public AsyncLogAppender(Appender appender, int capacity) {
+        this.appender = appender;
+        ring = new LoggingEvent[capacity];
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                AsyncLogAppender.this.run();
+            }
+        }, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Called with appender lock held by AppenderSkeleton.doAppend
+     */
+    @Override
+    protected void append(LoggingEvent event) {
+        if (closing) {
+            return;
+        }
+        if (size == ring.length) {
+            if (!event.getLevel().isGreaterOrEqual(Level.WARN)) {
+                dropped++;
+                return;
+            }
+            awaitSpace();
+            if (closing) {
+                return;
+            }
+        }
+        event.getThreadName(); // capture caller thread name before hand-off
+        ring[(head + size) % ring.length] = event;
+        size++;
+        if (size == 1) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait until writer takes events from the ring, lock is released meanwhile
+     */
+    private void awaitSpace() {
+        boolean interrupted = false;
+        while (size == ring.length && !closing) {
+            try {
+                wait();
+            } catch (InterruptedException error) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        LoggingEvent[] batch = new LoggingEvent[ring.length];
+        long reported = 0;
+        while (true) {
+            int count;
+            long lost;
+            synchronized (this) {
+                while (size == 0 && !closing) {
+                    try {
+                        wait();
+                    } catch (InterruptedException error) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (size == 0) {
+                    break;
+                }
+                count = size;
+                for (int i = 0; i < count; i++) {
+                    batch[i] = ring[head];
+                    ring[head] = null;
+                    head = (head + 1) % ring.length;
+                }
+                if (size == ring.length) {
+                    notifyAll();
+                }
+                size = 0;
+                lost = dropped;
+            }
+
+            for (int i = 0; i < count; i++) {
+                appender.doAppend(batch[i]);
+                batch[i] = null;
+            }
+            if (lost > reported) {
+                appender.doAppend(new LoggingEvent(AsyncLogAppender.class.getName(), Logger.getRootLogger(),
+                        Level.WARN, (lost - reported) + " log messages dropped", null));
+                reported = lost;
+            }
+            flush();
+        }
+        flush();
+    }
+
+    private void flush() {
+        if (appender instanceof Flushable) {
+            try {
+                ((Flushable) appender).flush();
+            } catch (IOException error) {
+                errorHandler.error("Log flush failed", error, 0);
+            }
+        }
+    }
+
+    /**
+     * Write remaining events and close target appender
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+        appender.close();
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return false;
+    }
+
+}
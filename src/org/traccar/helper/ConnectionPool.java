@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of database connections
+ */
+public class ConnectionPool {
+
+    /**
+     * Connection attributes
+     */
+    private final String url;
+    private final String user;
+    private final String password;
+
+    /**
+     * Borrow timeout (milliseconds)
+     */
+    private final long timeout;
+
+    /**
+     * Validation timeout (seconds)
+     */
+    private final int validationTimeout;
+
+    private final int minSize;
+    private final Semaphore permits;
+    private final BlockingQueue<AdvancedConnection> idle = new LinkedBlockingQueue<AdvancedConnection>();
+
+    public ConnectionPool(
+            String url, String user, String password,
+            int minSize, int maxSize, long timeout, int validationTimeout) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.timeout = timeout;
+        this.validationTimeout = validationTimeout;
+        permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Open minimum number of connections
+     */
+    public void init() throws SQLException {
+        for (int i = 0; i < minSize; i++) {
+            AdvancedConnection connection = new AdvancedConnection(url, user, password);
+            connection.getInstance();
+            idle.add(connection);
+        }
+    }
+
+    /**
+     * Take validated connection from the pool
+     */
+    public AdvancedConnection borrow() throws SQLException {
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Connection pool exhausted");
+            }
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Connection pool wait interrupted");
+        }
+
+        try {
+            AdvancedConnection connection = idle.poll();
+            if (connection == null) {
+                connection = new AdvancedConnection(url, user, password);
+                connection.getInstance();
+            } else if (!connection.isValid(validationTimeout)) {
+                connection.reset();
+            }
+            return connection;
+        } catch (SQLException error) {
+            permits.release();
+            throw error;
+        } catch (RuntimeException error) {
+            permits.release();
+            throw error;
+        }
+    }
+
+    /**
+     * Return connection to the pool
+     */
+    public void release(AdvancedConnection connection) {
+        idle.add(connection);
+        permits.release();
+    }
+
+    /**
+     * Close idle connections
+     */
+    public void close() {
+        AdvancedConnection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+}
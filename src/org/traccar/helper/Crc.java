@@ -94,14 +94,14 @@ public class Crc {
         0x6E17, 0x7E36, 0x4E55, 0x5E74, 0x2E93, 0x3EB2, 0x0ED1, 0x1EF0
     };
 
-    private static final int crc16CcittStart = 0xFFFF;
-    private static final int crc16CcittXorout = 0xFFFF;
+    public static final int crc16CcittStart = 0xFFFF;
+    public static final int crc16CcittXorout = 0xFFFF;
 
     private static int crc16Unreflected(ByteBuffer buf, int crc_in, int[] table) {
         int crc16 = crc_in;
         
         for (int i = 0; i < buf.remaining(); i++) {
-            crc16 = table[((crc16 >> 8) ^ buf.get(i)) & 0xff] ^ (crc16 << 8);
+            crc16 = table[((crc16 >> 8) ^ buf.get(buf.position() + i)) & 0xff] ^ (crc16 << 8);
         }
 
         return crc16 & 0xFFFF;
@@ -111,12 +111,32 @@ public class Crc {
         int crc16 = crc_in;
         
         for (int i = 0; i < buf.remaining(); i++) {
-            crc16 = table[(crc16 ^ buf.get(i)) & 0xff] ^ (crc16 >> 8);
+            crc16 = table[(crc16 ^ buf.get(buf.position() + i)) & 0xff] ^ (crc16 >> 8);
         }
 
         return crc16 & 0xFFFF;
     }
 
+    /**
+     * Continue CRC-16/CCITT (reflected) over array range, result without final xor
+     */
+    public static int crc16CcittUpdate(int crc, byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            crc = crc16CcittTableReverse[(crc ^ data[i]) & 0xff] ^ (crc >> 8);
+        }
+        return crc & 0xFFFF;
+    }
+
+    /**
+     * Continue CRC-16/X25 (unreflected) over array range
+     */
+    public static int crc16X25Update(int crc, byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            crc = crc16CcittTable[((crc >> 8) ^ data[i]) & 0xff] ^ (crc << 8);
+        }
+        return crc & 0xFFFF;
+    }
+
     public static int crc16Ccitt(ByteBuffer buf) {
         return crc16Reflected(buf, crc16CcittStart, crc16CcittTableReverse) ^ crc16CcittXorout;
     }
@@ -132,7 +152,7 @@ public class Crc {
     public static int crc32(ByteBuffer buf) {
         CRC32 checksum = new CRC32();
         for (int i = 0; i < buf.remaining(); i++) {
-            checksum.update(buf.get(i));
+            checksum.update(buf.get(buf.position() + i));
         }
         return (int) checksum.getValue();
     }
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.util.Date;
+
+/**
+ * UTC time calculation without Calendar
+ *
+ * Fields are lenient same as in Calendar, values out of range roll over
+ * into the next unit. Start of the day is computed arithmetically and the
+ * last computed day is cached, because messages mostly carry current date.
+ */
+public class DateBuilder {
+
+    public static final long MILLIS_PER_SECOND = 1000;
+    public static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    public static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    public static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    public static final long MILLIS_PER_WEEK = 7 * MILLIS_PER_DAY;
+
+    /**
+     * GPS time start, 1980-01-06 00:00 UTC
+     */
+    public static final long GPS_EPOCH = 315964800000L;
+
+    /**
+     * Cached start of day, immutable so that it can be shared between threads
+     */
+    private static class Day {
+
+        private final int key;
+        private final long millis;
+
+        public Day(int key, long millis) {
+            this.key = key;
+            this.millis = millis;
+        }
+
+    }
+
+    private static volatile Day lastDay = new Day(0, 0);
+
+    private static int floorDiv(int x, int y) {
+        int result = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            result--;
+        }
+        return result;
+    }
+
+    /**
+     * Days since epoch for proleptic Gregorian date, month is 1 - 12
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        if (month <= 2) {
+            year--;
+        }
+        int era = floorDiv(year, 400);
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Start of day in milliseconds, month is 1 - 12 and day can be out of range
+     */
+    public static long getDayMillis(int year, int month, int day) {
+        int monthIndex = month - 1;
+        year += floorDiv(monthIndex, 12);
+        month = monthIndex - floorDiv(monthIndex, 12) * 12 + 1;
+
+        if (day < 1 || day > 31 || year < 0 || year > 9999) {
+            return daysFromCivil(year, month, 1) * MILLIS_PER_DAY + (day - 1) * MILLIS_PER_DAY;
+        }
+
+        int key = (year * 16 + month) * 32 + day;
+        Day cached = lastDay;
+        if (cached.key == key) {
+            return cached.millis;
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        lastDay = new Day(key, millis);
+        return millis;
+    }
+
+    /**
+     * Milliseconds since epoch, month is 1 - 12
+     */
+    public static long getMillis(int year, int month, int day, int hour, int minute, int second, int millis) {
+        return getDayMillis(year, month, day)
+                + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE + second * MILLIS_PER_SECOND + millis;
+    }
+
+    /**
+     * Milliseconds since epoch for GPS week number and time of week
+     */
+    public static long getGpsMillis(long week, long weekMillis) {
+        return GPS_EPOCH + week * MILLIS_PER_WEEK + weekMillis;
+    }
+
+    /**
+     * Decode binary coded decimal byte
+     */
+    public static int fromBcd(int value) {
+        return (value >>> 4) * 10 + (value & 0x0f);
+    }
+
+    private int year = 1970;
+    private int month = 1;
+    private int day = 1;
+    private int hour;
+    private int minute;
+    private int second;
+    private int millis;
+    private long offset;
+
+    /**
+     * Builder starting at 1970-01-01 00:00 UTC
+     */
+    public DateBuilder() {
+    }
+
+    /**
+     * Builder starting at the day of given time
+     */
+    public DateBuilder(long time) {
+        long days = time / MILLIS_PER_DAY;
+        if (time % MILLIS_PER_DAY < 0) {
+            days--;
+        }
+        // Inverse of daysFromCivil
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+    }
+
+    public DateBuilder setYear(int year) {
+        this.year = year;
+        return this;
+    }
+
+    /**
+     * Month 1 - 12
+     */
+    public DateBuilder setMonth(int month) {
+        this.month = month;
+        return this;
+    }
+
+    public DateBuilder setDay(int day) {
+        this.day = day;
+        return this;
+    }
+
+    public DateBuilder setDate(int year, int month, int day) {
+        this.year = year;
+        this.month = month;
+        this.day = day;
+        return this;
+    }
+
+    /**
+     * Hour of day 0 - 23
+     */
+    public DateBuilder setHour(int hour) {
+        this.hour = hour;
+        return this;
+    }
+
+    public DateBuilder setMinute(int minute) {
+        this.minute = minute;
+        return this;
+    }
+
+    public DateBuilder setSecond(int second) {
+        this.second = second;
+        return this;
+    }
+
+    public DateBuilder setMillis(int millis) {
+        this.millis = millis;
+        return this;
+    }
+
+    public DateBuilder setTime(int hour, int minute, int second) {
+        this.hour = hour;
+        this.minute = minute;
+        this.second = second;
+        return this;
+    }
+
+    public DateBuilder addMillis(long millis) {
+        offset += millis;
+        return this;
+    }
+
+    public long getMillis() {
+        return getMillis(year, month, day, hour, minute, second, millis) + offset;
+    }
+
+    public Date getDate() {
+        return new Date(getMillis());
+    }
+
+}
@@ -15,12 +15,16 @@
  */
 package org.traccar.helper;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.OperatingSystemMXBean;
 import java.lang.management.RuntimeMXBean;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Appender;
 import org.apache.log4j.DailyRollingFileAppender;
 import org.apache.log4j.Layout;
@@ -36,19 +40,41 @@ public class Log {
     
     private static final String LOGGER_NAME = "traccar";
     
+    private static final String SAMPLE_PREFIX = "logger.sample.";
+    private static final String RATE_PREFIX = "logger.rate.";
+
     private static Logger logger = null;
-    
+
+    private static Appender appender = null;
+
+    private static final Map<String, Sampler> samplers = new ConcurrentHashMap<String, Sampler>();
+
     public static void setupLogger(Properties properties) throws IOException {
 
         Layout layout = new PatternLayout("%d{yyyy-MM-dd HH:mm:ss} %5p: %m%n");
 
-        Appender appender = new DailyRollingFileAppender(
-                layout, properties.getProperty("logger.file"), "'.'yyyyMMdd");
+        boolean async = Boolean.valueOf(properties.getProperty("logger.async", "false"));
+
+        DailyRollingFileAppender fileAppender = async ? new BufferedFileAppender() : new DailyRollingFileAppender();
+        fileAppender.setLayout(layout);
+        fileAppender.setFile(properties.getProperty("logger.file"));
+        fileAppender.setDatePattern("'.'yyyyMMdd");
+        fileAppender.activateOptions();
+
+        close();
+        if (async) {
+            appender = new AsyncLogAppender(
+                    fileAppender, Integer.valueOf(properties.getProperty("logger.bufferSize", "8192")));
+        } else {
+            appender = fileAppender;
+        }
 
         LogManager.resetConfiguration();
         logger = Logger.getLogger(LOGGER_NAME);
         logger.addAppender(appender);
-        logger.setLevel(Level.ALL);
+        logger.setLevel(Level.toLevel(properties.getProperty("logger.level"), Level.ALL));
+
+        setupSamplers(properties);
 
         // Workaround for "Bug 745866 - (EDG-45) Possible netty logging config problem"
         InternalLoggerFactory.setDefaultFactory(new InternalLoggerFactory() {
@@ -59,6 +85,51 @@ public class Log {
         });
     }
 
+    /**
+     * Read per-category limits, "logger.sample.<category>" keeps every n-th
+     * event and "logger.rate.<category>" allows n events per second
+     */
+    public static void setupSamplers(Properties properties) {
+        samplers.clear();
+        for (String key : properties.stringPropertyNames()) {
+            String category;
+            if (key.startsWith(SAMPLE_PREFIX)) {
+                category = key.substring(SAMPLE_PREFIX.length());
+            } else if (key.startsWith(RATE_PREFIX)) {
+                category = key.substring(RATE_PREFIX.length());
+            } else {
+                continue;
+            }
+            if (!samplers.containsKey(category)) {
+                int every = Integer.valueOf(properties.getProperty(SAMPLE_PREFIX + category, "1"));
+                double rate = Double.valueOf(properties.getProperty(RATE_PREFIX + category, "0"));
+                samplers.put(category, new Sampler(every, rate));
+            }
+        }
+    }
+
+    /**
+     * Check sampling and rate limit of category, unconfigured categories
+     * are always logged
+     */
+    public static boolean sample(String category) {
+        Sampler sampler = samplers.get(category);
+        return sampler == null || sampler.accept();
+    }
+
+    /**
+     * Flush and close log file, waits for asynchronous writer
+     */
+    public static void close() {
+        if (appender != null) {
+            if (logger != null) {
+                logger.removeAppender(appender);
+            }
+            appender.close();
+            appender = null;
+        }
+    }
+
     public static Logger getLogger() {
         if (logger == null) {
             logger = Logger.getLogger(LOGGER_NAME);
@@ -127,14 +198,121 @@ public class Log {
         getLogger().warn(s.toString());
     }
 
+    public static boolean isInfoEnabled() {
+        return getLogger().isInfoEnabled();
+    }
+
+    public static boolean isDebugEnabled() {
+        return getLogger().isDebugEnabled();
+    }
+
     public static void info(String msg) {
         getLogger().info(msg);
     }
 
+    /**
+     * Message with "{}" placeholders, formatted only if level is enabled
+     */
+    public static void info(String format, Object arg) {
+        if (isInfoEnabled()) {
+            info(format(format, arg));
+        }
+    }
+
+    public static void info(String format, Object arg1, Object arg2) {
+        if (isInfoEnabled()) {
+            info(format(format, arg1, arg2));
+        }
+    }
+
+    public static void info(String format, Object arg1, Object arg2, Object arg3) {
+        if (isInfoEnabled()) {
+            info(format(format, arg1, arg2, arg3));
+        }
+    }
+
     public static void debug(String msg) {
         getLogger().debug(msg);
     }
 
+    public static void debug(String format, Object arg) {
+        if (isDebugEnabled()) {
+            debug(format(format, arg));
+        }
+    }
+
+    public static void debug(String format, Object arg1, Object arg2) {
+        if (isDebugEnabled()) {
+            debug(format(format, arg1, arg2));
+        }
+    }
+
+    public static void debug(String format, Object arg1, Object arg2, Object arg3) {
+        if (isDebugEnabled()) {
+            debug(format(format, arg1, arg2, arg3));
+        }
+    }
+
+    /**
+     * Replace "{}" placeholders with arguments in order
+     */
+    public static String format(String format, Object... args) {
+        StringBuilder s = new StringBuilder(format.length() + 16 * args.length);
+        int from = 0;
+        for (Object arg : args) {
+            int i = format.indexOf("{}", from);
+            if (i < 0) {
+                break;
+            }
+            s.append(format, from, i).append(arg);
+            from = i + 2;
+        }
+        s.append(format, from, format.length());
+        return s.toString();
+    }
+
+    /**
+     * Every n-th event with optional rate limit
+     */
+    private static class Sampler {
+
+        private final int every;
+        private final RateLimiter limiter;
+        private final AtomicLong count = new AtomicLong();
+
+        public Sampler(int every, double rate) {
+            this.every = Math.max(every, 1);
+            limiter = rate > 0 ? new RateLimiter(rate, Math.max(rate, 1)) : null;
+        }
+
+        public boolean accept() {
+            if (every > 1 && count.getAndIncrement() % every != 0) {
+                return false;
+            }
+            return limiter == null || limiter.tryAcquire();
+        }
+
+    }
+
+    /**
+     * File appender with buffered output, flushed by asynchronous writer
+     */
+    private static class BufferedFileAppender extends DailyRollingFileAppender implements Flushable {
+
+        public BufferedFileAppender() {
+            setImmediateFlush(false);
+            setBufferedIO(true);
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (qw != null) {
+                qw.flush();
+            }
+        }
+
+    }
+
     /**
      * Netty logger implementation
      */
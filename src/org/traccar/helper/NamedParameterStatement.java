@@ -18,6 +18,8 @@ package org.traccar.helper;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class NamedParameterStatement {
 
@@ -44,12 +46,28 @@ public class NamedParameterStatement {
     private int autoGeneratedKeys;
 
     /**
-     * Initialize statement
+     * Parsed queries cache
      */
-    public NamedParameterStatement(AdvancedConnection connection, String query) {
+    private static final ConcurrentMap<String, NamedParameterStatement> parsedCache =
+            new ConcurrentHashMap<String, NamedParameterStatement>();
 
+    private NamedParameterStatement(String query) {
         indexMap = new HashMap<String, List<Integer>>();
         parsedQuery = parse(query, indexMap);
+    }
+
+    /**
+     * Initialize statement
+     */
+    public NamedParameterStatement(AdvancedConnection connection, String query) {
+
+        NamedParameterStatement parsed = parsedCache.get(query);
+        if (parsed == null) {
+            parsed = new NamedParameterStatement(query);
+            parsedCache.putIfAbsent(query, parsed);
+        }
+        indexMap = parsed.indexMap;
+        parsedQuery = parsed.parsedQuery;
         this.connection = connection;
     }
 
@@ -110,22 +128,18 @@ public class NamedParameterStatement {
     }
 
     public void reset(boolean resetConnection) throws SQLException {
-        if (statement != null) {
-            statement.close();
-            statement = null;
-        }
+        statement = null;
         if (resetConnection) {
             connection.reset();
         }
-        statement = connection.getInstance().prepareStatement(parsedQuery, autoGeneratedKeys);
+        statement = connection.prepareStatement(parsedQuery, autoGeneratedKeys);
     }
 
     public void prepare(int autoGeneratedKeys) throws SQLException {
         this.autoGeneratedKeys = autoGeneratedKeys;
         try {
-            if (statement == null) {
-                reset(false);
-            } else if (statement.getWarnings() != null) {
+            reset(false);
+            if (statement.getWarnings() != null) {
                 reset(true);
             }
         } catch (SQLException firstError) {
@@ -157,6 +171,20 @@ public class NamedParameterStatement {
         return statement.executeUpdate();
     }
 
+    /**
+     * Add current parameters to the batch
+     */
+    public void addBatch() throws SQLException {
+        statement.addBatch();
+    }
+
+    /**
+     * Execute batch of queries without result
+     */
+    public int[] executeBatch() throws SQLException {
+        return statement.executeBatch();
+    }
+
     /**
      * Return generated keys
      */
@@ -165,10 +193,10 @@ public class NamedParameterStatement {
     }
 
     /**
-     * Immediately closes the statement
+     * Releases statement parameters, cached statement stays open
      */
     public void close() throws SQLException {
-        statement.close();
+        statement.clearParameters();
     }
 
     public void setInt(String name, Integer value) throws SQLException {
@@ -219,6 +247,38 @@ public class NamedParameterStatement {
         }
     }
 
+    public void setDouble(String name, double value) throws SQLException {
+
+        List<Integer> indexList = indexMap.get(name);
+        if (indexList != null) for (Integer index: indexList) {
+            statement.setDouble(index, value);
+        }
+    }
+
+    public void setBoolean(String name, boolean value) throws SQLException {
+
+        List<Integer> indexList = indexMap.get(name);
+        if (indexList != null) for (Integer index: indexList) {
+            statement.setBoolean(index, value);
+        }
+    }
+
+    public void setTimestamp(String name, long value) throws SQLException {
+
+        List<Integer> indexList = indexMap.get(name);
+        if (indexList != null) for (Integer index: indexList) {
+            statement.setTimestamp(index, new Timestamp(value));
+        }
+    }
+
+    public void setNull(String name, int sqlType) throws SQLException {
+
+        List<Integer> indexList = indexMap.get(name);
+        if (indexList != null) for (Integer index: indexList) {
+            statement.setNull(index, sqlType);
+        }
+    }
+
     public void setTimestamp(String name, Date value) throws SQLException {
 
         List<Integer> indexList = indexMap.get(name);
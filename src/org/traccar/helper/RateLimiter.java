@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+/**
+ * Token bucket rate limiter
+ */
+public class RateLimiter {
+
+    private final double rate;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Rate in permits per second, burst is maximum number of saved permits
+     */
+    public RateLimiter(double rate, double burst) {
+        this.rate = rate;
+        this.burst = burst;
+        tokens = burst;
+        lastRefill = System.nanoTime();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1000000000.0);
+        lastRefill = now;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (rate <= 0) {
+            return true;
+        }
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wait for permit, rate 0 or less means unlimited
+     */
+    public void acquire() throws InterruptedException {
+        if (rate <= 0) {
+            return;
+        }
+        while (true) {
+            long delay;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                delay = (long) Math.ceil((1 - tokens) * 1000 / rate);
+            }
+            Thread.sleep(Math.max(delay, 1));
+        }
+    }
+
+}
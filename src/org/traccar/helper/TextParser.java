@@ -0,0 +1,445 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.helper;
+
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Text message tokenizer working on buffer bytes
+ *
+ * Reads numbers, coordinates and delimiters from current position without
+ * creating strings. Malformed input doesn't throw, it sets error flag and
+ * all following reads return zero, so decoder checks hasError() once after
+ * reading all fields.
+ */
+public class TextParser {
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+    private final ChannelBuffer buf;
+    private final int start;
+    private final int end;
+    private int index;
+    private boolean error;
+
+    public TextParser(ChannelBuffer buf) {
+        this.buf = buf;
+        start = buf.readerIndex();
+        end = buf.writerIndex();
+        index = start;
+    }
+
+    public TextParser(String message) {
+        this(ChannelBuffers.copiedBuffer(message, CHARSET));
+    }
+
+    /**
+     * Parser for decoder message, frame buffer or string
+     */
+    public static TextParser create(Object message) {
+        if (message instanceof String) {
+            return new TextParser((String) message);
+        }
+        return new TextParser((ChannelBuffer) message);
+    }
+
+    public boolean hasError() {
+        return error;
+    }
+
+    /**
+     * Mark message as malformed
+     */
+    public void setError() {
+        error = true;
+    }
+
+    public int length() {
+        return end - start;
+    }
+
+    /**
+     * Position relative to message start
+     */
+    public int position() {
+        return index - start;
+    }
+
+    public void position(int position) {
+        index = start + position;
+    }
+
+    /**
+     * Move to position and clear error flag to retry parsing from there
+     */
+    public void reset(int position) {
+        index = start + position;
+        error = false;
+    }
+
+    public int remaining() {
+        return end - index;
+    }
+
+    public boolean hasRemaining() {
+        return index < end;
+    }
+
+    /**
+     * Next character or -1 at the end
+     */
+    public int peek() {
+        return index < end ? buf.getByte(index) : -1;
+    }
+
+    public boolean isDigit() {
+        return index < end && isDigit(buf.getByte(index));
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Check prefix at current position without moving
+     */
+    public boolean startsWith(String prefix) {
+        if (prefix.length() > end - index) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buf.getByte(index + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Position of text after current position, -1 if not found
+     */
+    public int indexOf(String text) {
+        for (int i = index; i <= end - text.length(); i++) {
+            int j = 0;
+            while (j < text.length() && buf.getByte(i + j) == text.charAt(j)) {
+                j++;
+            }
+            if (j == text.length()) {
+                return i - start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Position of character after current position, -1 if not found
+     */
+    public int indexOf(char c) {
+        int i = buf.indexOf(index, end, (byte) c);
+        return i < 0 ? -1 : i - start;
+    }
+
+    public boolean contains(String text) {
+        return indexOf(text) >= 0;
+    }
+
+    public void skip(int count) {
+        if (count > end - index) {
+            error = true;
+            index = end;
+        } else {
+            index += count;
+        }
+    }
+
+    /**
+     * Consume text, error if it doesn't match
+     */
+    public void expect(String text) {
+        if (!error && startsWith(text)) {
+            index += text.length();
+        } else {
+            error = true;
+        }
+    }
+
+    /**
+     * Consume character, error if it doesn't match
+     */
+    public void expect(char c) {
+        if (!error && index < end && buf.getByte(index) == c) {
+            index++;
+        } else {
+            error = true;
+        }
+    }
+
+    /**
+     * Consume character if it matches, returns true if it did
+     */
+    public boolean optional(char c) {
+        if (index < end && buf.getByte(index) == c) {
+            index++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Move after next occurrence of delimiter, error if there is none
+     */
+    public void skipField(char delimiter) {
+        int i = buf.indexOf(index, end, (byte) delimiter);
+        if (!error && i >= 0) {
+            index = i + 1;
+        } else {
+            error = true;
+        }
+    }
+
+    public void skipDigits() {
+        while (index < end && isDigit(buf.getByte(index))) {
+            index++;
+        }
+    }
+
+    /**
+     * Read one of allowed characters, error and zero otherwise
+     */
+    public char readChar(String allowed) {
+        if (!error && index < end) {
+            char c = (char) buf.getByte(index);
+            if (allowed.indexOf(c) >= 0) {
+                index++;
+                return c;
+            }
+        }
+        error = true;
+        return 0;
+    }
+
+    /**
+     * Read fixed number of decimal digits
+     */
+    public int readInt(int digits) {
+        if (error || digits > end - index) {
+            error = true;
+            return 0;
+        }
+        int result = 0;
+        for (int i = 0; i < digits; i++) {
+            byte b = buf.getByte(index++);
+            if (!isDigit(b)) {
+                error = true;
+                return 0;
+            }
+            result = result * 10 + b - '0';
+        }
+        return result;
+    }
+
+    /**
+     * Read optionally signed decimal integer of any length
+     */
+    public long readLong() {
+        boolean negative = optional('-');
+        int begin = index;
+        long result = 0;
+        while (index < end && isDigit(buf.getByte(index))) {
+            result = result * 10 + buf.getByte(index++) - '0';
+        }
+        if (index == begin || index - begin > 18) {
+            error = true;
+            return 0;
+        }
+        return negative ? -result : result;
+    }
+
+    public int readInt() {
+        long result = readLong();
+        if (result > Integer.MAX_VALUE || result < Integer.MIN_VALUE) {
+            error = true;
+            return 0;
+        }
+        return (int) result;
+    }
+
+    /**
+     * Read hexadecimal integer of any length
+     */
+    public long readHex() {
+        int begin = index;
+        long result = 0;
+        int value;
+        while (index < end && (value = hexValue(buf.getByte(index))) >= 0) {
+            result = (result << 4) + value;
+            index++;
+        }
+        if (index == begin || index - begin > 15) {
+            error = true;
+            return 0;
+        }
+        return result;
+    }
+
+    /**
+     * Read optionally signed decimal number, fraction part is optional
+     */
+    public double readDouble() {
+        return readDouble(end - index);
+    }
+
+    /**
+     * Read decimal number not longer than given number of characters
+     */
+    public double readDouble(int maxLength) {
+        if (error || maxLength < 0 || maxLength > end - index) {
+            error = true;
+            return 0;
+        }
+        int limit = index + maxLength;
+        boolean negative = index < limit && buf.getByte(index) == '-';
+        if (negative) {
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        while (index < limit) {
+            byte b = buf.getByte(index);
+            if (isDigit(b)) {
+                mantissa = mantissa * 10 + b - '0';
+                digits++;
+                if (fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            index++;
+        }
+
+        if (digits == 0 || digits > 18) {
+            error = true;
+            return 0;
+        }
+        double result = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -result : result;
+    }
+
+    /**
+     * Read NMEA style coordinate DDMM.MMMM in degrees, degree digits are
+     * counted from the decimal point if digits is zero
+     */
+    public double readCoordinate(int digits) {
+        if (digits > 0) {
+            int degrees = readInt(digits);
+            return degrees + readDouble() / 60;
+        }
+        double value = readDouble();
+        int degrees = (int) (value / 100);
+        return degrees + (value - degrees * 100) / 60;
+    }
+
+    /**
+     * Read string of given length
+     */
+    public String readString(int length) {
+        if (error || length < 0 || length > end - index) {
+            error = true;
+            return null;
+        }
+        String result = buf.toString(index, length, CHARSET);
+        index += length;
+        return result;
+    }
+
+    /**
+     * Read string up to delimiter and consume delimiter
+     */
+    public String readString(char delimiter) {
+        int i = buf.indexOf(index, end, (byte) delimiter);
+        if (error || i < 0) {
+            error = true;
+            return null;
+        }
+        String result = buf.toString(index, i - index, CHARSET);
+        index = i + 1;
+        return result;
+    }
+
+    /**
+     * Read string of given length that contains only decimal digits
+     */
+    public String readDigits(int length) {
+        if (error || length > end - index) {
+            error = true;
+            return null;
+        }
+        for (int i = index; i < index + length; i++) {
+            if (!isDigit(buf.getByte(i))) {
+                error = true;
+                return null;
+            }
+        }
+        return readString(length);
+    }
+
+    /**
+     * Read string of decimal digits of any non-zero length
+     */
+    public String readDigits() {
+        int i = index;
+        while (i < end && isDigit(buf.getByte(i))) {
+            i++;
+        }
+        if (i == index) {
+            error = true;
+            return null;
+        }
+        return readDigits(i - index);
+    }
+
+    /**
+     * Whole message as string, for logging
+     */
+    @Override
+    public String toString() {
+        return buf.toString(start, end - start, CHARSET);
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.http;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.traccar.FleetState;
+import org.traccar.model.Attributes;
+import org.traccar.model.Position;
+
+/**
+ * Last known positions as JSON
+ *
+ * Parameters: "since" returns only devices changed after given version,
+ * "device" returns single device. Response contains current version to be
+ * used in the next request, unchanged state is answered with 304.
+ */
+public class FleetServlet extends HttpServlet {
+
+    private final FleetState fleetState;
+
+    public FleetServlet(FleetState fleetState) {
+        this.fleetState = fleetState;
+    }
+
+    private static void appendField(StringBuilder s, String key, Object value) {
+        if (value != null) {
+            s.append(",\"").append(key).append("\":");
+            if (value instanceof String) {
+                Attributes.appendJsonString(s, (String) value);
+            } else {
+                s.append(value);
+            }
+        }
+    }
+
+    public static void appendEntry(StringBuilder s, FleetState.Entry entry) {
+        Position position = entry.getPosition();
+        s.append("{\"version\":").append(entry.getVersion());
+        appendField(s, "deviceId", position.getDeviceId());
+        appendField(s, "imei", position.getDeviceIMEI());
+        appendField(s, "time", position.getTime() != null ? position.getTime().getTime() : null);
+        appendField(s, "valid", position.getValid());
+        appendField(s, "latitude", position.getLatitude());
+        appendField(s, "longitude", position.getLongitude());
+        appendField(s, "altitude", position.getAltitude());
+        appendField(s, "speed", position.getSpeed());
+        appendField(s, "course", position.getCourse());
+        appendField(s, "address", position.getAddress());
+        if (position.getAttributes() != null) {
+            s.append(",\"attributes\":").append(position.getAttributes().toJson());
+        }
+        s.append('}');
+    }
+
+    public static String format(long version, List<FleetState.Entry> entries) {
+        StringBuilder s = new StringBuilder(64 + entries.size() * 256);
+        s.append("{\"version\":").append(version).append(",\"positions\":[");
+        boolean first = true;
+        for (FleetState.Entry entry : entries) {
+            if (!first) {
+                s.append(',');
+            }
+            first = false;
+            appendEntry(s, entry);
+        }
+        s.append("]}");
+        return s.toString();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        // Version is taken before reading, every change up to it is already indexed
+        long version = fleetState.getVersion();
+        String etag = "\"" + version + "\"";
+
+        List<FleetState.Entry> entries;
+        try {
+            String device = request.getParameter("device");
+            String since = request.getParameter("since");
+            if (device != null) {
+                FleetState.Entry entry = fleetState.get(Long.valueOf(device));
+                entries = entry != null
+                        ? Collections.singletonList(entry) : Collections.<FleetState.Entry>emptyList();
+            } else if (since != null) {
+                entries = fleetState.getChangedSince(Long.valueOf(since));
+                if (entries.isEmpty()) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+            } else {
+                if (etag.equals(request.getHeader("If-None-Match"))) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+                entries = fleetState.getChangedSince(0);
+            }
+        } catch (NumberFormatException error) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        byte[] data = format(version, entries).getBytes("UTF-8");
+        response.setContentType("application/json; charset=UTF-8");
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentLength(data.length);
+        response.getOutputStream().write(data);
+    }
+
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.traccar.PositionSpool;
+import org.traccar.helper.Log;
+import org.traccar.model.Position;
+
+/**
+ * Forwards positions to the application web service
+ */
+public class PositionForwarder {
+
+    private final String url;
+    private final int threadCount;
+    private final int batchSize;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int retries;
+    private final long retryDelay;
+
+    private final BlockingQueue<Position> queue;
+    private final List<Thread> threads = new LinkedList<Thread>();
+    private volatile boolean running;
+
+    /**
+     * Spool for positions that can't be delivered (optional)
+     */
+    private PositionSpool spool;
+
+    public void setSpool(PositionSpool spool) {
+        this.spool = spool;
+    }
+
+    public PositionForwarder(Properties properties) {
+        url = properties.getProperty("forward.url", "http://new.lokusapp.com/devices/new_point");
+        threadCount = Integer.valueOf(properties.getProperty("forward.threads", "4"));
+        batchSize = Integer.valueOf(properties.getProperty("forward.batchSize", "1"));
+        connectTimeout = Integer.valueOf(properties.getProperty("forward.connectTimeout", "5000"));
+        readTimeout = Integer.valueOf(properties.getProperty("forward.readTimeout", "10000"));
+        retries = Integer.valueOf(properties.getProperty("forward.retries", "3"));
+        retryDelay = Long.valueOf(properties.getProperty("forward.retryDelay", "500"));
+        queue = new ArrayBlockingQueue<Position>(
+                Integer.valueOf(properties.getProperty("forward.queueSize", "10000")));
+    }
+
+    /**
+     * Queue position for forwarding, returns false if queue is full and there is no spool
+     */
+    public boolean forward(Position position) {
+        if (queue.offer(position)) {
+            return true;
+        }
+        if (spool != null) {
+            try {
+                spool.append(position);
+                return true;
+            } catch (IOException error) {
+                Log.warning("Failed to spool position", error);
+            }
+        }
+        return false;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public void start() {
+        running = true;
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(new Sender(), "position-forwarder-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        threads.clear();
+
+        // Queued positions go to spool, otherwise they are lost
+        List<Position> remaining = new ArrayList<Position>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            if (spool != null) {
+                spool(remaining);
+            } else {
+                Log.warning("Dropped " + remaining.size() + " queued positions on stop");
+            }
+        }
+    }
+
+    private static void appendParameter(StringBuilder s, String key, Object value)
+            throws UnsupportedEncodingException {
+        if (s.length() > 0) {
+            s.append('&');
+        }
+        s.append(key).append('=');
+        if (value != null) {
+            s.append(URLEncoder.encode(value.toString(), "UTF-8"));
+        }
+    }
+
+    /**
+     * Format position as form encoded parameters
+     */
+    public static String formatPosition(Position position) throws UnsupportedEncodingException {
+        StringBuilder s = new StringBuilder();
+        appendParameter(s, "latitude", position.getLatitude());
+        appendParameter(s, "longitude", position.getLongitude());
+        appendParameter(s, "imei", position.getDeviceIMEI());
+        appendParameter(s, "altitude", position.getAltitude());
+        appendParameter(s, "course", position.getCourse());
+        appendParameter(s, "extended", position.getExtendedInfo());
+        appendParameter(s, "speed", position.getSpeed());
+        if (position.getTime() != null) {
+            appendParameter(s, "datetime", position.getTime().getTime() / 1000);
+        }
+        appendParameter(s, "accuracy", 0);
+        return s.toString();
+    }
+
+    /**
+     * Check status and read full response so that connection can be reused
+     */
+    private static void consume(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if (code >= 300) {
+            InputStream error = connection.getErrorStream();
+            if (error != null) {
+                error.close();
+            }
+            throw new IOException("HTTP response code " + code);
+        }
+        InputStream in = connection.getInputStream();
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private HttpURLConnection open(String target) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(target).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestProperty("User-Agent", "traccar");
+        return connection;
+    }
+
+    private void sendGet(String query) throws IOException {
+        HttpURLConnection connection = open(url + "?" + query);
+        connection.setRequestMethod("GET");
+        consume(connection);
+    }
+
+    /**
+     * Send batch as one POST request with a position per line
+     */
+    private void sendPost(List<String> queries) throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (String query : queries) {
+            body.append(query).append('\n');
+        }
+        byte[] data = body.toString().getBytes("UTF-8");
+
+        HttpURLConnection connection = open(url);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(data.length);
+        connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        consume(connection);
+    }
+
+    /**
+     * Send positions immediately without retries
+     */
+    public void send(List<Position> positions) throws IOException {
+        if (batchSize == 1) {
+            for (Position position : positions) {
+                sendGet(formatPosition(position));
+            }
+        } else {
+            List<String> queries = new ArrayList<String>(positions.size());
+            for (Position position : positions) {
+                queries.add(formatPosition(position));
+            }
+            sendPost(queries);
+        }
+    }
+
+    /**
+     * Send with exponential backoff, returns false if all attempts failed
+     */
+    private boolean sendWithRetries(List<String> queries) throws InterruptedException {
+        long delay = retryDelay;
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            try {
+                if (batchSize == 1) {
+                    sendGet(queries.get(0));
+                } else {
+                    sendPost(queries);
+                }
+                return true;
+            } catch (IOException error) {
+                Log.warning("Forwarding attempt " + (attempt + 1) + " failed", error);
+            }
+            if (attempt < retries) {
+                Thread.sleep(delay);
+                delay *= 2;
+            }
+        }
+        return false;
+    }
+
+    private void spool(List<Position> positions) {
+        try {
+            spool.append(positions);
+        } catch (IOException error) {
+            Log.warning("Failed to spool " + positions.size() + " positions", error);
+        }
+    }
+
+    private void failed(List<Position> positions) {
+        if (spool != null) {
+            Log.warning("Failed to forward " + positions.size() + " positions, spooling");
+            spool(positions);
+        } else {
+            Log.warning("Failed to forward " + positions.size() + " positions");
+        }
+    }
+
+    private class Sender implements Runnable {
+
+        @Override
+        public void run() {
+            List<Position> batch = new ArrayList<Position>(batchSize);
+            List<String> queries = new ArrayList<String>(batchSize);
+            while (running) {
+                try {
+                    Position first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+
+                    // Keep order, positions go after the ones waiting for replay
+                    if (spool != null && !spool.isEmpty()) {
+                        spool(batch);
+                        continue;
+                    }
+
+                    for (Position position : batch) {
+                        queries.add(formatPosition(position));
+                    }
+                    if (!sendWithRetries(queries)) {
+                        failed(new ArrayList<Position>(batch));
+                    }
+                } catch (InterruptedException error) {
+                    // Stopped during backoff, batch is not delivered
+                    if (!batch.isEmpty()) {
+                        failed(new ArrayList<Position>(batch));
+                    }
+                    break;
+                } catch (Exception error) {
+                    Log.warning(error);
+                } finally {
+                    batch.clear();
+                    queries.clear();
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.traccar.FleetState;
+
+/**
+ * Fans out fleet state changes to subscribers
+ *
+ * Each subscriber has a bounded buffer that keeps only the newest position
+ * per device, so slow consumers get coalesced updates instead of growing
+ * memory. Waiting long-poll requests are woken up on new data.
+ */
+public class PushBroker implements FleetState.Listener {
+
+    /**
+     * Callback for a waiting request
+     */
+    public interface Waiter {
+        void wake();
+    }
+
+    public static class Subscriber {
+
+        private final String id;
+        private final Set<Long> deviceIds;
+        private final int bufferSize;
+
+        private final LinkedHashMap<Long, FleetState.Entry> buffer = new LinkedHashMap<Long, FleetState.Entry>();
+        private boolean overflow;
+        private Waiter waiter;
+        private volatile long lastSeen = System.currentTimeMillis();
+
+        public Subscriber(String id, Set<Long> deviceIds, int bufferSize) {
+            this.id = id;
+            this.deviceIds = deviceIds;
+            this.bufferSize = bufferSize;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Subscribed devices, null for all devices
+         */
+        public Set<Long> getDeviceIds() {
+            return deviceIds;
+        }
+
+        private void offer(FleetState.Entry entry) {
+            Waiter wake = null;
+            synchronized (this) {
+                Long deviceId = entry.getPosition().getDeviceId();
+                buffer.remove(deviceId);
+                buffer.put(deviceId, entry);
+                if (buffer.size() > bufferSize) {
+                    Iterator<Long> iterator = buffer.keySet().iterator();
+                    iterator.next();
+                    iterator.remove();
+                    overflow = true;
+                }
+                wake = waiter;
+                waiter = null;
+            }
+            if (wake != null) {
+                wake.wake();
+            }
+        }
+
+        /**
+         * Take buffered positions in arrival order
+         */
+        public synchronized List<FleetState.Entry> drain() {
+            lastSeen = System.currentTimeMillis();
+            List<FleetState.Entry> result = new ArrayList<FleetState.Entry>(buffer.values());
+            buffer.clear();
+            return result;
+        }
+
+        /**
+         * Return and reset flag telling that some updates were dropped
+         */
+        public synchronized boolean takeOverflow() {
+            boolean result = overflow;
+            overflow = false;
+            return result;
+        }
+
+        /**
+         * Register waiting request, returns false if data is already available
+         */
+        public boolean await(Waiter newWaiter) {
+            Waiter previous;
+            synchronized (this) {
+                lastSeen = System.currentTimeMillis();
+                if (!buffer.isEmpty()) {
+                    return false;
+                }
+                previous = waiter;
+                waiter = newWaiter;
+            }
+            // Only one request waits per subscriber
+            if (previous != null) {
+                previous.wake();
+            }
+            return true;
+        }
+
+        public synchronized boolean isWaiting() {
+            return waiter != null;
+        }
+
+        /**
+         * Unregister waiter after timeout, returns false if it was already woken up
+         */
+        public synchronized boolean cancel(Waiter oldWaiter) {
+            if (waiter == oldWaiter) {
+                waiter = null;
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+    private final int bufferSize;
+    private final long expireTimeout;
+
+    private final ConcurrentMap<String, Subscriber> subscribers = new ConcurrentHashMap<String, Subscriber>();
+    private final ConcurrentMap<Long, Set<Subscriber>> byDevice = new ConcurrentHashMap<Long, Set<Subscriber>>();
+    private final Set<Subscriber> allDevices =
+            Collections.newSetFromMap(new ConcurrentHashMap<Subscriber, Boolean>());
+
+    private volatile long lastExpire;
+
+    public PushBroker(int bufferSize, long expireTimeout) {
+        this.bufferSize = bufferSize;
+        this.expireTimeout = expireTimeout;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Create subscription for given devices, null for all devices
+     */
+    public Subscriber subscribe(Set<Long> deviceIds) {
+        expire();
+        Subscriber subscriber = new Subscriber(UUID.randomUUID().toString(), deviceIds, bufferSize);
+        subscribers.put(subscriber.getId(), subscriber);
+        if (deviceIds == null) {
+            allDevices.add(subscriber);
+        } else {
+            for (Long deviceId : deviceIds) {
+                Set<Subscriber> set = byDevice.get(deviceId);
+                if (set == null) {
+                    set = Collections.newSetFromMap(new ConcurrentHashMap<Subscriber, Boolean>());
+                    Set<Subscriber> existing = byDevice.putIfAbsent(deviceId, set);
+                    if (existing != null) {
+                        set = existing;
+                    }
+                }
+                set.add(subscriber);
+            }
+        }
+        return subscriber;
+    }
+
+    public Subscriber getSubscriber(String id) {
+        expire();
+        return subscribers.get(id);
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber.getId());
+        if (subscriber.getDeviceIds() == null) {
+            allDevices.remove(subscriber);
+        } else {
+            for (Long deviceId : subscriber.getDeviceIds()) {
+                Set<Subscriber> set = byDevice.get(deviceId);
+                if (set != null) {
+                    set.remove(subscriber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove subscribers that stopped polling, runs at most once per second
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        if (now - lastExpire < 1000) {
+            return;
+        }
+        lastExpire = now;
+        for (Subscriber subscriber : subscribers.values()) {
+            if (now - subscriber.lastSeen > expireTimeout && !subscriber.isWaiting()) {
+                unsubscribe(subscriber);
+            }
+        }
+    }
+
+    @Override
+    public void onUpdate(FleetState.Entry entry) {
+        for (Subscriber subscriber : allDevices) {
+            subscriber.offer(entry);
+        }
+        Set<Subscriber> set = byDevice.get(entry.getPosition().getDeviceId());
+        if (set != null) {
+            for (Subscriber subscriber : set) {
+                subscriber.offer(entry);
+            }
+        }
+    }
+
+}
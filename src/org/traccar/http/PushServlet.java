@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.traccar.FleetState;
+
+/**
+ * Long-poll position push
+ *
+ * Request with "devices" parameter (comma separated ids, omit for all
+ * devices) creates subscription and returns current positions. Requests
+ * with "subscription" parameter wait until new positions arrive or poll
+ * timeout expires. Unknown subscription is answered with 404.
+ */
+public class PushServlet extends HttpServlet {
+
+    private final FleetState fleetState;
+    private final PushBroker pushBroker;
+    private final long timeout;
+
+    public PushServlet(FleetState fleetState, PushBroker pushBroker, long timeout) {
+        this.fleetState = fleetState;
+        this.pushBroker = pushBroker;
+        this.timeout = timeout;
+    }
+
+    private static Set<Long> parseDevices(String devices) {
+        if (devices == null || devices.isEmpty()) {
+            return null;
+        }
+        Set<Long> result = new HashSet<Long>();
+        for (String device : devices.split(",")) {
+            result.add(Long.valueOf(device.trim()));
+        }
+        return result;
+    }
+
+    private void send(
+            HttpServletResponse response, PushBroker.Subscriber subscriber,
+            boolean overflow, List<FleetState.Entry> entries) throws IOException {
+
+        StringBuilder s = new StringBuilder(64 + entries.size() * 256);
+        s.append("{\"subscription\":\"").append(subscriber.getId()).append('"');
+        s.append(",\"overflow\":").append(overflow);
+        s.append(",\"positions\":[");
+        boolean first = true;
+        for (FleetState.Entry entry : entries) {
+            if (!first) {
+                s.append(',');
+            }
+            first = false;
+            FleetServlet.appendEntry(s, entry);
+        }
+        s.append("]}");
+
+        byte[] data = s.toString().getBytes("UTF-8");
+        response.setContentType("application/json; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentLength(data.length);
+        response.getOutputStream().write(data);
+    }
+
+    private void subscribe(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Set<Long> devices;
+        try {
+            devices = parseDevices(request.getParameter("devices"));
+        } catch (NumberFormatException error) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        PushBroker.Subscriber subscriber = pushBroker.subscribe(devices);
+
+        // Initial state, later changes come through the subscription
+        List<FleetState.Entry> entries = new ArrayList<FleetState.Entry>();
+        if (devices == null) {
+            entries.addAll(fleetState.getChangedSince(0));
+        } else {
+            for (Long deviceId : devices) {
+                FleetState.Entry entry = fleetState.get(deviceId);
+                if (entry != null) {
+                    entries.add(entry);
+                }
+            }
+        }
+        send(response, subscriber, false, entries);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+        String id = request.getParameter("subscription");
+        if (id == null) {
+            subscribe(request, response);
+            return;
+        }
+
+        final PushBroker.Subscriber subscriber = pushBroker.getSubscriber(id);
+        if (subscriber == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // Second pass after wake up or timeout always answers
+        boolean overflow = subscriber.takeOverflow();
+        List<FleetState.Entry> entries = subscriber.drain();
+        if (!entries.isEmpty() || overflow || request.getDispatcherType() == DispatcherType.ASYNC) {
+            send(response, subscriber, overflow, entries);
+            return;
+        }
+
+        final AsyncContext context = request.startAsync();
+        context.setTimeout(timeout);
+        final PushBroker.Waiter waiter = new PushBroker.Waiter() {
+            @Override
+            public void wake() {
+                context.dispatch();
+            }
+        };
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                if (subscriber.cancel(waiter)) {
+                    context.dispatch();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                subscriber.cancel(waiter);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        if (!subscriber.await(waiter)) {
+            context.dispatch();
+        }
+    }
+
+}
@@ -24,7 +24,11 @@ import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.sql.DataSource;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.webapp.WebAppContext;
+import org.traccar.FleetState;
 import org.traccar.helper.Log;
 
 /**
@@ -68,7 +72,7 @@ public class WebServer {
         }
     }
 
-    public WebServer(Properties properties) {
+    public WebServer(Properties properties, FleetState fleetState, PushBroker pushBroker) {
         String address = properties.getProperty("http.address");
         Integer port = Integer.valueOf(properties.getProperty("http.port", "8082"));
         if (address == null) {
@@ -79,10 +83,33 @@ public class WebServer {
 
         initDataSource(properties);
 
+        ContextHandlerCollection handlers = new ContextHandlerCollection();
+
         WebAppContext webapp = new WebAppContext();
         webapp.setContextPath("/");
         webapp.setWar(properties.getProperty("http.application"));
-        server.setHandler(webapp);
+        handlers.addHandler(webapp);
+
+        // Live fleet state
+        if (fleetState != null) {
+            ServletContextHandler api = new ServletContextHandler();
+            api.setContextPath(properties.getProperty("http.fleetPath", "/api/fleet"));
+            api.addServlet(new ServletHolder(new FleetServlet(fleetState)), "/*");
+            handlers.addHandler(api);
+        }
+
+        // Long-poll position push
+        if (fleetState != null && pushBroker != null) {
+            ServletContextHandler push = new ServletContextHandler();
+            push.setContextPath(properties.getProperty("http.pushPath", "/api/push"));
+            ServletHolder holder = new ServletHolder(new PushServlet(fleetState, pushBroker,
+                    Long.valueOf(properties.getProperty("http.push.timeout", "30000"))));
+            holder.setAsyncSupported(true);
+            push.addServlet(holder, "/*");
+            handlers.addHandler(push);
+        }
+
+        server.setHandler(handlers);
     }
 
     public void start() {
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact ordered map of extended position attributes
+ *
+ * Integer, boolean and double values are stored as primitive bits, other
+ * values as objects. Keys are interned so lookups compare references first.
+ */
+public class Attributes {
+
+    private static final byte TYPE_OBJECT = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_BOOLEAN = 3;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final ConcurrentMap<String, String> keys = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Return shared instance of the key
+     */
+    public static String intern(String key) {
+        String existing = keys.putIfAbsent(key, key);
+        return existing != null ? existing : key;
+    }
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private long[] primitives = new long[INITIAL_CAPACITY];
+    private Object[] objects;
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public String getKey(int index) {
+        return names[index];
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < size; i++) {
+            if (names[i] == key) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int slot(String key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                String[] newNames = new String[capacity];
+                System.arraycopy(names, 0, newNames, 0, size);
+                names = newNames;
+                byte[] newTypes = new byte[capacity];
+                System.arraycopy(types, 0, newTypes, 0, size);
+                types = newTypes;
+                long[] newPrimitives = new long[capacity];
+                System.arraycopy(primitives, 0, newPrimitives, 0, size);
+                primitives = newPrimitives;
+                if (objects != null) {
+                    Object[] newObjects = new Object[capacity];
+                    System.arraycopy(objects, 0, newObjects, 0, size);
+                    objects = newObjects;
+                }
+            }
+            index = size++;
+            names[index] = intern(key);
+        } else if (objects != null) {
+            objects[index] = null;
+        }
+        return index;
+    }
+
+    public void set(String key, long value) {
+        int index = slot(key);
+        types[index] = TYPE_LONG;
+        primitives[index] = value;
+    }
+
+    public void set(String key, double value) {
+        int index = slot(key);
+        types[index] = TYPE_DOUBLE;
+        primitives[index] = Double.doubleToRawLongBits(value);
+    }
+
+    public void set(String key, boolean value) {
+        int index = slot(key);
+        types[index] = TYPE_BOOLEAN;
+        primitives[index] = value ? 1 : 0;
+    }
+
+    /**
+     * Set value keeping primitive storage for common boxed types
+     */
+    public void set(String key, Object value) {
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            set(key, ((Number) value).longValue());
+        } else if (value instanceof Double) {
+            set(key, ((Double) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            set(key, ((Boolean) value).booleanValue());
+        } else {
+            int index = slot(key);
+            if (objects == null) {
+                objects = new Object[names.length];
+            }
+            types[index] = TYPE_OBJECT;
+            objects[index] = value;
+        }
+    }
+
+    public boolean contains(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    public Object get(String key) {
+        int index = indexOf(key);
+        return index >= 0 ? getValue(index) : null;
+    }
+
+    public Object getValue(int index) {
+        switch (types[index]) {
+            case TYPE_LONG:
+                return primitives[index];
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(primitives[index]);
+            case TYPE_BOOLEAN:
+                return primitives[index] != 0;
+            default:
+                return objects[index];
+        }
+    }
+
+    /**
+     * Hash of all keys and values without boxing, order dependent
+     */
+    public long hash() {
+        long hash = size;
+        for (int i = 0; i < size; i++) {
+            hash = hash * 31 + names[i].hashCode();
+            hash = hash * 31 + (types[i] == TYPE_OBJECT
+                    ? (objects[i] != null ? objects[i].hashCode() : 0) : primitives[i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Return numeric value, null if missing or not a number
+     */
+    public Long getLong(String key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        switch (types[index]) {
+            case TYPE_LONG:
+                return primitives[index];
+            case TYPE_DOUBLE:
+                return (long) Double.longBitsToDouble(primitives[index]);
+            case TYPE_OBJECT:
+                return parseLong(objects[index]);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Return numeric value, null if missing or not a number
+     */
+    public Double getDouble(String key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        switch (types[index]) {
+            case TYPE_LONG:
+                return (double) primitives[index];
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(primitives[index]);
+            case TYPE_OBJECT:
+                return parseDouble(objects[index]);
+            default:
+                return null;
+        }
+    }
+
+    private static Long parseLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.valueOf(value.toString());
+            } catch (NumberFormatException error) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Double parseDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            try {
+                return Double.valueOf(value.toString());
+            } catch (NumberFormatException error) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void appendValue(StringBuilder s, int index) {
+        switch (types[index]) {
+            case TYPE_LONG:
+                s.append(primitives[index]);
+                break;
+            case TYPE_DOUBLE:
+                s.append(Double.longBitsToDouble(primitives[index]));
+                break;
+            case TYPE_BOOLEAN:
+                s.append(primitives[index] != 0);
+                break;
+            default:
+                s.append(objects[index]);
+                break;
+        }
+    }
+
+    /**
+     * Render attributes in legacy XML format
+     */
+    public String toXml(String root) {
+        StringBuilder s = new StringBuilder(32 + size * 24);
+        s.append('<').append(root).append('>');
+        for (int i = 0; i < size; i++) {
+            s.append('<').append(names[i]).append('>');
+            appendValue(s, i);
+            s.append("</").append(names[i]).append('>');
+        }
+        s.append("</").append(root).append('>');
+        return s.toString();
+    }
+
+    /**
+     * Append quoted and escaped JSON string
+     */
+    public static void appendJsonString(StringBuilder s, String value) {
+        s.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    s.append("\\\"");
+                    break;
+                case '\\':
+                    s.append("\\\\");
+                    break;
+                case '\n':
+                    s.append("\\n");
+                    break;
+                case '\r':
+                    s.append("\\r");
+                    break;
+                case '\t':
+                    s.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        s.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        s.append(c);
+                    }
+                    break;
+            }
+        }
+        s.append('"');
+    }
+
+    /**
+     * Render attributes as JSON object
+     */
+    public String toJson() {
+        StringBuilder s = new StringBuilder(16 + size * 24);
+        s.append('{');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                s.append(',');
+            }
+            appendJsonString(s, names[i]);
+            s.append(':');
+            if (types[i] == TYPE_OBJECT) {
+                if (objects[i] == null) {
+                    s.append("null");
+                } else {
+                    appendJsonString(s, objects[i].toString());
+                }
+            } else if (types[i] == TYPE_DOUBLE) {
+                double value = Double.longBitsToDouble(primitives[i]);
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    s.append("null");
+                } else {
+                    s.append(value);
+                }
+            } else {
+                appendValue(s, i);
+            }
+        }
+        s.append('}');
+        return s.toString();
+    }
+
+}
@@ -60,29 +60,55 @@ public class Data {
 
 
 	/**
-	 * Server time (UTC)
+	 * Server time (UTC), zero if not set
 	 */
-	private Date serverTime;
+	private long serverTime;
 
-	public Date getServerTime() {
+	public long getServerTimeMillis() {
 		return serverTime;
 	}
 
-	public void setServerTime(Date serverTime) {
+	public void setServerTimeMillis(long serverTime) {
 		this.serverTime = serverTime;
 	}
 
+	public Date getServerTime() {
+		return serverTime != 0 ? new Date(serverTime) : null;
+	}
+
+	public void setServerTime(Date serverTime) {
+		this.serverTime = serverTime != null ? serverTime.getTime() : 0;
+	}
+
 	/**
-	 * Extended information in XML format
+	 * Extended information in XML format, rendered from attributes on demand
 	 */
 	private String extendedInfo;
 
 	public String getExtendedInfo() {
+		if (extendedInfo == null && attributes != null) {
+			extendedInfo = attributes.toXml(ExtendedInfoFormatter.ROOT_NODE);
+		}
 		return extendedInfo;
 	}
 
 	public void setExtendedInfo(String extendedInfo) {
 		this.extendedInfo = extendedInfo;
+		this.attributes = null;
+	}
+
+	/**
+	 * Typed extended information
+	 */
+	private Attributes attributes;
+
+	public Attributes getAttributes() {
+		return attributes;
+	}
+
+	public void setAttributes(Attributes attributes) {
+		this.attributes = attributes;
+		this.extendedInfo = null;
 	}
 
 }
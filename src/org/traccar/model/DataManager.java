@@ -16,6 +16,7 @@
 package org.traccar.model;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data manager
@@ -28,11 +29,14 @@ public interface DataManager {
     public List<Device> getDevices() throws Exception;
     public Device getDeviceByImei(String imei) throws Exception;
     public Device addDevice(String imei) throws Exception;
+    public List<Device> addDevices(List<String> imeis) throws Exception;
 
     /**
      * Manage positions
      */
     public Long addPosition(Position position) throws Exception;
+    public void addPositions(List<Position> positions) throws Exception;
     public void updateLatestPosition(Long deviceId, Long positionId) throws Exception;
+    public void updateLatestPositions(Map<Long, Long> positionIds) throws Exception;
 
 }
@@ -20,25 +20,11 @@ import java.net.*;
 import java.sql.*;
 import java.util.*;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-
 import org.traccar.helper.AdvancedConnection;
+import org.traccar.helper.ConnectionPool;
 import org.traccar.helper.DriverDelegate;
 import org.traccar.helper.Log;
 import org.traccar.helper.NamedParameterStatement;
-import org.xml.sax.InputSource;
-
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URI;
-import java.net.URLEncoder;
-import java.net.MalformedURLException; 
-import java.io.UnsupportedEncodingException;
-
-
 
 /**
  * Database abstraction class
@@ -50,12 +36,20 @@ public class DatabaseDataManager implements DataManager {
     }
 
     /**
-     * Database statements
+     * Database connections
      */
-    private NamedParameterStatement queryGetDevices;
-    private NamedParameterStatement queryAddPosition;
-    private NamedParameterStatement queryUpdateLatestPosition;
-    private NamedParameterStatement queryAddDevice;
+    private ConnectionPool connectionPool;
+
+    /**
+     * Database queries
+     */
+    private String queryGetDevices;
+    private String queryGetDevicesSince;
+    private String queryGetDeviceByImei;
+    private String queryGetDevicesChanged;
+    private String queryAddPosition;
+    private String queryUpdateLatestPosition;
+    private String queryAddDevice;
 
     /**
      * Initialize database
@@ -77,259 +71,523 @@ public class DatabaseDataManager implements DataManager {
             }
         }
 
-        // Refresh delay
-        String refreshDelay = properties.getProperty("database.refreshDelay");
-        if (refreshDelay != null) {
-            devicesRefreshDelay = Long.valueOf(refreshDelay) * 1000;
-        } else {
-            devicesRefreshDelay = new Long(300) * 1000; // Magic number
-        }
-
         // Connect database
         String url = properties.getProperty("database.url");
         String user = properties.getProperty("database.user");
         String password = properties.getProperty("database.password");
-        AdvancedConnection connection = new AdvancedConnection(url, user, password);
+        connectionPool = new ConnectionPool(url, user, password,
+                Integer.valueOf(properties.getProperty("database.minPoolSize", "1")),
+                Integer.valueOf(properties.getProperty("database.maxPoolSize", "10")),
+                Long.valueOf(properties.getProperty("database.poolTimeout", "30000")),
+                Integer.valueOf(properties.getProperty("database.validationTimeout", "5")));
+        connectionPool.init();
 
         // Load statements from configuration
-        String query;
+        queryGetDevices = properties.getProperty("database.selectDevice");
+        queryGetDevicesSince = properties.getProperty("database.selectDevicesSince");
+        queryGetDeviceByImei = properties.getProperty("database.selectDeviceByImei");
+        queryGetDevicesChanged = properties.getProperty("database.selectDevicesChanged");
+        queryAddPosition = properties.getProperty("database.insertPosition");
+        queryUpdateLatestPosition = properties.getProperty("database.updateLatestPosition");
 
-        query = properties.getProperty("database.selectDevice");
-        if (query != null) {
-            queryGetDevices = new NamedParameterStatement(connection, query);
-        }
+        //add device
+        queryAddDevice = properties.getProperty("database.addDevice");
 
-        query = properties.getProperty("database.insertPosition");
-        if (query != null) {
-            queryAddPosition = new NamedParameterStatement(connection, query);
-        }
+        // Device cache (delays in seconds)
+        deviceRegistry = new DeviceRegistry(new DeviceRegistry.Loader() {
+            @Override
+            public List<Device> load(Long sinceId) throws Exception {
+                return sinceId != null ? getDevicesSince(sinceId) : getDevices();
+            }
+        },
+                Long.valueOf(properties.getProperty("database.refreshDelay", "300")) * 1000,
+                Long.valueOf(properties.getProperty("database.fullRefreshDelay", "900")) * 1000,
+                Long.valueOf(properties.getProperty("database.unknownDeviceTtl", "60")) * 1000);
+        deviceRegistry.loadAll();
+        deviceRegistry.start();
+    }
 
-        query = properties.getProperty("database.updateLatestPosition");
-        if (query != null) {
-            queryUpdateLatestPosition = new NamedParameterStatement(connection, query);
-        }
+    /**
+     * Release database connections
+     */
+    public void close() {
+        deviceRegistry.stop();
+        connectionPool.close();
+    }
 
-        //add device
-        query = properties.getProperty("database.addDevice");
-        if (query != null) {
-            queryAddDevice = new NamedParameterStatement(connection, query);
+    private List<Device> readDevices(NamedParameterStatement statement) throws SQLException {
+        List<Device> deviceList = new LinkedList<Device>();
+        ResultSet result = statement.executeQuery();
+        while (result.next()) {
+            Device device = new Device();
+            device.setId(result.getLong("id"));
+            device.setImei(result.getString("imei"));
+            deviceList.add(device);
         }
-
+        return deviceList;
     }
 
-    @Override
-    public synchronized List<Device> getDevices() throws SQLException {
+    /**
+     * Changed rows are queried with overlap, so that server and database
+     * clock difference and transactions committed late are covered
+     */
+    private static final long CHANGED_OVERLAP = 60000;
 
-        List<Device> deviceList = new LinkedList<Device>();
+    private volatile long lastDevicesQuery;
+
+    @Override
+    public List<Device> getDevices() throws SQLException {
 
         if (queryGetDevices != null) {
-            queryGetDevices.prepare();
-            ResultSet result = queryGetDevices.executeQuery();
-            while (result.next()) {
-                Device device = new Device();
-                device.setId(result.getLong("id"));
-                device.setImei(result.getString("imei"));
-                deviceList.add(device);
+            AdvancedConnection connection = connectionPool.borrow();
+            try {
+                long now = System.currentTimeMillis();
+                NamedParameterStatement statement = new NamedParameterStatement(connection, queryGetDevices);
+                statement.prepare();
+                List<Device> list = readDevices(statement);
+                lastDevicesQuery = now;
+                return list;
+            } finally {
+                connectionPool.release(connection);
             }
         }
 
-        return deviceList;
+        return new LinkedList<Device>();
     }
 
     /**
-     * Devices cache
+     * Devices with id above given one and optionally rows changed since
+     * previous query, falls back to full list
      */
-    private Map<String, Device> devices;
-    private Calendar devicesLastUpdate;
-    private Long devicesRefreshDelay;
-
-    @Override
-    public Device getDeviceByImei(String imei) throws SQLException {
+    private List<Device> getDevicesSince(Long id) throws SQLException {
 
-        if ((devices == null) || (Calendar.getInstance().getTimeInMillis() - devicesLastUpdate.getTimeInMillis() > devicesRefreshDelay)) {
-            List<Device> list = getDevices();
-            devices = new HashMap<String, Device>();
-            for (Device device: list) {
-                devices.put(device.getImei(), device);
+        if (queryGetDevicesSince != null) {
+            AdvancedConnection connection = connectionPool.borrow();
+            try {
+                long now = System.currentTimeMillis();
+                NamedParameterStatement statement = new NamedParameterStatement(connection, queryGetDevicesSince);
+                statement.prepare();
+                statement.setLong("id", id);
+                List<Device> list = readDevices(statement);
+
+                if (queryGetDevicesChanged != null) {
+                    statement = new NamedParameterStatement(connection, queryGetDevicesChanged);
+                    statement.prepare();
+                    statement.setTimestamp("since", lastDevicesQuery - CHANGED_OVERLAP);
+                    list.addAll(readDevices(statement));
+                }
+                lastDevicesQuery = now;
+                return list;
+            } finally {
+                connectionPool.release(connection);
             }
-            devicesLastUpdate = Calendar.getInstance();
         }
 
-        return devices.get(imei);
+        return getDevices();
     }
 
+    /**
+     * Devices cache
+     */
+    private DeviceRegistry deviceRegistry;
+
     @Override
-    public synchronized Long addPosition(Position position) throws SQLException {
+    public Device getDeviceByImei(String imei) throws Exception {
+        return deviceRegistry.getDeviceByImei(imei);
+    }
+
+    @Override
+    public Long addPosition(Position position) throws SQLException {
 
         if (queryAddPosition != null) {
-            queryAddPosition.prepare(Statement.RETURN_GENERATED_KEYS);
-
-            queryAddPosition.setLong("device_id", position.getDeviceId());
-            queryAddPosition.setTimestamp("time", position.getTime());
-            queryAddPosition.setBoolean("valid", position.getValid());
-            queryAddPosition.setDouble("altitude", position.getAltitude());
-            queryAddPosition.setDouble("latitude", position.getLatitude());
-            queryAddPosition.setDouble("longitude", position.getLongitude());
-            queryAddPosition.setDouble("speed", position.getSpeed());
-            queryAddPosition.setDouble("course", position.getCourse());
-            queryAddPosition.setString("address", position.getAddress());
-            queryAddPosition.setString("extended_info", position.getExtendedInfo());
-            
-            // DELME: Temporary compatibility support
-            XPath xpath = XPathFactory.newInstance().newXPath();
+            AdvancedConnection connection = connectionPool.borrow();
             try {
-                InputSource source = new InputSource(new StringReader(position.getExtendedInfo()));
-                String index = xpath.evaluate("/info/index", source);
-                if (!index.isEmpty()) {
-                    queryAddPosition.setLong("id", Long.valueOf(index));
-                } else {
-                    queryAddPosition.setLong("id", null);
-                }
-                source = new InputSource(new StringReader(position.getExtendedInfo()));
-                String power = xpath.evaluate("/info/power", source);
-                if (!power.isEmpty()) {
-                    queryAddPosition.setDouble("power", Double.valueOf(power));
-                } else {
-                    queryAddPosition.setLong("power", null);
-                }
-            } catch (XPathExpressionException e) {
-                Log.warning("Error in XML: " + position.getExtendedInfo(), e);
-                queryAddPosition.setLong("id", null);
-                queryAddPosition.setLong("power", null);
-            }
+                NamedParameterStatement statement = new NamedParameterStatement(connection, queryAddPosition);
+                statement.prepare(Statement.RETURN_GENERATED_KEYS);
 
-            //queryAddPosition.executeUpdate();
-
-            //aqui mandar al webservice.
-
-
-            
-            String htt2 = "http";
-            String dom2 = "new.lokusapp.com";
-            String dire2 = "/devices/new_point";
-            String params_send2 = "latitude=" + position.getLatitude() ;
-            params_send2 = params_send2 + "&longitude=" + position.getLongitude(); 
-            params_send2 = params_send2 + "&imei=" + position.getDeviceIMEI()  ;
-            params_send2 = params_send2 + "&altitude=" + position.getAltitude() ;
-            params_send2 = params_send2 + "&course=" + position.getCourse() ;
-            params_send2 = params_send2 + "&extended=" + position.getExtendedInfo();  
-            params_send2 = params_send2 + "&speed=" + position.getSpeed()   ;
-            params_send2 = params_send2 + "&datetime=" + String.valueOf(position.getTime().getTime() / 1000);  
-            params_send2 = params_send2 + "&accuracy=0"; 
-            
-            
-            Log.info("POSITION alt: " + position.getAltitude().toString());
-            Log.info("POSITION ext: " + position.getExtendedInfo().toString());
-            Log.info("POSITION course: " + position.getCourse().toString());
-            Log.info("POSITION speed: " + position.getSpeed().toString());
-            
-            URI uri =null;
-            String request =null;
-            
-            
-
-
-            // al nuevo 
-            uri =null;
-            request =null;
-			try {
-				uri = new URI(
-				        htt2, 
-				        dom2, 
-				        dire2,
-				        params_send2,
-				        null);
-			} catch (URISyntaxException e1) {
-				// TODO Auto-generated catch block
-				e1.printStackTrace();
-			}
-            request = uri.toASCIIString();
-            
-            try {
-            	Log.info("YO mando :  " + request);
-                sendGet(request);
-                Log.info("OK al envio de url:  "+ request);
-            } catch (Exception e) {
-            	Log.error("ha dado error al mandar la URL: " + request);
-                e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-            }
+                bindPosition(statement, position);
 
-            ResultSet result = queryAddPosition.getGeneratedKeys();
-            if (result != null && result.next()) {
-                return result.getLong(1);
+                statement.executeUpdate();
+
+                ResultSet result = statement.getGeneratedKeys();
+                if (result != null && result.next()) {
+                    return result.getLong(1);
+                }
+            } finally {
+                connectionPool.release(connection);
             }
         }
 
         return null;
     }
 
+    @Override
+    public void addPositions(List<Position> positions) throws SQLException {
 
-    private void sendGet(String url) throws Exception {
+        if (queryAddPosition != null) {
+            AdvancedConnection connection = connectionPool.borrow();
+            try {
+                addPositions(connection, positions);
+            } finally {
+                connectionPool.release(connection);
+            }
+        }
+    }
 
-        //String url = "http://www.google.com/search?q=mkyong";
+    /**
+     * Cleared when driver doesn't return all generated keys of a batch
+     */
+    private volatile boolean batchKeysSupported = true;
 
-        URL obj = new URL(url);
-        HttpURLConnection con = (HttpURLConnection) obj.openConnection();
+    private void addPositions(AdvancedConnection connection, List<Position> positions) throws SQLException {
 
-        // optional default is GET
-        con.setRequestMethod("GET");
+        NamedParameterStatement insert = new NamedParameterStatement(connection, queryAddPosition);
+        insert.prepare(Statement.RETURN_GENERATED_KEYS);
 
-        //add request header
-        con.setRequestProperty("User-Agent", "123");
+        // One transaction per batch
+        Connection instance = connection.getInstance();
+        instance.setAutoCommit(false);
+        try {
+            if (!batchKeysSupported || !insertBatch(instance, insert, positions)) {
+                insertRows(insert, positions);
+            }
+            instance.commit();
+        } catch (SQLException error) {
+            instance.rollback();
+            throw error;
+        } finally {
+            instance.setAutoCommit(true);
+        }
+    }
 
-        int responseCode = con.getResponseCode();
-        //System.out.println("\nSending 'GET' request to URL : " + url);
-        //System.out.println("Response Code : " + responseCode);
+    /**
+     * Batch insert, returns false and rolls back if not all keys were returned
+     */
+    private boolean insertBatch(
+            Connection instance, NamedParameterStatement insert, List<Position> positions) throws SQLException {
+        for (Position position : positions) {
+            bindPosition(insert, position);
+            insert.addBatch();
+        }
+        insert.executeBatch();
 
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(con.getInputStream()));
-        String inputLine;
-        StringBuffer response = new StringBuffer();
+        // Generated keys are returned in batch order,
+        // some drivers (H2) return only the last key
+        List<Long> keys = new ArrayList<Long>(positions.size());
+        ResultSet result = insert.getGeneratedKeys();
+        if (result != null) {
+            while (result.next()) {
+                keys.add(result.getLong(1));
+            }
+        }
+        if (keys.size() != positions.size()) {
+            instance.rollback();
+            batchKeysSupported = false;
+            Log.warning("Driver doesn't return batch keys, positions are inserted one by one");
+            return false;
+        }
+        Iterator<Long> iterator = keys.iterator();
+        for (Position position : positions) {
+            position.setId(iterator.next());
+        }
+        return true;
+    }
+
+    /**
+     * Insert rows one by one in current transaction to get every key
+     */
+    private void insertRows(NamedParameterStatement insert, List<Position> positions) throws SQLException {
+        for (Position position : positions) {
+            bindPosition(insert, position);
+            insert.executeUpdate();
+            ResultSet result = insert.getGeneratedKeys();
+            if (result != null && result.next()) {
+                position.setId(result.getLong(1));
+            }
+        }
+    }
 
-        while ((inputLine = in.readLine()) != null) {
-            response.append(inputLine);
+    private static void bindDouble(
+            NamedParameterStatement statement, String name, boolean present, double value) throws SQLException {
+        if (present) {
+            statement.setDouble(name, value);
+        } else {
+            statement.setNull(name, Types.DOUBLE);
         }
-        in.close();
+    }
 
-        //print result
-        //System.out.println(response.toString());
+    /**
+     * Set insert statement parameters
+     */
+    private void bindPosition(NamedParameterStatement statement, Position position) throws SQLException {
 
+        statement.setLong("device_id", position.getDeviceId());
+        if (position.hasTime()) {
+            statement.setTimestamp("time", position.getTimeMillis());
+        } else {
+            statement.setNull("time", Types.TIMESTAMP);
+        }
+        if (position.hasValid()) {
+            statement.setBoolean("valid", position.isValid());
+        } else {
+            statement.setNull("valid", Types.BOOLEAN);
+        }
+        bindDouble(statement, "altitude", position.hasAltitude(), position.getAltitudeValue());
+        bindDouble(statement, "latitude", position.hasLatitude(), position.getLatitudeValue());
+        bindDouble(statement, "longitude", position.hasLongitude(), position.getLongitudeValue());
+        bindDouble(statement, "speed", position.hasSpeed(), position.getSpeedValue());
+        bindDouble(statement, "course", position.hasCourse(), position.getCourseValue());
+        statement.setString("address", position.getAddress());
+        statement.setString("extended_info", position.getExtendedInfo());
+
+        // DELME: Temporary compatibility support
+        Long index = null;
+        Double power = null;
+        Attributes attributes = position.getAttributes();
+        if (attributes != null) {
+            index = attributes.getLong("index");
+            power = attributes.getDouble("power");
+        } else if (position.getExtendedInfo() != null) {
+            try {
+                String value = getXmlValue(position.getExtendedInfo(), "index");
+                if (value != null) {
+                    index = Long.valueOf(value);
+                }
+                value = getXmlValue(position.getExtendedInfo(), "power");
+                if (value != null) {
+                    power = Double.valueOf(value);
+                }
+            } catch (NumberFormatException e) {
+                Log.warning("Error in XML: " + position.getExtendedInfo(), e);
+            }
+        }
+        statement.setLong("id", index);
+        statement.setDouble("power", power);
     }
 
+    /**
+     * Find value of a top level element in extended info XML
+     */
+    private static String getXmlValue(String xml, String key) {
+        String open = "<" + key + ">";
+        int start = xml.indexOf(open);
+        if (start < 0) {
+            return null;
+        }
+        start += open.length();
+        int end = xml.indexOf("</" + key + ">", start);
+        if (end <= start) {
+            return null;
+        }
+        return xml.substring(start, end).trim();
+    }
+
+    /**
+     * Find devices in database bypassing the cache, which answers unknown
+     * while refresh is running, found devices are registered in the cache
+     */
+    private Map<String, Device> findDevices(AdvancedConnection connection, Collection<String> imeis)
+            throws SQLException {
+
+        Map<String, Device> result = new HashMap<String, Device>();
+        List<Device> list = new LinkedList<Device>();
+        if (queryGetDeviceByImei != null) {
+            NamedParameterStatement statement = new NamedParameterStatement(connection, queryGetDeviceByImei);
+            statement.prepare();
+            for (String imei : imeis) {
+                statement.setString("imei", imei);
+                list.addAll(readDevices(statement));
+            }
+        } else if (queryGetDevices != null) {
+            NamedParameterStatement statement = new NamedParameterStatement(connection, queryGetDevices);
+            statement.prepare();
+            list = readDevices(statement);
+        }
+        for (Device device : list) {
+            if (imeis.contains(device.getImei()) && !result.containsKey(device.getImei())) {
+                deviceRegistry.add(device);
+                result.put(device.getImei(), device);
+            }
+        }
+        return result;
+    }
 
     //@Override
-    public synchronized Device addDevice(String imei) throws SQLException {
+    public Device addDevice(String imei) throws SQLException {
 
         if (queryAddDevice != null) {
-            queryAddDevice.prepare(Statement.RETURN_GENERATED_KEYS);
+            AdvancedConnection connection = connectionPool.borrow();
+            try {
+                Device existing = findDevices(connection, Collections.singleton(imei)).get(imei);
+                if (existing != null) {
+                    return existing;
+                }
 
-            queryAddDevice.setString("imei", imei);
-            queryAddDevice.setString("name", "Nombre");
+                NamedParameterStatement statement = new NamedParameterStatement(connection, queryAddDevice);
+                statement.prepare(Statement.RETURN_GENERATED_KEYS);
 
+                statement.setString("imei", imei);
+                statement.setString("name", "Nombre");
 
-            queryAddDevice.executeUpdate();
 
-            ResultSet result = queryAddDevice.getGeneratedKeys();
-            if (result != null && result.next()) {
-                //return result.getLong(1);
+                statement.executeUpdate();
+
+                ResultSet result = statement.getGeneratedKeys();
+                if (result != null && result.next()) {
+                    Device device = new Device();
+                    device.setId(result.getLong(1));
+                    device.setImei(imei);
+                    deviceRegistry.add(device);
+                } else {
+                    deviceRegistry.invalidate(imei);
+                }
+            } finally {
+                connectionPool.release(connection);
             }
         }
 
         return null;
     }
 
+    @Override
+    public List<Device> addDevices(List<String> imeis) throws Exception {
+
+        List<Device> deviceList = new ArrayList<Device>(imeis.size());
+        if (queryAddDevice == null || imeis.isEmpty()) {
+            return deviceList;
+        }
 
+        AdvancedConnection connection = connectionPool.borrow();
+        try {
+            // Cache can miss existing devices, so only ones missing in database are inserted
+            Map<String, Device> devices = findDevices(connection, new HashSet<String>(imeis));
+            Set<String> missing = new LinkedHashSet<String>();
+            for (String imei : imeis) {
+                if (!devices.containsKey(imei)) {
+                    missing.add(imei);
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                NamedParameterStatement statement = new NamedParameterStatement(connection, queryAddDevice);
+                statement.prepare(Statement.RETURN_GENERATED_KEYS);
+
+                boolean resolved = false;
+                Connection instance = connection.getInstance();
+                instance.setAutoCommit(false);
+                try {
+                    for (String imei : missing) {
+                        statement.setString("imei", imei);
+                        statement.setString("name", "Nombre");
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+
+                    // Keys are used only if driver returns all of them
+                    List<Long> keys = new ArrayList<Long>(missing.size());
+                    ResultSet result = statement.getGeneratedKeys();
+                    if (result != null) {
+                        while (result.next()) {
+                            keys.add(result.getLong(1));
+                        }
+                    }
+                    instance.commit();
+
+                    if (keys.size() == missing.size()) {
+                        Iterator<Long> iterator = keys.iterator();
+                        for (String imei : missing) {
+                            Device device = new Device();
+                            device.setId(iterator.next());
+                            device.setImei(imei);
+                            deviceRegistry.add(device);
+                            devices.put(imei, device);
+                        }
+                        resolved = true;
+                    }
+                } catch (SQLException error) {
+                    // Some devices may have been inserted meanwhile, insert remaining ones one by one
+                    instance.rollback();
+                    Log.warning("Batch device insert failed", error);
+                    instance.setAutoCommit(true);
+                    for (String imei : missing) {
+                        if (findDevices(connection, Collections.singleton(imei)).isEmpty()) {
+                            try {
+                                statement.setString("imei", imei);
+                                statement.setString("name", "Nombre");
+                                statement.executeUpdate();
+                            } catch (SQLException e) {
+                                Log.warning("Failed to add device " + imei, e);
+                            }
+                        }
+                    }
+                } finally {
+                    instance.setAutoCommit(true);
+                }
+
+                if (!resolved) {
+                    devices.putAll(findDevices(connection, missing));
+                }
+            }
+
+            for (String imei : imeis) {
+                Device device = devices.get(imei);
+                if (device != null) {
+                    deviceList.add(device);
+                }
+            }
+        } finally {
+            connectionPool.release(connection);
+        }
+        return deviceList;
+    }
+
+    @Override
+    public void updateLatestPositions(Map<Long, Long> positionIds) throws SQLException {
+
+        if (queryUpdateLatestPosition != null && !positionIds.isEmpty()) {
+            AdvancedConnection connection = connectionPool.borrow();
+            try {
+                NamedParameterStatement statement = new NamedParameterStatement(connection, queryUpdateLatestPosition);
+                statement.prepare();
+
+                Connection instance = connection.getInstance();
+                instance.setAutoCommit(false);
+                try {
+                    for (Map.Entry<Long, Long> entry : positionIds.entrySet()) {
+                        statement.setLong("device_id", entry.getKey());
+                        statement.setLong("id", entry.getValue());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    instance.commit();
+                } catch (SQLException error) {
+                    instance.rollback();
+                    throw error;
+                } finally {
+                    instance.setAutoCommit(true);
+                }
+            } finally {
+                connectionPool.release(connection);
+            }
+        }
+    }
 
     @Override
     public void updateLatestPosition(Long deviceId, Long positionId) throws SQLException {
         
         if (queryUpdateLatestPosition != null) {
-            queryUpdateLatestPosition.prepare();
+            AdvancedConnection connection = connectionPool.borrow();
+            try {
+                NamedParameterStatement statement = new NamedParameterStatement(connection, queryUpdateLatestPosition);
+                statement.prepare();
 
-            queryUpdateLatestPosition.setLong("device_id", deviceId);
-            queryUpdateLatestPosition.setLong("id", positionId);
+                statement.setLong("device_id", deviceId);
+                statement.setLong("id", positionId);
 
-            queryUpdateLatestPosition.executeUpdate();
+                statement.executeUpdate();
+            } finally {
+                connectionPool.release(connection);
+            }
         }
     }
 
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2014 Anton Tananaev (anton.tananaev@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.traccar.model;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.traccar.helper.Log;
+
+/**
+ * Thread-safe device cache with incremental background refresh
+ *
+ * Lookups never wait for the background refresh. A miss triggers an
+ * incremental load unless another refresh is running, in which case it is
+ * answered as unknown right away. Unknown IMEIs are remembered for a
+ * limited time, loaded devices replace negative results. Incremental
+ * refresh sees changed rows only if loader returns them (new ids always,
+ * edited rows with a changed-since query), deleted devices are dropped by
+ * the periodic full reload.
+ */
+public class DeviceRegistry {
+
+    /**
+     * Device source, sinceId is null for full load
+     */
+    public interface Loader {
+        List<Device> load(Long sinceId) throws Exception;
+    }
+
+    private final Loader loader;
+    private final long refreshDelay;
+    private final long fullRefreshDelay;
+    private final long unknownTtl;
+
+    private final ConcurrentMap<String, Device> devices = new ConcurrentHashMap<String, Device>();
+    private final ConcurrentMap<String, Long> unknown = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentMap<Long, String> imeis = new ConcurrentHashMap<Long, String>();
+
+    private final Lock refreshLock = new ReentrantLock();
+    private volatile long lastId;
+    private volatile long lastRefresh;
+    private volatile long lastFullRefresh;
+
+    private Thread refreshThread;
+    private volatile boolean running;
+
+    public DeviceRegistry(Loader loader, long refreshDelay, long fullRefreshDelay, long unknownTtl) {
+        this.loader = loader;
+        this.refreshDelay = refreshDelay;
+        this.fullRefreshDelay = fullRefreshDelay;
+        this.unknownTtl = unknownTtl;
+    }
+
+    private void put(Device device) {
+        if (device.getId() != null) {
+            // Drop old key when IMEI of known device was changed
+            String previous = imeis.put(device.getId(), device.getImei());
+            if (previous != null && !previous.equals(device.getImei())) {
+                Device old = devices.get(previous);
+                if (old != null && device.getId().equals(old.getId())) {
+                    devices.remove(previous, old);
+                }
+            }
+        }
+        devices.put(device.getImei(), device);
+        unknown.remove(device.getImei());
+        if (device.getId() != null && device.getId() > lastId) {
+            lastId = device.getId();
+        }
+    }
+
+    /**
+     * Register device created by this server
+     */
+    public void add(Device device) {
+        if (device.getImei() != null) {
+            put(device);
+        }
+    }
+
+    /**
+     * Forget negative result so that next lookup goes to the database
+     */
+    public void invalidate(String imei) {
+        unknown.remove(imei);
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    /**
+     * Reload all devices and drop ones that no longer exist
+     */
+    public void loadAll() throws Exception {
+        refreshLock.lock();
+        try {
+            List<Device> list = loader.load(null);
+            Set<String> current = new HashSet<String>();
+            long maxId = 0;
+            for (Device device : list) {
+                if (device.getImei() != null) {
+                    current.add(device.getImei());
+                    put(device);
+                    if (device.getId() != null && device.getId() > maxId) {
+                        maxId = device.getId();
+                    }
+                }
+            }
+
+            // Keep devices registered while the query was running
+            Iterator<Device> iterator = devices.values().iterator();
+            while (iterator.hasNext()) {
+                Device device = iterator.next();
+                if (!current.contains(device.getImei())
+                        && (device.getId() == null || device.getId() <= maxId)) {
+                    iterator.remove();
+                    if (device.getId() != null) {
+                        imeis.remove(device.getId(), device.getImei());
+                    }
+                }
+            }
+            lastRefresh = System.currentTimeMillis();
+            lastFullRefresh = lastRefresh;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Load devices added or changed since last refresh
+     */
+    public void refresh() throws Exception {
+        refreshLock.lock();
+        try {
+            List<Device> list = loader.load(lastId);
+            for (Device device : list) {
+                if (device.getImei() != null) {
+                    put(device);
+                }
+            }
+            lastRefresh = System.currentTimeMillis();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    public Device getDeviceByImei(String imei) throws Exception {
+
+        Device device = devices.get(imei);
+        if (device != null) {
+            return device;
+        }
+
+        long now = System.currentTimeMillis();
+        Long expiry = unknown.get(imei);
+        if (expiry != null) {
+            if (expiry > now) {
+                return null;
+            }
+            unknown.remove(imei);
+        }
+
+        // Don't wait for running refresh, skip if another caller finished one meanwhile
+        if (refreshLock.tryLock()) {
+            try {
+                if (lastRefresh < now) {
+                    refresh();
+                }
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+
+        device = devices.get(imei);
+        if (device == null && unknownTtl > 0) {
+            unknown.put(imei, System.currentTimeMillis() + unknownTtl);
+        }
+        return device;
+    }
+
+    public void start() {
+        if (refreshDelay <= 0) {
+            return;
+        }
+        running = true;
+        refreshThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        Thread.sleep(refreshDelay);
+                        if (fullRefreshDelay > 0
+                                && System.currentTimeMillis() - lastFullRefresh >= fullRefreshDelay) {
+                            loadAll();
+                        } else {
+                            refresh();
+                        }
+                    } catch (InterruptedException error) {
+                        break;
+                    } catch (Exception error) {
+                        Log.warning("Device refresh failed", error);
+                    }
+                }
+            }
+        }, "device-registry");
+        refreshThread.setDaemon(true);
+        refreshThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (refreshThread != null) {
+            refreshThread.interrupt();
+            try {
+                refreshThread.join();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            refreshThread = null;
+        }
+    }
+
+}
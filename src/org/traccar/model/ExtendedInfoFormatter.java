@@ -20,14 +20,12 @@ package org.traccar.model;
  */
 public class ExtendedInfoFormatter {
 
-    private static final String rootNode = "info";
-    
-    private StringBuilder data;
+    public static final String ROOT_NODE = "info";
+
+    private final Attributes attributes = new Attributes();
 
     public ExtendedInfoFormatter(String protocol) {
-        data = new StringBuilder();
-        data.append("<").append(rootNode).append(">");
-        data.append("<protocol>").append(protocol).append("</protocol>");
+        attributes.set("protocol", (Object) protocol);
     }
 
     public void set(String key, Object value) {
@@ -36,16 +34,18 @@ public class ExtendedInfoFormatter {
             if ((value instanceof String) && ((String) value).isEmpty()) {
                 return;
             }
-            
-            data.append("<").append(key).append(">");
-            data.append(value);
-            data.append("</").append(key).append(">");
+
+            attributes.set(key, value);
         }
     }
 
+    public Attributes getAttributes() {
+        return attributes;
+    }
+
     @Override
     public String toString() {
-        return data.toString() + "</" + rootNode + ">";
+        return attributes.toXml(ROOT_NODE);
     }
 
 }
@@ -19,98 +19,228 @@ import java.util.Date;
 
 /**
  * Position information
+ *
+ * Values are stored as primitives with presence flags. Nullable accessors
+ * box on every call, hot paths should use has*() and primitive getters.
  */
 public class Position extends Data {
 
+    private static final int TIME = 1;
+    private static final int VALID = 1 << 1;
+    private static final int LATITUDE = 1 << 2;
+    private static final int LONGITUDE = 1 << 3;
+    private static final int ALTITUDE = 1 << 4;
+    private static final int SPEED = 1 << 5;
+    private static final int COURSE = 1 << 6;
+
+    private int fields;
+
+    private boolean has(int field) {
+        return (fields & field) != 0;
+    }
+
+    private void set(int field, boolean present) {
+        if (present) {
+            fields |= field;
+        } else {
+            fields &= ~field;
+        }
+    }
+
     /**
      * Time (UTC)
      */
-    private Date time;
+    private long time;
 
-    public Date getTime() {
+    public boolean hasTime() {
+        return has(TIME);
+    }
+
+    /**
+     * Time in milliseconds since epoch
+     */
+    public long getTimeMillis() {
         return time;
     }
 
-    public void setTime(Date time) {
+    public void setTimeMillis(long time) {
         this.time = time;
+        set(TIME, true);
+    }
+
+    public Date getTime() {
+        return has(TIME) ? new Date(time) : null;
+    }
+
+    public void setTime(Date time) {
+        if (time != null) {
+            setTimeMillis(time.getTime());
+        } else {
+            this.time = 0;
+            set(TIME, false);
+        }
     }
 
     /**
      * Validity flag
      */
-    private Boolean valid;
+    private boolean valid;
 
-    public Boolean getValid() {
+    public boolean hasValid() {
+        return has(VALID);
+    }
+
+    public boolean isValid() {
         return valid;
     }
 
-    public void setValid(Boolean valid) {
+    public Boolean getValid() {
+        return has(VALID) ? Boolean.valueOf(valid) : null;
+    }
+
+    public void setValid(boolean valid) {
         this.valid = valid;
+        set(VALID, true);
+    }
+
+    public void setValid(Boolean valid) {
+        this.valid = valid != null && valid;
+        set(VALID, valid != null);
     }
 
     /**
      * Latitude
      */
-    private Double latitude;
+    private double latitude;
 
-    public Double getLatitude() {
+    public boolean hasLatitude() {
+        return has(LATITUDE);
+    }
+
+    public double getLatitudeValue() {
         return latitude;
     }
 
-    public void setLatitude(Double latitude) {
+    public Double getLatitude() {
+        return has(LATITUDE) ? Double.valueOf(latitude) : null;
+    }
+
+    public void setLatitude(double latitude) {
         this.latitude = latitude;
+        set(LATITUDE, true);
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude != null ? latitude : 0;
+        set(LATITUDE, latitude != null);
     }
 
     /**
      * Longitude
      */
-    private Double longitude;
+    private double longitude;
 
-    public Double getLongitude() {
+    public boolean hasLongitude() {
+        return has(LONGITUDE);
+    }
+
+    public double getLongitudeValue() {
         return longitude;
     }
 
-    public void setLongitude(Double longitude) {
+    public Double getLongitude() {
+        return has(LONGITUDE) ? Double.valueOf(longitude) : null;
+    }
+
+    public void setLongitude(double longitude) {
         this.longitude = longitude;
+        set(LONGITUDE, true);
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude != null ? longitude : 0;
+        set(LONGITUDE, longitude != null);
     }
 
     /**
      * Altitude
      */
-    private Double altitude;
+    private double altitude;
 
-    public Double getAltitude() {
+    public boolean hasAltitude() {
+        return has(ALTITUDE);
+    }
+
+    public double getAltitudeValue() {
         return altitude;
     }
 
-    public void setAltitude(Double altitude) {
+    public Double getAltitude() {
+        return has(ALTITUDE) ? Double.valueOf(altitude) : null;
+    }
+
+    public void setAltitude(double altitude) {
         this.altitude = altitude;
+        set(ALTITUDE, true);
+    }
+
+    public void setAltitude(Double altitude) {
+        this.altitude = altitude != null ? altitude : 0;
+        set(ALTITUDE, altitude != null);
     }
 
     /**
      * Speed (knots)
      */
-    private Double speed;
+    private double speed;
 
-    public Double getSpeed() {
+    public boolean hasSpeed() {
+        return has(SPEED);
+    }
+
+    public double getSpeedValue() {
         return speed;
     }
 
-    public void setSpeed(Double speed) {
+    public Double getSpeed() {
+        return has(SPEED) ? Double.valueOf(speed) : null;
+    }
+
+    public void setSpeed(double speed) {
         this.speed = speed;
+        set(SPEED, true);
+    }
+
+    public void setSpeed(Double speed) {
+        this.speed = speed != null ? speed : 0;
+        set(SPEED, speed != null);
     }
 
     /**
      * Course
      */
-    private Double course;
+    private double course;
 
-    public Double getCourse() {
+    public boolean hasCourse() {
+        return has(COURSE);
+    }
+
+    public double getCourseValue() {
         return course;
     }
 
-    public void setCourse(Double course) {
+    public Double getCourse() {
+        return has(COURSE) ? Double.valueOf(course) : null;
+    }
+
+    public void setCourse(double course) {
         this.course = course;
+        set(COURSE, true);
+    }
+
+    public void setCourse(Double course) {
+        this.course = course != null ? course : 0;
+        set(COURSE, course != null);
     }
 
     /**
@@ -18,11 +18,9 @@ package org.traccar.protocol;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.sql.ResultSet;
-import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -31,6 +29,7 @@ import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
 import org.traccar.helper.AdvancedConnection;
 import org.traccar.helper.Crc;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.helper.NamedParameterStatement;
 import org.traccar.model.ExtendedInfoFormatter;
@@ -188,10 +187,7 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
                 }
 
                 // Time
-                Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-                time.clear();
-                time.setTimeInMillis(buf.readUnsignedInt() * 1000);
-                position.setTime(time.getTime());
+                position.setTimeMillis(buf.readUnsignedInt() * 1000);
 
                 // Latitude
                 position.setLatitude(buf.readInt() * 180.0 / 0x7FFFFFFF);
@@ -247,7 +243,7 @@ public class ApelProtocolDecoder extends BaseProtocolDecoder {
                 }
 
                 // Extended info
-                position.setExtendedInfo(extendedInfo.toString());
+                position.setAttributes(extendedInfo.getAttributes());
 
                 positions.add(position);
             }
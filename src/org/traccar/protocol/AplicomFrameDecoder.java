@@ -18,9 +18,9 @@ package org.traccar.protocol;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.traccar.BaseFrameDecoder;
 
-public class AplicomFrameDecoder extends FrameDecoder{
+public class AplicomFrameDecoder extends BaseFrameDecoder {
     
     @Override
     protected Object decode(
@@ -50,7 +50,7 @@ public class AplicomFrameDecoder extends FrameDecoder{
 
         // Return buffer
         if (buf.readableBytes() >= length) {
-            return buf.readBytes(length);
+            return readFrame(buf, length);
         }
 
         return null;
@@ -141,7 +141,7 @@ public class AtrackProtocolDecoder extends BaseProtocolDecoder {
         
         // TODO: text message
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
@@ -18,9 +18,9 @@ package org.traccar.protocol;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.traccar.BaseFrameDecoder;
 
-public class CellocatorFrameDecoder extends FrameDecoder {
+public class CellocatorFrameDecoder extends BaseFrameDecoder {
 
     private static final int MESSAGE_MINIMUM_LENGTH = 15;
     
@@ -38,7 +38,7 @@ public class CellocatorFrameDecoder extends FrameDecoder {
 
         // Size depending on message type
         int length = 0;
-        switch (buf.getUnsignedByte(4))
+        switch (buf.getUnsignedByte(buf.readerIndex() + 4))
         {
             case CellocatorProtocolDecoder.MSG_CLIENT_STATUS:
                 length = 70;
@@ -51,17 +51,17 @@ public class CellocatorFrameDecoder extends FrameDecoder {
                 break;
             case CellocatorProtocolDecoder.MSG_CLIENT_SERIAL:
                 if (available >= 19) {
-                    length = 19 + buf.getUnsignedShort(16);
+                    length = 19 + buf.getUnsignedShort(buf.readerIndex() + 16);
                 }
                 break;
             case CellocatorProtocolDecoder.MSG_CLIENT_MODULAR:
-                length = 15 + buf.getUnsignedByte(13);
+                length = 15 + buf.getUnsignedByte(buf.readerIndex() + 13);
                 break;
         }
 
         // Read packet
         if (length > 0 && available >= length) {
-            return buf.readBytes(length);
+            return readFrame(buf, length);
         }
         
         return null;
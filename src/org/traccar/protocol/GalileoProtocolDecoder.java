@@ -21,11 +21,11 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.AckTemplate;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -74,12 +74,15 @@ public class GalileoProtocolDecoder extends BaseProtocolDecoder {
     private static final int TAG_MILAGE = 0xd4;
 
     
+    /**
+     * Confirmation with checksum of received packet
+     */
+    private static final AckTemplate REPLY = new AckTemplate(ByteOrder.LITTLE_ENDIAN, new byte[] {
+            0x02, 0x00, 0x00}).field(1, 2);
+
     private void sendReply(Channel channel, int checksum) {
-        ChannelBuffer reply = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 3);
-        reply.writeByte(0x02);
-        reply.writeShort((short) checksum);
         if (channel != null) {
-            channel.write(reply);
+            channel.write(REPLY.create(checksum));
         }
     }
     
@@ -171,7 +174,7 @@ public class GalileoProtocolDecoder extends BaseProtocolDecoder {
             position.setAltitude(0.0);
         }
         
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
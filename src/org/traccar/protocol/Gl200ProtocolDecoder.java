@@ -15,15 +15,13 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
+import org.traccar.helper.TextParser;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
@@ -33,30 +31,89 @@ public class Gl200ProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    private static final Pattern pattern = Pattern.compile(
-            "\\+RESP:GT...," +
-            "[0-9a-fA-F]{6}," +                 // Protocol version
-            "(\\d{15}),.*," +                   // IMEI
-            "(\\d*)," +                         // GPS accuracy
-            "(\\d+.\\d)," +                     // Speed
-            "(\\d+)," +                         // Course
-            "(-?\\d+\\.\\d)," +                 // Altitude
-            "(-?\\d+\\.\\d+)," +                // Longitude
-            "(-?\\d+\\.\\d+)," +                // Latitude
-            "(\\d{4})(\\d{2})(\\d{2})" +        // Date (YYYYMMDD)
-            "(\\d{2})(\\d{2})(\\d{2})," +       // Time (HHMMSS)
-            ".*");
-
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
-        String sentence = (String) msg;
+        TextParser parser = TextParser.create(msg);
+
+        // Message type
+        parser.expect("+RESP:GT");
+        parser.skip(3);
+        parser.expect(',');
+
+        // Protocol version
+        int versionIndex = parser.position();
+        parser.readHex();
+        if (parser.position() != versionIndex + 6) {
+            parser.setError();
+        }
+        parser.expect(',');
+
+        // IMEI
+        String imei = parser.readDigits(15);
+        parser.expect(',');
+        if (parser.hasError()) {
+            return null;
+        }
 
-        // Parse message
-        Matcher parser = pattern.matcher(sentence);
-        if (!parser.matches()) {
+        // Use the last field group that matches
+        boolean found = false;
+        int accuracy = 0, course = 0;
+        double speed = 0, altitude = 0, longitude = 0, latitude = 0;
+        int year = 0, month = 0, day = 0, hours = 0, minutes = 0, seconds = 0;
+
+        int index = parser.indexOf(',');
+        while (index != -1) {
+            parser.reset(index + 1);
+
+            // GPS accuracy
+            int accuracyValue = parser.readInt();
+            parser.expect(',');
+
+            // Position info
+            double speedValue = parser.readDouble();
+            parser.expect(',');
+            int courseValue = parser.readInt();
+            parser.expect(',');
+            double altitudeValue = parser.readDouble();
+            parser.expect(',');
+            double longitudeValue = parser.readDouble();
+            parser.expect(',');
+            double latitudeValue = parser.readDouble();
+            parser.expect(',');
+
+            // Date and time (YYYYMMDDHHMMSS)
+            int yearValue = parser.readInt(4);
+            int monthValue = parser.readInt(2);
+            int dayValue = parser.readInt(2);
+            int hoursValue = parser.readInt(2);
+            int minutesValue = parser.readInt(2);
+            int secondsValue = parser.readInt(2);
+            parser.expect(',');
+
+            if (!parser.hasError()) {
+                found = true;
+                accuracy = accuracyValue;
+                speed = speedValue;
+                course = courseValue;
+                altitude = altitudeValue;
+                longitude = longitudeValue;
+                latitude = latitudeValue;
+                year = yearValue;
+                month = monthValue;
+                day = dayValue;
+                hours = hoursValue;
+                minutes = minutesValue;
+                seconds = secondsValue;
+            }
+
+            parser.reset(index + 1);
+            index = parser.indexOf(',');
+        }
+
+        if (!found) {
             return null;
         }
 
@@ -64,10 +121,7 @@ public class Gl200ProtocolDecoder extends BaseProtocolDecoder {
         Position position = new Position();
         ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("gl200");
 
-        Integer index = 1;
-
         // Get device by IMEI
-        String imei = parser.group(index++);
         try {
             position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
         } catch(Exception error) {
@@ -76,29 +130,28 @@ public class Gl200ProtocolDecoder extends BaseProtocolDecoder {
         }
 
         // Validity
-        position.setValid(Integer.valueOf(parser.group(index++)) == 0);
+        position.setValid(accuracy == 0);
 
         // Position info
-        position.setSpeed(Double.valueOf(parser.group(index++)));
-        position.setCourse(Double.valueOf(parser.group(index++)));
-        position.setAltitude(Double.valueOf(parser.group(index++)));
-        position.setLongitude(Double.valueOf(parser.group(index++)));
-        position.setLatitude(Double.valueOf(parser.group(index++)));
+        position.setSpeed(speed);
+        position.setCourse((double) course);
+        position.setAltitude(altitude);
+        position.setLongitude(longitude);
+        position.setLatitude(latitude);
 
         // Date
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.YEAR, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
+        DateBuilder time = new DateBuilder();
+        time.setYear(year);
+        time.setMonth(month);
+        time.setDay(day);
 
         // Time
-        time.set(Calendar.HOUR, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-        position.setTime(time.getTime());
+        time.setHour(hours);
+        time.setMinute(minutes);
+        time.setSecond(seconds);
+        position.setTimeMillis(time.getMillis());
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
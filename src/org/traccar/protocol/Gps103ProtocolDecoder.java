@@ -15,15 +15,13 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
+import org.traccar.helper.TextParser;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
@@ -33,35 +31,18 @@ public class Gps103ProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    static private Pattern pattern = Pattern.compile(
-            "imei:" +
-            "(\\d+)," +                         // IMEI
-            "([^,]+)," +                        // Alarm
-            "(\\d{2})/?(\\d{2})/?(\\d{2})\\s?" + // Local Date
-            "(\\d{2}):?(\\d{2})(?:\\d{2})?," +  // Local Time
-            "[^,]*," +
-            "[FL]," +                           // F - full / L - low
-            "(\\d{2})(\\d{2})(\\d{2})\\.(\\d{3})," + // Time UTC (HHMMSS.SSS)
-            "([AV])," +                         // Validity
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Latitude (DDMM.MMMM)
-            "([NS])," +
-            "(\\d+)(\\d{2}\\.\\d+)," +          // Longitude (DDDMM.MMMM)
-            "([EW])?," +
-            "(\\d+\\.?\\d*)," +                 // Speed
-            "(\\d+\\.?\\d*)?(?:," +             // Course
-            "(\\d+\\.?\\d*)?)?" +               // Altitude
-            ".*");
-
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
-        String sentence = (String) msg;
-        Log.info("gps103 msg=: " + sentence);
+        TextParser parser = TextParser.create(msg);
+        if (Log.isDebugEnabled() && Log.sample("message")) {
+            Log.debug("gps103 msg=: {}", parser);
+        }
         
         // Send response #1
-        if (sentence.contains("##")) {
+        if (parser.contains("##")) {
             if (channel != null) {
                 channel.write("LOAD");
             }
@@ -69,7 +50,7 @@ public class Gps103ProtocolDecoder extends BaseProtocolDecoder {
         }
 
         // Send response #2
-        if (sentence.length() == 15 && Character.isDigit(sentence.charAt(0))) {
+        if (parser.length() == 15 && parser.isDigit()) {
             if (channel != null) {
                 channel.write("ON");
             }
@@ -77,8 +58,72 @@ public class Gps103ProtocolDecoder extends BaseProtocolDecoder {
         }
 
         // Parse message
-        Matcher parser = pattern.matcher(sentence);
-        if (!parser.matches()) {
+        parser.expect("imei:");
+        String imei = parser.readDigits();
+        parser.expect(',');
+        String alarm = parser.readString(',');
+
+        // Local date and time
+        int year = parser.readInt(2);
+        parser.optional('/');
+        int month = parser.readInt(2);
+        parser.optional('/');
+        int day = parser.readInt(2);
+        parser.optional(' ');
+        int localHours = parser.readInt(2);
+        parser.optional(':');
+        int localMinutes = parser.readInt(2);
+        if (parser.isDigit()) {
+            parser.readInt(2);
+        }
+        parser.expect(',');
+        parser.skipField(',');
+
+        // F - full / L - low
+        parser.readChar("FL");
+        parser.expect(',');
+
+        // Time UTC (HHMMSS.SSS)
+        int utcHours = parser.readInt(2);
+        int utcMinutes = parser.readInt(2);
+        int seconds = parser.readInt(2);
+        parser.expect('.');
+        int milliseconds = parser.readInt(3);
+        parser.expect(',');
+
+        // Validity
+        char validity = parser.readChar("AV");
+        parser.expect(',');
+
+        // Latitude (DDMM.MMMM)
+        double latitude = parser.readCoordinate(0);
+        parser.expect(',');
+        if (parser.readChar("NS") == 'S') latitude = -latitude;
+        parser.expect(',');
+
+        // Longitude (DDDMM.MMMM)
+        double longitude = parser.readCoordinate(0);
+        parser.expect(',');
+        if (parser.peek() != ',') {
+            if (parser.readChar("EW") == 'W') longitude = -longitude;
+        }
+        parser.expect(',');
+
+        // Speed
+        double speed = parser.readDouble();
+        parser.expect(',');
+
+        // Course and altitude
+        double course = 0.0;
+        double altitude = 0.0;
+        if (parser.isDigit()) {
+            course = parser.readDouble();
+        }
+        if (parser.optional(',') && parser.isDigit()) {
+            altitude = parser.readDouble();
+        }
+
+        if (parser.hasError()) {
             return null;
         }
 
@@ -86,40 +131,27 @@ public class Gps103ProtocolDecoder extends BaseProtocolDecoder {
         Position position = new Position();
         ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("gps103");
 
-        Integer index = 1;
-
         // Get device by IMEI
-        String imei = parser.group(index++);
-        try {
-            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
-        } catch(Exception error) {
-            Log.warning("Unknown device - " + imei);
-            getDataManager().addDevice(imei);
-            Log.warning("Created device - " + imei + " OK");
-            position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
+        Long deviceId = getOrCreateDeviceId(imei);
+        if (deviceId == null) {
+            return null;
         }
+        position.setDeviceId(deviceId);
 
         // Alarm message
-        extendedInfo.set("alarm", parser.group(index++));
+        extendedInfo.set("alarm", alarm);
         
         // Date
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-        time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-        
-        int localHours = Integer.valueOf(parser.group(index++));
-        int localMinutes = Integer.valueOf(parser.group(index++));
-        
-        int utcHours = Integer.valueOf(parser.group(index++));
-        int utcMinutes = Integer.valueOf(parser.group(index++));
+        DateBuilder time = new DateBuilder();
+        time.setYear(2000 + year);
+        time.setMonth(month);
+        time.setDay(day);
 
         // Time
-        time.set(Calendar.HOUR, localHours);
-        time.set(Calendar.MINUTE, localMinutes);
-        time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-        time.set(Calendar.MILLISECOND, Integer.valueOf(parser.group(index++)));
+        time.setHour(localHours);
+        time.setMinute(localMinutes);
+        time.setSecond(seconds);
+        time.setMillis(milliseconds);
         
         // Timezone calculation
         int deltaMinutes = (localHours - utcHours) * 60 + localMinutes - utcMinutes;
@@ -128,50 +160,19 @@ public class Gps103ProtocolDecoder extends BaseProtocolDecoder {
         } else if (deltaMinutes > 12 * 60) {
             deltaMinutes -= 24 * 60;
         }
-        time.add(Calendar.MINUTE, -deltaMinutes);
-        position.setTime(time.getTime());
-
-        // Validity
-        position.setValid(parser.group(index++).compareTo("A") == 0 ? true : false);
+        time.addMillis(-deltaMinutes * DateBuilder.MILLIS_PER_MINUTE);
+        position.setTimeMillis(time.getMillis());
 
-        // Latitude
-        Double latitude = Double.valueOf(parser.group(index++));
-        latitude += Double.valueOf(parser.group(index++)) / 60;
-        if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
+        position.setValid(validity == 'A');
         position.setLatitude(latitude);
-
-        position.setDeviceIMEI(imei);
-        
-        // Longitude
-        Double longitude = Double.valueOf(parser.group(index++));
-        longitude += Double.valueOf(parser.group(index++)) / 60;
-        String hemisphere = parser.group(index++);
-        if (hemisphere != null) {
-            if (hemisphere.compareTo("W") == 0) longitude = -longitude;
-        }
         position.setLongitude(longitude);
-
-        // Speed
-        position.setSpeed(Double.valueOf(parser.group(index++)));
-
-        // Course
-        String course = parser.group(index++);
-        if (course != null) {
-            position.setCourse(Double.valueOf(course));
-        } else {
-            position.setCourse(0.0);
-        }
-
-        // Altitude
-        String altitude = parser.group(index++);
-        if (altitude != null) {
-            position.setAltitude(Double.valueOf(altitude));
-        } else {
-            position.setAltitude(0.0);
-        }
+        position.setDeviceIMEI(imei);
+        position.setSpeed(speed);
+        position.setCourse(course);
+        position.setAltitude(altitude);
 
         // Extended info
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
 
         return position;
     }
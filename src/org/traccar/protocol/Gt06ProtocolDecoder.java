@@ -15,15 +15,13 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
-import org.traccar.helper.Crc;
+import org.traccar.helper.AckTemplate;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -62,16 +60,16 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
     private static final int MSG_LBS_STATUS = 0x19;
     private static final int MSG_GPS_PHONE = 0x1A;
 
+    /**
+     * Header, size, type, index, checksum of size to index, ending
+     */
+    private static final AckTemplate RESPONSE = new AckTemplate(new byte[] {
+            0x78, 0x78, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, 0x0D, 0x0A})
+            .field(3, 1).field(4, 2).crc(AckTemplate.CRC16_CCITT, 2, 6, 6);
+
     private static void sendResponse(Channel channel, int type, int index) {
         if (channel != null) {
-            ChannelBuffer response = ChannelBuffers.directBuffer(10);
-            response.writeByte(0x78); response.writeByte(0x78); // header
-            response.writeByte(0x05); // size
-            response.writeByte(type);
-            response.writeShort(index);
-            response.writeShort(Crc.crc16Ccitt(response.toByteBuffer(2, 4)));
-            response.writeByte(0x0D); response.writeByte(0x0A); // ending
-            channel.write(response);
+            channel.write(RESPONSE.create(type, index));
         }
     }
 
@@ -95,21 +93,11 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
         	 Log.info("gp06 msglogin=: " );
              
             String imei = readImei(buf);
-            try {
-                deviceId = getDataManager().getDeviceByImei(imei).getId();
-                deviceIMEI= imei;
+            deviceId = getOrCreateDeviceId(imei);
+            if (deviceId != null) {
+                deviceIMEI = imei;
                 buf.skipBytes(dataLength - 8);
                 sendResponse(channel, type, buf.readUnsignedShort());
-            } catch(Exception error) {
-                Log.warning("Unknown device - " + imei + " creating new...");
-                getDataManager().addDevice(imei);
-                Log.warning("Created device - " + imei + " OK");
-                deviceId = getDataManager().getDeviceByImei(imei).getId();
-                deviceIMEI= imei;
-                buf.skipBytes(dataLength - 8);
-                sendResponse(channel, type, buf.readUnsignedShort());
-
-
             }
         }
 
@@ -127,15 +115,14 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
             ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("gt06");
 
             // Date and time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
-            time.set(Calendar.MONTH, buf.readUnsignedByte() - 1);
-            time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-            time.set(Calendar.HOUR, buf.readUnsignedByte());
-            time.set(Calendar.MINUTE, buf.readUnsignedByte());
-            time.set(Calendar.SECOND, buf.readUnsignedByte());
-            position.setTime(time.getTime());
+            DateBuilder time = new DateBuilder();
+            time.setYear(2000 + buf.readUnsignedByte());
+            time.setMonth(buf.readUnsignedByte());
+            time.setDay(buf.readUnsignedByte());
+            time.setHour(buf.readUnsignedByte());
+            time.setMinute(buf.readUnsignedByte());
+            time.setSecond(buf.readUnsignedByte());
+            position.setTimeMillis(time.getMillis());
 
             // GPS length and Satellites count
             int gpsLength = buf.readUnsignedByte();
@@ -199,7 +186,7 @@ public class Gt06ProtocolDecoder extends BaseProtocolDecoder {
             extendedInfo.set("index", index);
             sendResponse(channel, type, index);
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
 
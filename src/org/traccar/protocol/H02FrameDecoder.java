@@ -15,14 +15,12 @@
  */
 package org.traccar.protocol;
 
-import java.nio.charset.Charset;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.BaseFrameDecoder;
 
-public class H02FrameDecoder extends FrameDecoder {
+public class H02FrameDecoder extends BaseFrameDecoder {
     
     private static final int MESSAGE_LENGTH = 32;
 
@@ -32,26 +30,28 @@ public class H02FrameDecoder extends FrameDecoder {
             Channel channel,
             ChannelBuffer buf) throws Exception {
         
-        String marker = buf.toString(buf.readerIndex(), 1, Charset.defaultCharset());
-
-        while (!marker.equals("*") && !marker.equals("$") && buf.readableBytes() > 0) {
+        // Skip to message start
+        while (buf.readable()
+                && buf.getByte(buf.readerIndex()) != '*' && buf.getByte(buf.readerIndex()) != '$') {
             buf.skipBytes(1);
-            marker = buf.toString(buf.readerIndex(), 1, Charset.defaultCharset());
         }
-        
-        if (marker.equals("*")) {
+        if (!buf.readable()) {
+            return null;
+        }
+
+        if (buf.getByte(buf.readerIndex()) == '*') {
 
             // Return text message
-            Integer index = ChannelBufferTools.find(buf, buf.readerIndex(), buf.readableBytes(), "#");
-            if (index != null) {
-                return buf.readBytes(index + 1 - buf.readerIndex());
+            int index = indexOf(buf, buf.readerIndex(), buf.writerIndex(), (byte) '#');
+            if (index != -1) {
+                return readFrame(buf, index + 1 - buf.readerIndex());
             }
             
-        } else if (marker.equals("$")) {
+        } else {
 
             // Return binary message
             if (buf.readableBytes() >= MESSAGE_LENGTH) {
-                return buf.readBytes(MESSAGE_LENGTH);
+                return readFrame(buf, MESSAGE_LENGTH);
             }
             
         }
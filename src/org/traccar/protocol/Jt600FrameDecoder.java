@@ -19,10 +19,9 @@ import java.text.ParseException;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.BaseFrameDecoder;
 
-public class Jt600FrameDecoder extends FrameDecoder {
+public class Jt600FrameDecoder extends BaseFrameDecoder {
 
     @Override
     protected Object decode(
@@ -42,14 +41,14 @@ public class Jt600FrameDecoder extends FrameDecoder {
         if (first == '$') {
             // Check length
             int length = buf.getUnsignedShort(buf.readerIndex() + 7) + 10;
-            if (length >= available) {
-                return buf.readBytes(length);
+            if (available >= length) {
+                return readFrame(buf, length);
             }
         } else if (first == '(') {
             // Find ending
-            Integer endIndex = ChannelBufferTools.find(buf, buf.readerIndex(), available, ")");
-            if (endIndex != null) {
-                return buf.readBytes(endIndex + 1);
+            int endIndex = indexOf(buf, buf.readerIndex(), buf.writerIndex(), (byte) ')');
+            if (endIndex != -1) {
+                return readFrame(buf, endIndex + 1 - buf.readerIndex());
             }
         } else {
             // Unknown message
@@ -18,9 +18,9 @@ package org.traccar.protocol;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.traccar.BaseFrameDecoder;
 
-public class MeiligaoFrameDecoder extends FrameDecoder {
+public class MeiligaoFrameDecoder extends BaseFrameDecoder {
     
     private static final int MESSAGE_HEADER = 4;
 
@@ -40,7 +40,7 @@ public class MeiligaoFrameDecoder extends FrameDecoder {
             int length = buf.getUnsignedShort(buf.readerIndex() + 2);
             if (buf.readableBytes() >= length) {
                 buf.skipBytes(MESSAGE_HEADER);
-                return buf.readBytes(length - MESSAGE_HEADER);
+                return readFrame(buf, length - MESSAGE_HEADER);
             }
         }
 
@@ -16,11 +16,8 @@
 package org.traccar.protocol;
 
 import java.nio.charset.Charset;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -33,6 +30,7 @@ import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
 import org.traccar.helper.ChannelBufferTools;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -100,20 +98,13 @@ public class Mta6ProtocolDecoder extends BaseProtocolDecoder {
         
         private long weekNumber;
         
-        public Date readTime(ChannelBuffer buf) {
+        public long readTime(ChannelBuffer buf) {
             long weekTime = (long) (readFloat(buf) * 1000);
             if (weekNumber == 0) {
                 weekNumber = buf.readUnsignedShort();
             }
 
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.YEAR, 1980);
-            time.set(Calendar.MONTH, 0);
-            time.set(Calendar.DAY_OF_MONTH, 6);
-            long offset = time.getTimeInMillis();
-
-            return new Date(offset + weekNumber * 7 * 24 * 60 * 60 * 1000 + weekTime);
+            return DateBuilder.getGpsMillis(weekNumber, weekTime);
         }
         
     }
@@ -147,7 +138,7 @@ public class Mta6ProtocolDecoder extends BaseProtocolDecoder {
 
                 position.setLatitude(latitudeReader.readFloat(buf) / Math.PI * 180);
                 position.setLongitude(longitudeReader.readFloat(buf) / Math.PI * 180);
-                position.setTime(timeReader.readTime(buf));
+                position.setTimeMillis(timeReader.readTime(buf));
 
                 if (checkBit(flags, 0)) {
                     buf.readUnsignedByte(); // status
@@ -199,7 +190,7 @@ public class Mta6ProtocolDecoder extends BaseProtocolDecoder {
                     extendedInfo.set("satellites", satellites);
                 }
 
-                position.setExtendedInfo(extendedInfo.toString());
+                position.setAttributes(extendedInfo.getAttributes());
                 positions.add(position);
             }
         } catch (IndexOutOfBoundsException error) {
@@ -229,7 +220,7 @@ public class Mta6ProtocolDecoder extends BaseProtocolDecoder {
 
         position.setLatitude(new FloatReader().readFloat(buf) / Math.PI * 180);
         position.setLongitude(new FloatReader().readFloat(buf) / Math.PI * 180);
-        position.setTime(new TimeReader().readTime(buf));
+        position.setTimeMillis(new TimeReader().readTime(buf));
 
         buf.readUnsignedByte(); // status
 
@@ -281,7 +272,7 @@ public class Mta6ProtocolDecoder extends BaseProtocolDecoder {
         
         // TODO: process other data
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         
         return position;
     }
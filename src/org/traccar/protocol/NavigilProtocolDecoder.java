@@ -18,12 +18,11 @@ package org.traccar.protocol;
 import java.nio.ByteOrder;
 import java.util.Date;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
-import org.traccar.helper.Crc;
+import org.traccar.helper.AckTemplate;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -58,23 +57,22 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
     
     private int senderSequenceNumber = 1;
     
+    /**
+     * Header (version, sender sequence, type, length, flags, data checksum,
+     * reserved, time) followed by data (acknowledged sequence, status OK)
+     */
+    private static final AckTemplate ACKNOWLEDGEMENT = new AckTemplate(ByteOrder.LITTLE_ENDIAN, new byte[] {
+            0x01, 0x00, 0x00, 0x00, (byte) MESSAGE_ACKNOWLEDGEMENT, 0x00, 24, 0x00,
+            0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+            0x00, 0x00, 0x00, 0x00})
+            .field(2, 2).field(16, 4).field(20, 2).crc(AckTemplate.CRC16_X25, 20, 24, 10);
+
     private void sendAcknowledgment(Channel channel, int sequenceNumber) {
-        ChannelBuffer data = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 4);
-        data.writeShort(sequenceNumber);
-        data.writeShort(0); // OK
-        
-        ChannelBuffer header = ChannelBuffers.directBuffer(ByteOrder.LITTLE_ENDIAN, 20);
-        header.writeByte(1); header.writeByte(0);
-        header.writeShort(senderSequenceNumber++);
-        header.writeShort(MESSAGE_ACKNOWLEDGEMENT);
-        header.writeShort(header.capacity() + data.capacity());
-        header.writeShort(0);
-        header.writeShort(Crc.crc16X25Ccitt(data.toByteBuffer()));
-        header.writeInt(0);
-        header.writeInt((int) (new Date().getTime() / 1000) + LEAP_SECONDS_DELTA);
+        int time = (int) (new Date().getTime() / 1000) + LEAP_SECONDS_DELTA;
+        ChannelBuffer response = ACKNOWLEDGEMENT.create(senderSequenceNumber++, time, sequenceNumber);
         
         if (channel != null) {
-            channel.write(ChannelBuffers.copiedBuffer(header, data));
+            channel.write(response);
         }
     }
     
@@ -111,7 +109,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         
         // TODO: a lot of other stuff
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -150,7 +148,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         
         // TODO: a lot of other stuff
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -174,7 +172,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         
         buf.readUnsignedByte(); // reserved
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -201,7 +199,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         int x = buf.readUnsignedByte(); // satellites in fix
         buf.readUnsignedInt(); // distance
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -242,7 +240,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
 
         // TODO: a lot of other stuff
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -274,7 +272,7 @@ public class NavigilProtocolDecoder extends BaseProtocolDecoder {
         
         buf.readUnsignedInt(); // distance
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
     
@@ -17,16 +17,15 @@ package org.traccar.protocol;
 
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
-import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -104,15 +103,14 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         extendedInfo.set("event", buf.readUnsignedShort());
 
         // Event time
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.HOUR, buf.readUnsignedByte());
-        time.set(Calendar.MINUTE, buf.readUnsignedByte());
-        time.set(Calendar.SECOND, buf.readUnsignedByte());
-        time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-        time.set(Calendar.MONTH, buf.readUnsignedByte());
-        time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
-        extendedInfo.set("time", time.getTimeInMillis());
+        DateBuilder time = new DateBuilder();
+        time.setHour(buf.readUnsignedByte());
+        time.setMinute(buf.readUnsignedByte());
+        time.setSecond(buf.readUnsignedByte());
+        time.setDay(buf.readUnsignedByte());
+        time.setMonth(buf.readUnsignedByte() + 1);
+        time.setYear(2000 + buf.readUnsignedByte());
+        extendedInfo.set("time", time.getMillis());
 
         // Alarm status
         extendedInfo.set("alarm", buf.readUnsignedByte());
@@ -164,14 +162,13 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
             position.setValid((locationStatus & 0x02) == 0x02);
 
             // Location time
-            time.clear();
-            time.set(Calendar.HOUR, buf.readUnsignedByte());
-            time.set(Calendar.MINUTE, buf.readUnsignedByte());
-            time.set(Calendar.SECOND, buf.readUnsignedByte());
-            time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-            time.set(Calendar.MONTH, buf.readUnsignedByte());
-            time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
-            position.setTime(time.getTime());
+            time.setHour(buf.readUnsignedByte());
+            time.setMinute(buf.readUnsignedByte());
+            time.setSecond(buf.readUnsignedByte());
+            time.setDay(buf.readUnsignedByte());
+            time.setMonth(buf.readUnsignedByte() + 1);
+            time.setYear(2000 + buf.readUnsignedByte());
+            position.setTimeMillis(time.getMillis());
 
             // Location data
             position.setLatitude(buf.readFloat() / Math.PI * 180);
@@ -212,7 +209,7 @@ public class NavisProtocolDecoder extends BaseProtocolDecoder {
         }
 
         // Extended info
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
 
         return new ParseResult(index, position);
     }
@@ -98,7 +98,7 @@ public class OsmAndProtocolDecoder extends BaseProtocolDecoder {
             extendedInfo.set("hacc", params.get("hacc").get(0));
         }
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         
         // Send response
         if (channel != null) {
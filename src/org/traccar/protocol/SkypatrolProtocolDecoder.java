@@ -16,13 +16,12 @@
 package org.traccar.protocol;
 
 import java.nio.charset.Charset;
-import java.util.Calendar;
-import java.util.TimeZone;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -122,14 +121,13 @@ public class SkypatrolProtocolDecoder extends BaseProtocolDecoder {
                 buf.readUnsignedByte();
             }
 
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
+            DateBuilder time = new DateBuilder();
 
             // Date
             if (checkBit(mask, 8)) {
-                time.set(Calendar.DAY_OF_MONTH, buf.readUnsignedByte());
-                time.set(Calendar.MONTH, buf.readUnsignedByte() - 1);
-                time.set(Calendar.YEAR, 2000 + buf.readUnsignedByte());
+                time.setDay(buf.readUnsignedByte());
+                time.setMonth(buf.readUnsignedByte());
+                time.setYear(2000 + buf.readUnsignedByte());
             }
 
             // GPS status
@@ -159,12 +157,12 @@ public class SkypatrolProtocolDecoder extends BaseProtocolDecoder {
 
             // Time
             if (checkBit(mask, 14)) {
-                time.set(Calendar.HOUR, buf.readUnsignedByte());
-                time.set(Calendar.MINUTE, buf.readUnsignedByte());
-                time.set(Calendar.SECOND, buf.readUnsignedByte());
+                time.setHour(buf.readUnsignedByte());
+                time.setMinute(buf.readUnsignedByte());
+                time.setSecond(buf.readUnsignedByte());
             }
 
-            position.setTime(time.getTime());
+            position.setTimeMillis(time.getMillis());
 
             // Altitude
             if (checkBit(mask, 15)) {
@@ -217,7 +215,7 @@ public class SkypatrolProtocolDecoder extends BaseProtocolDecoder {
             }
 
             // Extended info
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
 
             return position;
         }
@@ -15,15 +15,13 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -51,35 +49,21 @@ public class SyrusProtocolDecoder extends BaseProtocolDecoder {
             "(\\d)" +                      // Fix age
             ".*");
 
-    private Date getTime(long week, long day, long seconds) {
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.clear();
-        time.set(Calendar.YEAR, 1980);
-        time.set(Calendar.MONTH, 0);
-        time.set(Calendar.DAY_OF_MONTH, 6);
-
-        long millis = time.getTimeInMillis();
-        millis += ((week * 7 + day) * 24 * 60 * 60 + seconds) * 1000;
-
-        return new Date(millis);
+    private long getTime(long week, long day, long seconds) {
+        return DateBuilder.getGpsMillis(week, (day * 24 * 60 * 60 + seconds) * 1000);
     }
     
-    private Date getTime(long seconds) {
-        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        time.set(Calendar.HOUR, 0);
-        time.set(Calendar.MINUTE, 0);
-        time.set(Calendar.SECOND, 0);
-        time.set(Calendar.MILLISECOND, 0);
-        
-        long millis = time.getTimeInMillis() + seconds * 1000;
+    private long getTime(long seconds) {
+        long now = System.currentTimeMillis();
+        long millis = new DateBuilder(now).getMillis() + seconds * 1000;
         
-        long diff = new Date().getTime() - millis;
+        long diff = now - millis;
         
         if (diff > 12 * 60 * 60 * 1000) {
             millis += 24 * 60 * 60 * 1000;
         }
 
-        return new Date(millis);
+        return millis;
     }
     
     @Override
@@ -138,9 +122,9 @@ public class SyrusProtocolDecoder extends BaseProtocolDecoder {
         String day = parser.group(index++);
         int seconds = Integer.valueOf(parser.group(index++));
         if (week != null && day != null) {
-            position.setTime(getTime(Integer.valueOf(week), Integer.valueOf(day), seconds));
+            position.setTimeMillis(getTime(Integer.valueOf(week), Integer.valueOf(day), seconds));
         } else {
-            position.setTime(getTime(seconds));
+            position.setTimeMillis(getTime(seconds));
         }
 
         // Latitude
@@ -163,7 +147,7 @@ public class SyrusProtocolDecoder extends BaseProtocolDecoder {
         // Validity
         position.setValid(Integer.valueOf(parser.group(index++)) == 2);
 
-        position.setExtendedInfo(extendedInfo.toString());
+        position.setAttributes(extendedInfo.getAttributes());
         return position;
     }
 
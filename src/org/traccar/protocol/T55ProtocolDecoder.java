@@ -15,15 +15,13 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
+import org.traccar.helper.TextParser;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
@@ -36,64 +34,25 @@ public class T55ProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
-    private static final Pattern patternGPRMC = Pattern.compile(
-            "\\$GPRMC," +
-            "(\\d{2})(\\d{2})(\\d{2})\\.?\\d*," + // Time (HHMMSS.SSS)
-            "([AV])," +                    // Validity
-            "(\\d{2})(\\d{2}\\.\\d+)," +   // Latitude (DDMM.MMMM)
-            "([NS])," +
-            "(\\d{3})(\\d{2}\\.\\d+)," +   // Longitude (DDDMM.MMMM)
-            "([EW])," +
-            "(\\d+\\.?\\d*)?," +           // Speed
-            "(\\d+\\.?\\d*)?," +           // Course
-            "(\\d{2})(\\d{2})(\\d{2})" +   // Date (DDMMYY)
-            ".+");
-
-    private static final Pattern patternGPGGA = Pattern.compile(
-            "\\$GPGGA," +
-            "(\\d{2})(\\d{2})(\\d{2})\\.?\\d*," + // Time
-            "(\\d{2})(\\d{2}\\.\\d+)," +   // Latitude
-            "([NS])," +
-            "(\\d{3})(\\d{2}\\.\\d+)," +   // Longitude
-            "([EW])," +
-            ".+");
-
-    private static final Pattern patternGPRMA = Pattern.compile(
-            "\\$GPRMA," +
-            "([AV])," +                    // Validity
-            "(\\d{2})(\\d{2}\\.\\d+)," +   // Latitude
-            "([NS])," +
-            "(\\d{3})(\\d{2}\\.\\d+)," +   // Longitude
-            "([EW]),,," +
-            "(\\d+\\.?\\d*)?," +           // Speed
-            "(\\d+\\.?\\d*)?," +           // Course
-            ".+");
-    
     @Override
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, Object msg)
             throws Exception {
 
-        String sentence = (String) msg;
+        TextParser parser = TextParser.create(msg);
 
         // Identification
-        if (sentence.startsWith("$PGID")) {
-            String imei = sentence.substring(6, sentence.length() - 3);
-            try {
-                deviceId = getDataManager().getDeviceByImei(imei).getId();
-                deviceIMEI = imei; 
-            } catch(Exception error) {
-                Log.warning("Unknown device - " + imei +" " +deviceIMEI);
-                getDataManager().addDevice(imei);
-                deviceId = getDataManager().getDeviceByImei(imei).getId();
-                deviceIMEI = imei;
-                
-            }
+        if (parser.startsWith("$PGID")) {
+            parser.skip(6);
+            String imei = parser.readString(parser.remaining() - 3);
+            deviceId = getOrCreateDeviceId(imei);
+            deviceIMEI = imei;
         }
 
         // Identification
-        else if (sentence.startsWith("$PCPTI")) {
-            String id = sentence.substring(7, sentence.indexOf(",", 7));
+        else if (parser.startsWith("$PCPTI")) {
+            parser.skip(7);
+            String id = parser.readString(',');
             try {
                 deviceId = getDataManager().getDeviceByImei(id).getId();
             } catch(Exception error) {
@@ -102,7 +61,7 @@ public class T55ProtocolDecoder extends BaseProtocolDecoder {
         }
 
         // Location
-        else if (sentence.startsWith("$GPRMC") && deviceId != null) {
+        else if (parser.startsWith("$GPRMC") && deviceId != null) {
 
             // Send response
             if (channel != null) {
@@ -110,8 +69,46 @@ public class T55ProtocolDecoder extends BaseProtocolDecoder {
             }
 
             // Parse message
-            Matcher parser = patternGPRMC.matcher(sentence);
-            if (!parser.matches()) {
+            parser.expect("$GPRMC,");
+
+            // Time (HHMMSS.SSS)
+            int hours = parser.readInt(2);
+            int minutes = parser.readInt(2);
+            int seconds = parser.readInt(2);
+            parser.optional('.');
+            parser.skipDigits();
+            parser.expect(',');
+
+            // Validity
+            char validity = parser.readChar("AV");
+            parser.expect(',');
+
+            // Latitude (DDMM.MMMM)
+            double latitude = parser.readCoordinate(2);
+            parser.expect(',');
+            if (parser.readChar("NS") == 'S') latitude = -latitude;
+            parser.expect(',');
+
+            // Longitude (DDDMM.MMMM)
+            double longitude = parser.readCoordinate(3);
+            parser.expect(',');
+            if (parser.readChar("EW") == 'W') longitude = -longitude;
+            parser.expect(',');
+
+            // Speed
+            double speed = parser.isDigit() ? parser.readDouble() : 0.0;
+            parser.expect(',');
+
+            // Course
+            double course = parser.isDigit() ? parser.readDouble() : 0.0;
+            parser.expect(',');
+
+            // Date (DDMMYY)
+            int day = parser.readInt(2);
+            int month = parser.readInt(2);
+            int year = parser.readInt(2);
+
+            if (parser.hasError() || !parser.hasRemaining()) {
                 return null;
             }
 
@@ -121,65 +118,58 @@ public class T55ProtocolDecoder extends BaseProtocolDecoder {
             position.setDeviceId(deviceId);
             position.setDeviceIMEI(deviceIMEI);
 
-            Integer index = 1;
-
             // Time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.clear();
-            time.set(Calendar.HOUR, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
+            DateBuilder time = new DateBuilder();
+            time.setHour(hours);
+            time.setMinute(minutes);
+            time.setSecond(seconds);
 
-            // Validity
-            position.setValid(parser.group(index++).compareTo("A") == 0);
-
-            // Latitude
-            Double latitude = Double.valueOf(parser.group(index++));
-            latitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
+            position.setValid(validity == 'A');
             position.setLatitude(latitude);
-
-            // Longitude
-            Double longitude = Double.valueOf(parser.group(index++));
-            longitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("W") == 0) longitude = -longitude;
             position.setLongitude(longitude);
-
-            // Speed
-            String speed = parser.group(index++);
-            if (speed != null) {
-                position.setSpeed(Double.valueOf(speed));
-            } else {
-                position.setSpeed(0.0);
-            }
-
-            // Course
-            String course = parser.group(index++);
-            if (course != null) {
-                position.setCourse(Double.valueOf(course));
-            } else {
-                position.setCourse(0.0);
-            }
+            position.setSpeed(speed);
+            position.setCourse(course);
 
             // Date
-            time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-            time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-            position.setTime(time.getTime());
+            time.setDay(day);
+            time.setMonth(month);
+            time.setYear(2000 + year);
+            position.setTimeMillis(time.getMillis());
 
             // Altitude
             position.setAltitude(0.0);
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
 
         // Location
-        else if (sentence.startsWith("$GPGGA") && deviceId != null) {
+        else if (parser.startsWith("$GPGGA") && deviceId != null) {
 
             // Parse message
-            Matcher parser = patternGPGGA.matcher(sentence);
-            if (!parser.matches()) {
+            parser.expect("$GPGGA,");
+
+            // Time
+            int hours = parser.readInt(2);
+            int minutes = parser.readInt(2);
+            int seconds = parser.readInt(2);
+            parser.optional('.');
+            parser.skipDigits();
+            parser.expect(',');
+
+            // Latitude
+            double latitude = parser.readCoordinate(2);
+            parser.expect(',');
+            if (parser.readChar("NS") == 'S') latitude = -latitude;
+            parser.expect(',');
+
+            // Longitude
+            double longitude = parser.readCoordinate(3);
+            parser.expect(',');
+            if (parser.readChar("EW") == 'W') longitude = -longitude;
+            parser.expect(',');
+
+            if (parser.hasError() || !parser.hasRemaining()) {
                 return null;
             }
 
@@ -188,29 +178,18 @@ public class T55ProtocolDecoder extends BaseProtocolDecoder {
             ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("t55");
             position.setDeviceId(deviceId);
 
-            Integer index = 1;
-
             // Time
-            Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-            time.set(Calendar.HOUR, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-            time.set(Calendar.MILLISECOND, 0);
-            position.setTime(time.getTime());
+            DateBuilder time = new DateBuilder(System.currentTimeMillis());
+            time.setHour(hours);
+            time.setMinute(minutes);
+            time.setSecond(seconds);
+            time.setMillis(0);
+            position.setTimeMillis(time.getMillis());
 
             // Validity
             position.setValid(true);
 
-            // Latitude
-            Double latitude = Double.valueOf(parser.group(index++));
-            latitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
             position.setLatitude(latitude);
-
-            // Longitude
-            Double longitude = Double.valueOf(parser.group(index++));
-            longitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("W") == 0) longitude = -longitude;
             position.setLongitude(longitude);
             
             // Speed
@@ -222,16 +201,41 @@ public class T55ProtocolDecoder extends BaseProtocolDecoder {
             // Altitude
             position.setAltitude(0.0);
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
 
         // Location
-        else if (sentence.startsWith("$GPRMA") && deviceId != null) {
+        else if (parser.startsWith("$GPRMA") && deviceId != null) {
 
             // Parse message
-            Matcher parser = patternGPRMA.matcher(sentence);
-            if (!parser.matches()) {
+            parser.expect("$GPRMA,");
+
+            // Validity
+            char validity = parser.readChar("AV");
+            parser.expect(',');
+
+            // Latitude
+            double latitude = parser.readCoordinate(2);
+            parser.expect(',');
+            if (parser.readChar("NS") == 'S') latitude = -latitude;
+            parser.expect(',');
+
+            // Longitude
+            double longitude = parser.readCoordinate(3);
+            parser.expect(',');
+            if (parser.readChar("EW") == 'W') longitude = -longitude;
+            parser.expect(",,,");
+
+            // Speed
+            double speed = parser.isDigit() ? parser.readDouble() : 0.0;
+            parser.expect(',');
+
+            // Course
+            double course = parser.isDigit() ? parser.readDouble() : 0.0;
+            parser.expect(',');
+
+            if (parser.hasError() || !parser.hasRemaining()) {
                 return null;
             }
 
@@ -240,46 +244,19 @@ public class T55ProtocolDecoder extends BaseProtocolDecoder {
             ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("t55");
             position.setDeviceId(deviceId);
 
-            Integer index = 1;
-
             // Time
-            position.setTime(Calendar.getInstance(TimeZone.getTimeZone("UTC")).getTime());
+            position.setTimeMillis(System.currentTimeMillis());
 
-            // Validity
-            position.setValid(parser.group(index++).compareTo("A") == 0 ? true : false);
-
-            // Latitude
-            Double latitude = Double.valueOf(parser.group(index++));
-            latitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("S") == 0) latitude = -latitude;
+            position.setValid(validity == 'A');
             position.setLatitude(latitude);
-
-            // Longitude
-            Double longitude = Double.valueOf(parser.group(index++));
-            longitude += Double.valueOf(parser.group(index++)) / 60;
-            if (parser.group(index++).compareTo("W") == 0) longitude = -longitude;
             position.setLongitude(longitude);
-
-            // Speed
-            String speed = parser.group(index++);
-            if (speed != null) {
-                position.setSpeed(Double.valueOf(speed));
-            } else {
-                position.setSpeed(0.0);
-            }
-
-            // Course
-            String course = parser.group(index++);
-            if (course != null) {
-                position.setCourse(Double.valueOf(course));
-            } else {
-                position.setCourse(0.0);
-            }
+            position.setSpeed(speed);
+            position.setCourse(course);
 
             // Altitude
             position.setAltitude(0.0);
 
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             return position;
         }
             
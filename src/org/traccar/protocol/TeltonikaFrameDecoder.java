@@ -18,9 +18,9 @@ package org.traccar.protocol;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.traccar.BaseFrameDecoder;
 
-public class TeltonikaFrameDecoder extends FrameDecoder {
+public class TeltonikaFrameDecoder extends BaseFrameDecoder {
 
     private static final int MESSAGE_MINIMUM_LENGTH = 12;
     
@@ -39,12 +39,12 @@ public class TeltonikaFrameDecoder extends FrameDecoder {
         int length = buf.getUnsignedShort(buf.readerIndex());
         if (length > 0) {
             if (buf.readableBytes() >= (length + 2)) {
-                return buf.readBytes(length + 2);
+                return readFrame(buf, length + 2);
             }
         } else {
             int dataLength = buf.getInt(buf.readerIndex() + 4);
             if (buf.readableBytes() >= (dataLength + 12)) {
-                return buf.readBytes(dataLength + 12);
+                return readFrame(buf, dataLength + 12);
             }
         }
         
@@ -20,11 +20,11 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.AckTemplate;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -37,6 +37,14 @@ public class TeltonikaProtocolDecoder extends BaseProtocolDecoder {
         super(serverManager);
     }
 
+    private static final AckTemplate IDENTIFICATION_ACCEPTED = new AckTemplate(new byte[] {0x01});
+    private static final AckTemplate IDENTIFICATION_REJECTED = new AckTemplate(new byte[] {0x00});
+
+    /**
+     * Number of accepted records
+     */
+    private static final AckTemplate LOCATION_RESPONSE = new AckTemplate(new byte[4]).field(0, 4);
+
     private void parseIdentification(Channel channel, ChannelBuffer buf) {
         boolean result = false;
 
@@ -50,9 +58,7 @@ public class TeltonikaProtocolDecoder extends BaseProtocolDecoder {
         }
         
         if (channel != null) {
-            ChannelBuffer response = ChannelBuffers.directBuffer(1);
-            response.writeByte(result ? 1 : 0);
-            channel.write(response);
+            channel.write((result ? IDENTIFICATION_ACCEPTED : IDENTIFICATION_REJECTED).create());
         }
     }
 
@@ -186,14 +192,12 @@ public class TeltonikaProtocolDecoder extends BaseProtocolDecoder {
                 }
             }
         
-            position.setExtendedInfo(extendedInfo.toString());
+            position.setAttributes(extendedInfo.getAttributes());
             positions.add(position);
         }
         
         if (channel != null) {
-            ChannelBuffer response = ChannelBuffers.directBuffer(4);
-            response.writeInt(count);
-            channel.write(response);
+            channel.write(LOCATION_RESPONSE.create(count));
         }
         
         return positions;
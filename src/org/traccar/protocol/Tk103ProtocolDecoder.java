@@ -15,15 +15,13 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
-import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
+import org.traccar.helper.TextParser;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
 
@@ -33,121 +31,126 @@ public class Tk103ProtocolDecoder extends BaseProtocolDecoder {
 		super(serverManager);
 	}
 
-	static private Pattern pattern = Pattern.compile("(\\d{12})" + // Device ID
-			".{4}" + // Command
-			"\\d*" + // IMEI (?)
-			"(\\d{2})(\\d{2})(\\d{2})" + // Date (YYMMDD)
-			"([AV])" + // Validity
-			"(\\d{2})(\\d{2}\\.\\d{4})" + // Latitude (DDMM.MMMM)
-			"([NS])" + "(\\d{3})(\\d{2}\\.\\d{4})" + // Longitude (DDDMM.MMMM)
-			"([EW])" + "(\\d+\\.\\d)" + // Speed
-			"(\\d{2})(\\d{2})(\\d{2})" + // Time (HHMMSS)
-			"(\\d+\\.?\\d+)" + // Course
-			"([0-9a-fA-F]{8})" + // State
-			"L([0-9a-fA-F]+)"); // Milage
-
 	@Override
 	protected Object decode(ChannelHandlerContext ctx, Channel channel,
 			Object msg) throws Exception {
 
-		String sentence = (String) msg;
+		TextParser parser = TextParser.create(msg);
 
 		// Find message start
-		 Log.info("tk103 msg=: " + sentence);
+		if (Log.isDebugEnabled() && Log.sample("message")) {
+			Log.debug("tk103 msg=: {}", parser);
+		}
          
-		int beginIndex = sentence.indexOf('(');
+		int beginIndex = parser.indexOf('(');
 		if (beginIndex != -1) {
-			sentence = sentence.substring(beginIndex + 1);
+			parser.position(beginIndex + 1);
 		}
 
 		// TODO: Send answer?
 		// (090411121854AP05)
 
-		// Parse message
-		Matcher parser = pattern.matcher(sentence);
-		if (!parser.matches()) {
+		// Device ID
+		String imei = parser.readDigits(12);
+
+		// Command
+		parser.skip(4);
+
+		// IMEI (?), date is the last six digits
+		int digitsStart = parser.position();
+		parser.skipDigits();
+		parser.position(Math.max(digitsStart, parser.position() - 6));
+
+		// Date (YYMMDD)
+		int year = parser.readInt(2);
+		int month = parser.readInt(2);
+		int day = parser.readInt(2);
+
+		// Validity
+		char validity = parser.readChar("AV");
+
+		// Latitude (DDMM.MMMM)
+		double latitude = parser.readCoordinate(2);
+		if (parser.readChar("NS") == 'S')
+			latitude = -latitude;
+
+		// Longitude (DDDMM.MMMM)
+		double longitude = parser.readCoordinate(3);
+		if (parser.readChar("EW") == 'W')
+			longitude = -longitude;
+
+		// Speed, one decimal digit
+		double speed = parser.readDouble(parser.indexOf('.') + 2 - parser.position());
+
+		// Time (HHMMSS)
+		int hours = parser.readInt(2);
+		int minutes = parser.readInt(2);
+		int seconds = parser.readInt(2);
+
+		// Course, followed by 8 character state
+		int stateIndex = parser.indexOf('L') - 8;
+		double course = parser.readDouble(stateIndex - parser.position());
+		if (parser.position() != stateIndex) {
+			parser.setError();
+		}
+		String state = parser.readString(8);
+
+		// Milage
+		parser.expect('L');
+		long milage = parser.readHex();
+
+		if (parser.hasError() || parser.hasRemaining() || milage > Integer.MAX_VALUE) {
 			return null;
 		}
 
 		// Create new position
 		Position position = new Position();
 		ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("tk103");
-		Integer index = 1;
 
 		// Get device by IMEI
-		String imei = parser.group(index++);
-		try {
-			position.setDeviceId(getDataManager().getDeviceByImei(imei).getId());
-
-		} catch (Exception error) {
+		Long deviceId = getDeviceId(imei);
+		if (deviceId == null) {
 			// Compatibility mode (remove in future)
-			try {
-				position.setDeviceId(getDataManager().getDeviceByImei(
-						"000" + imei).getId());
-			} catch (Exception error2) {
-				Log.warning("Unknown device - " + imei);
-				Log.warning("Unknown device - " + imei + " creating new...");
-				getDataManager().addDevice(imei);
-				Log.warning("Created device - " + imei + " OK");
-				// deviceId = getDataManager().getDeviceByImei(imei).getId();
-				// deviceIMEI= imei;
-				// return null;
-			}
+			deviceId = getDeviceId("000" + imei);
+		}
+		if (deviceId == null) {
+			deviceId = getOrCreateDeviceId(imei);
 		}
+		position.setDeviceId(deviceId);
 
 		// Date
-		Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-		time.clear();
-		time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-		time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-		time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
+		DateBuilder time = new DateBuilder();
+		time.setYear(2000 + year);
+		time.setMonth(month);
+		time.setDay(day);
 
-		// Validity
-		position.setValid(parser.group(index++).compareTo("A") == 0 ? true
-				: false);
-
-		// Latitude
-		Double latitude = Double.valueOf(parser.group(index++));
-		latitude += Double.valueOf(parser.group(index++)) / 60;
-		if (parser.group(index++).compareTo("S") == 0)
-			latitude = -latitude;
+		position.setValid(validity == 'A');
 		position.setLatitude(latitude);
-
-		position.setDeviceIMEI(imei);
-
-		// Longitude
-		Double longitude = Double.valueOf(parser.group(index++));
-		longitude += Double.valueOf(parser.group(index++)) / 60;
-		if (parser.group(index++).compareTo("W") == 0)
-			longitude = -longitude;
 		position.setLongitude(longitude);
 
 		// imei
 		position.setDeviceIMEI(imei);
-		;
 
 		// Altitude
 		position.setAltitude(0.0);
 
-		// Speed
-		position.setSpeed(Double.valueOf(parser.group(index++)));
+		position.setSpeed(speed);
 
 		// Time
-		time.set(Calendar.HOUR, Integer.valueOf(parser.group(index++)));
-		time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-		time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
-		position.setTime(time.getTime());
+		time.setHour(hours);
+		time.setMinute(minutes);
+		time.setSecond(seconds);
+		position.setTimeMillis(time.getMillis());
 
-		// Course
-		position.setCourse(Double.valueOf(parser.group(index++)));
+		position.setCourse(course);
 
 		// State
-		extendedInfo.set("state", parser.group(index++));
+		extendedInfo.set("state", state);
 
 		// Milage
-		extendedInfo.set("milage", Integer.parseInt(parser.group(index++), 16));
+		extendedInfo.set("milage", (int) milage);
 
-		position.setExtendedInfo(extendedInfo.toString());
+		position.setAttributes(extendedInfo.getAttributes());
 		return position;
 	}
 
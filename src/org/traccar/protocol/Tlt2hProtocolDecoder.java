@@ -15,16 +15,15 @@
  */
 package org.traccar.protocol;
 
-import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.traccar.BaseProtocolDecoder;
 import org.traccar.ServerManager;
+import org.traccar.helper.DateBuilder;
 import org.traccar.helper.Log;
 import org.traccar.model.ExtendedInfoFormatter;
 import org.traccar.model.Position;
@@ -99,11 +98,10 @@ public class Tlt2hProtocolDecoder extends BaseProtocolDecoder {
                 extendedInfo.set("cell", parser.group(index++));
 
                 // Time
-                Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-                time.clear();
-                time.set(Calendar.HOUR, Integer.valueOf(parser.group(index++)));
-                time.set(Calendar.MINUTE, Integer.valueOf(parser.group(index++)));
-                time.set(Calendar.SECOND, Integer.valueOf(parser.group(index++)));
+                DateBuilder time = new DateBuilder();
+                time.setHour(Integer.valueOf(parser.group(index++)));
+                time.setMinute(Integer.valueOf(parser.group(index++)));
+                time.setSecond(Integer.valueOf(parser.group(index++)));
                 index += 1; // Skip milliseconds
 
                 // Validity
@@ -138,10 +136,10 @@ public class Tlt2hProtocolDecoder extends BaseProtocolDecoder {
                 }
 
                 // Date
-                time.set(Calendar.DAY_OF_MONTH, Integer.valueOf(parser.group(index++)));
-                time.set(Calendar.MONTH, Integer.valueOf(parser.group(index++)) - 1);
-                time.set(Calendar.YEAR, 2000 + Integer.valueOf(parser.group(index++)));
-                position.setTime(time.getTime());
+                time.setDay(Integer.valueOf(parser.group(index++)));
+                time.setMonth(Integer.valueOf(parser.group(index++)));
+                time.setYear(2000 + Integer.valueOf(parser.group(index++)));
+                position.setTimeMillis(time.getMillis());
 
                 // Altitude
                 position.setAltitude(0.0);
@@ -149,7 +147,7 @@ public class Tlt2hProtocolDecoder extends BaseProtocolDecoder {
                 // Status
                 extendedInfo.set("status", status);
                 
-                position.setExtendedInfo(extendedInfo.toString());
+                position.setAttributes(extendedInfo.getAttributes());
                 positions.add(position);
             }
         }
@@ -19,9 +19,9 @@ import java.nio.charset.Charset;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.traccar.BaseFrameDecoder;
 
-public class TotemFrameDecoder extends FrameDecoder {
+public class TotemFrameDecoder extends BaseFrameDecoder {
 
     @Override
     protected Object decode(
@@ -40,9 +40,9 @@ public class TotemFrameDecoder extends FrameDecoder {
         }
 
         // Read message
-        int length = Integer.parseInt(buf.toString(2, 2, Charset.defaultCharset()), 16);
-        if (length >= buf.readableBytes()) {
-            return buf.readBytes(length);
+        int length = Integer.parseInt(buf.toString(buf.readerIndex() + 2, 2, Charset.defaultCharset()), 16);
+        if (buf.readableBytes() >= length) {
+            return readFrame(buf, length);
         }
 
         return null;
@@ -18,12 +18,12 @@ package org.traccar.protocol;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.BaseFrameDecoder;
 
-public class WondexFrameDecoder extends FrameDecoder {
+public class WondexFrameDecoder extends BaseFrameDecoder {
     
     private static final int KEEP_ALIVE_LENGTH = 8;
+    private static final byte[] DELIMITER = { '\r', '\n' };
 
     @Override
     protected Object decode(
@@ -38,16 +38,16 @@ public class WondexFrameDecoder extends FrameDecoder {
         if (buf.getUnsignedByte(buf.readerIndex()) == 0xD0) {
 
             // Send response
-            ChannelBuffer frame = buf.readBytes(KEEP_ALIVE_LENGTH);
+            ChannelBuffer frame = readFrame(buf, KEEP_ALIVE_LENGTH);
             if (channel != null) {
                 channel.write(frame);
             }
 
         } else {
 
-            Integer index = ChannelBufferTools.find(buf, buf.readerIndex(), buf.readableBytes(), "\r\n");
-            if (index != null) {
-                ChannelBuffer frame = buf.readBytes(index - buf.readerIndex());
+            int index = indexOf(buf, buf.readerIndex(), buf.writerIndex(), DELIMITER);
+            if (index != -1) {
+                ChannelBuffer frame = readFrame(buf, index - buf.readerIndex());
                 buf.skipBytes(2);
                 return frame;
             }
@@ -18,10 +18,12 @@ package org.traccar.protocol;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.frame.FrameDecoder;
-import org.traccar.helper.ChannelBufferTools;
+import org.traccar.BaseFrameDecoder;
 
-public class XexunFrameDecoder extends FrameDecoder {
+public class XexunFrameDecoder extends BaseFrameDecoder {
+
+    private static final byte[] START = "GPRMC".getBytes();
+    private static final byte[] IDENTIFIER = "imei:".getBytes();
 
     @Override
     protected Object decode(
@@ -36,26 +38,26 @@ public class XexunFrameDecoder extends FrameDecoder {
         }
 
         // Find start
-        Integer beginIndex = ChannelBufferTools.find(buf, 0, length, "GPRMC");
-        if (beginIndex == null) {
+        int beginIndex = indexOf(buf, buf.readerIndex(), buf.writerIndex(), START);
+        if (beginIndex == -1) {
             return null;
         }
 
         // Find identifier
-        Integer idIndex = ChannelBufferTools.find(buf, beginIndex, length, "imei:");
-        if (idIndex == null) {
+        int idIndex = indexOf(buf, beginIndex, buf.writerIndex(), IDENTIFIER);
+        if (idIndex == -1) {
             return null;
         }
 
         // Find end
-        Integer endIndex = ChannelBufferTools.find(buf, idIndex, length, ",");
-        if (endIndex == null) {
+        int endIndex = indexOf(buf, idIndex, buf.writerIndex(), (byte) ',');
+        if (endIndex == -1) {
             return null;
         }
 
         // Read buffer
-        buf.skipBytes(beginIndex);
-        ChannelBuffer frame = buf.readBytes(endIndex - beginIndex + 1);
+        buf.readerIndex(beginIndex);
+        ChannelBuffer frame = readFrame(buf, endIndex - beginIndex + 1);
 
         return frame;
     }
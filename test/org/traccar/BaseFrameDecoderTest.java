@@ -0,0 +1,26 @@
+package org.traccar;
+
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class BaseFrameDecoderTest {
+
+    @Test
+    public void testIndexOf() {
+
+        ChannelBuffer buf = ChannelBuffers.copiedBuffer("abcabd\r\n", Charset.defaultCharset());
+
+        assertEquals(2, BaseFrameDecoder.indexOf(buf, 0, buf.writerIndex(), (byte) 'c'));
+        assertEquals(-1, BaseFrameDecoder.indexOf(buf, 3, buf.writerIndex(), (byte) 'c'));
+
+        assertEquals(3, BaseFrameDecoder.indexOf(buf, 0, buf.writerIndex(), "abd".getBytes()));
+        assertEquals(6, BaseFrameDecoder.indexOf(buf, 0, buf.writerIndex(), new byte[] {'\r', '\n'}));
+        assertEquals(-1, BaseFrameDecoder.indexOf(buf, 0, 5, "abd".getBytes()));
+        assertEquals(-1, BaseFrameDecoder.indexOf(buf, 0, buf.writerIndex(), "abe".getBytes()));
+
+    }
+
+}
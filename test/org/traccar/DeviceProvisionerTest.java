@@ -0,0 +1,120 @@
+package org.traccar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.model.DataManager;
+import org.traccar.model.Device;
+import org.traccar.model.Position;
+
+public class DeviceProvisionerTest {
+
+    private static class TestDataManager implements DataManager {
+
+        private final Map<String, Device> devices = new ConcurrentHashMap<String, Device>();
+        private final AtomicInteger inserts = new AtomicInteger();
+        private final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        public List<Device> getDevices() {
+            return new ArrayList<Device>(devices.values());
+        }
+
+        @Override
+        public Device getDeviceByImei(String imei) {
+            return devices.get(imei);
+        }
+
+        @Override
+        public Device addDevice(String imei) {
+            return null;
+        }
+
+        @Override
+        public synchronized List<Device> addDevices(List<String> imeis) {
+            batches.incrementAndGet();
+            List<Device> result = new ArrayList<Device>();
+            for (String imei : imeis) {
+                Device device = new Device();
+                device.setId((long) inserts.incrementAndGet());
+                device.setImei(imei);
+                devices.put(imei, device);
+                result.add(device);
+            }
+            return result;
+        }
+
+        @Override
+        public Long addPosition(Position position) {
+            return null;
+        }
+
+        @Override
+        public void addPositions(List<Position> positions) {
+        }
+
+        @Override
+        public void updateLatestPosition(Long deviceId, Long positionId) {
+        }
+
+        @Override
+        public void updateLatestPositions(Map<Long, Long> positionIds) {
+        }
+
+    }
+
+    @Test
+    public void testSynchronous() {
+
+        TestDataManager dataManager = new TestDataManager();
+        DeviceProvisioner provisioner = new DeviceProvisioner(dataManager, 1, 0, 0);
+
+        assertNull(provisioner.getDeviceId("123"));
+        assertEquals(Long.valueOf(1), provisioner.getOrCreateDeviceId("123"));
+        assertEquals(Long.valueOf(1), provisioner.getOrCreateDeviceId("123"));
+        assertEquals(1, dataManager.inserts.get());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+
+        final TestDataManager dataManager = new TestDataManager();
+        final DeviceProvisioner provisioner = new DeviceProvisioner(dataManager, 100, 50, 5000);
+        provisioner.start();
+
+        final int count = 20;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            final String imei = String.valueOf(i % 4);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        if (provisioner.getOrCreateDeviceId(imei) == null) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (InterruptedException error) {
+                        failures.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        provisioner.stop();
+
+        assertEquals(0, failures.get());
+        assertEquals(4, dataManager.inserts.get());
+        assertTrue(dataManager.batches.get() < 4);
+    }
+
+}
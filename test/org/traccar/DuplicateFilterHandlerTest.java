@@ -0,0 +1,89 @@
+package org.traccar;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.TestPositions;
+import org.traccar.model.Attributes;
+import org.traccar.model.Position;
+
+public class DuplicateFilterHandlerTest {
+
+    @Test
+    public void testDuplicate() throws Exception {
+
+        DuplicateFilterHandler handler = new DuplicateFilterHandler(4);
+
+        assertNotNull(handler.decode(null, null, TestPositions.create(1, 1000, 60.0)));
+        assertNull(handler.decode(null, null, TestPositions.create(1, 1000, 60.0)));
+
+        // Different device, time or location is not a duplicate
+        assertNotNull(handler.decode(null, null, TestPositions.create(2, 1000, 60.0)));
+        assertNotNull(handler.decode(null, null, TestPositions.create(1, 2000, 60.0)));
+        assertNotNull(handler.decode(null, null, TestPositions.create(1, 1000, 61.0)));
+
+        // Positions without time always pass
+        Position position = new Position();
+        position.setDeviceId(1L);
+        assertNotNull(handler.decode(null, null, position));
+        assertNotNull(handler.decode(null, null, position));
+
+        assertEquals(1, handler.getDroppedCount());
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+
+        DuplicateFilterHandler handler = new DuplicateFilterHandler(2);
+
+        assertFalse(handler.isDuplicate(TestPositions.create(1, 1000, 60.0)));
+        assertFalse(handler.isDuplicate(TestPositions.create(1, 2000, 60.0)));
+        assertFalse(handler.isDuplicate(TestPositions.create(1, 3000, 60.0)));
+
+        // Oldest fingerprint is evicted
+        assertFalse(handler.isDuplicate(TestPositions.create(1, 1000, 60.0)));
+        assertTrue(handler.isDuplicate(TestPositions.create(1, 3000, 60.0)));
+    }
+
+    @Test
+    public void testList() throws Exception {
+
+        DuplicateFilterHandler handler = new DuplicateFilterHandler(4);
+
+        List<Position> result = (List<Position>) handler.decode(null, null, Arrays.asList(
+                TestPositions.create(1, 1000, 60.0), TestPositions.create(1, 1000, 60.0),
+                TestPositions.create(1, 2000, 60.0)));
+        assertEquals(2, result.size());
+
+        assertNull(handler.decode(null, null, Arrays.asList(TestPositions.create(1, 1000, 60.0))));
+    }
+
+    @Test
+    public void testAlarm() throws Exception {
+
+        DuplicateFilterHandler handler = new DuplicateFilterHandler(4);
+
+        Position position = TestPositions.create(1, 1000, 60.0);
+        Attributes attributes = new Attributes();
+        attributes.set("protocol", "gt06");
+        position.setAttributes(attributes);
+        assertFalse(handler.isDuplicate(position));
+
+        // Alarm repeating the last fix is kept
+        Position alarm = TestPositions.create(1, 1000, 60.0);
+        attributes = new Attributes();
+        attributes.set("protocol", "gt06");
+        attributes.set("alarm", "sos");
+        alarm.setAttributes(attributes);
+        assertFalse(handler.isDuplicate(alarm));
+
+        Position status = TestPositions.create(1, 1000, 60.0);
+        status.setExtendedInfo("<info><status>1</status></info>");
+        assertFalse(handler.isDuplicate(status));
+
+        // Same alarm retransmitted is a duplicate
+        assertTrue(handler.isDuplicate(alarm));
+    }
+
+}
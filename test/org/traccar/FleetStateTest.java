@@ -0,0 +1,89 @@
+package org.traccar;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.TestPositions;
+
+public class FleetStateTest {
+
+    @Test
+    public void testUpdate() {
+
+        FleetState state = new FleetState();
+
+        assertTrue(state.update(TestPositions.create(1, 1000, 60.0)));
+        assertTrue(state.update(TestPositions.create(2, 1000, 60.0)));
+        assertTrue(state.update(TestPositions.create(1, 2000, 60.0)));
+        assertEquals(2, state.size());
+        assertEquals(3, state.getVersion());
+
+        // Late position is ignored
+        assertFalse(state.update(TestPositions.create(1, 1500, 60.0)));
+        assertEquals(new Date(2000), state.get(1L).getPosition().getTime());
+    }
+
+    @Test
+    public void testChangedSince() {
+
+        FleetState state = new FleetState();
+        state.update(TestPositions.create(1, 1000, 60.0));
+        state.update(TestPositions.create(2, 1000, 60.0));
+        long version = state.getVersion();
+
+        assertEquals(2, state.getChangedSince(0).size());
+        assertTrue(state.getChangedSince(version).isEmpty());
+
+        state.update(TestPositions.create(1, 2000, 60.0));
+        List<FleetState.Entry> changed = state.getChangedSince(version);
+        assertEquals(1, changed.size());
+        assertEquals(Long.valueOf(1), changed.get(0).getPosition().getDeviceId());
+
+        // Replaced entries are listed once
+        assertEquals(2, state.getChangedSince(0).size());
+    }
+
+    @Test
+    public void testConcurrentPolling() throws Exception {
+
+        final FleetState state = new FleetState();
+        final int writers = 4;
+        final int devices = 20000;
+
+        Thread[] threads = new Thread[writers];
+        for (int i = 0; i < writers; i++) {
+            final int offset = i * devices;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < devices; j++) {
+                        state.update(TestPositions.create(offset + j, 1000, 60.0));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        // Every device is updated once, so a missed change is never repeated
+        Set<Long> seen = new HashSet<Long>();
+        long since = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+            long version = state.getVersion();
+            for (FleetState.Entry entry : state.getChangedSince(since)) {
+                seen.add(entry.getPosition().getDeviceId());
+            }
+            since = version;
+        }
+
+        assertEquals(writers * devices, seen.size());
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.traccar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.TestDataManager;
+import org.traccar.helper.TestPositions;
+import org.traccar.model.Position;
+
+public class LatestPositionTrackerTest {
+
+    private static class UpdateDataManager extends TestDataManager {
+
+        private final List<Map<Long, Long>> updates = new ArrayList<Map<Long, Long>>();
+
+        @Override
+        public void updateLatestPositions(Map<Long, Long> positionIds) {
+            updates.add(positionIds);
+        }
+
+    }
+
+    @Test
+    public void testCoalescing() {
+
+        UpdateDataManager dataManager = new UpdateDataManager();
+        LatestPositionTracker tracker = new LatestPositionTracker(dataManager, 1000);
+
+        assertTrue(tracker.update(TestPositions.create(1, 1, 1000, 60.0)));
+        assertTrue(tracker.update(TestPositions.create(2, 1, 2000, 60.0)));
+        assertTrue(tracker.update(TestPositions.create(3, 2, 1000, 60.0)));
+        tracker.flush();
+
+        assertEquals(1, dataManager.updates.size());
+        assertEquals(2, dataManager.updates.get(0).size());
+        assertEquals(Long.valueOf(2), dataManager.updates.get(0).get(1L));
+
+        // Nothing changed
+        tracker.flush();
+        assertEquals(1, dataManager.updates.size());
+    }
+
+    @Test
+    public void testOutOfOrder() {
+
+        UpdateDataManager dataManager = new UpdateDataManager();
+        LatestPositionTracker tracker = new LatestPositionTracker(dataManager, 1000);
+
+        tracker.update(TestPositions.create(5, 1, 5000, 60.0));
+        tracker.flush();
+
+        // Late fix doesn't regress pointer
+        assertFalse(tracker.update(TestPositions.create(6, 1, 4000, 60.0)));
+        assertEquals(Long.valueOf(5), tracker.getPositionId(1L));
+        tracker.flush();
+        assertEquals(1, dataManager.updates.size());
+
+        // Positions without id are ignored
+        assertFalse(tracker.update(new Position()));
+    }
+
+    @Test
+    public void testWriteThrough() {
+
+        UpdateDataManager dataManager = new UpdateDataManager();
+        LatestPositionTracker tracker = new LatestPositionTracker(dataManager, 0);
+
+        tracker.update(TestPositions.create(1, 1, 1000, 60.0));
+        tracker.update(TestPositions.create(2, 1, 2000, 60.0));
+        assertEquals(2, dataManager.updates.size());
+
+        // Only updated device is written, not every known one
+        tracker.update(TestPositions.create(3, 2, 1000, 60.0));
+        assertEquals(3, dataManager.updates.size());
+        assertEquals(1, dataManager.updates.get(2).size());
+        assertEquals(Long.valueOf(3), dataManager.updates.get(2).get(2L));
+
+        // Batch is written at once
+        List<Position> positions = new ArrayList<Position>();
+        positions.add(TestPositions.create(4, 1, 3000, 60.0));
+        positions.add(TestPositions.create(5, 2, 3000, 60.0));
+        tracker.update(positions);
+        assertEquals(4, dataManager.updates.size());
+        assertEquals(2, dataManager.updates.get(3).size());
+    }
+
+}
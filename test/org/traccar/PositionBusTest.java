@@ -0,0 +1,121 @@
+package org.traccar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.TestPositions;
+import org.traccar.model.Position;
+
+public class PositionBusTest {
+
+    private static class CollectingConsumer implements PositionBus.Consumer {
+
+        private final List<Long> ids = Collections.synchronizedList(new ArrayList<Long>());
+
+        @Override
+        public void consume(List<Position> positions) throws Exception {
+            for (Position position : positions) {
+                ids.add(position.getId());
+            }
+        }
+
+    }
+
+    @Test
+    public void testConsumers() throws Exception {
+
+        PositionBus bus = new PositionBus(16, 4);
+        CollectingConsumer first = new CollectingConsumer();
+        CollectingConsumer second = new CollectingConsumer();
+        bus.addConsumer("first", first);
+        bus.addConsumer("second", second);
+        bus.addConsumer("failing", new PositionBus.Consumer() {
+            @Override
+            public void consume(List<Position> positions) throws Exception {
+                throw new Exception("test");
+            }
+        });
+        bus.start();
+
+        for (long i = 0; i < 1000; i++) {
+            while (!bus.publish(TestPositions.create(i, 1, 0, 60.0))) {
+                Thread.yield();
+            }
+        }
+        bus.stop();
+
+        assertEquals(1000, first.ids.size());
+        assertEquals(1000, second.ids.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), first.ids.get(i));
+        }
+        assertEquals(1000, bus.getProcessedCount("first"));
+        assertEquals(1000, bus.getFailedCount("failing"));
+        assertEquals(0, bus.getBacklog());
+    }
+
+    @Test
+    public void testFull() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        PositionBus bus = new PositionBus(3, 1);
+        assertEquals(4, bus.getSize());
+        bus.addConsumer("slow", new PositionBus.Consumer() {
+            @Override
+            public void consume(List<Position> positions) throws Exception {
+                release.await(10, TimeUnit.SECONDS);
+            }
+        });
+        bus.start();
+
+        for (long i = 0; i < 4; i++) {
+            assertTrue(bus.publish(TestPositions.create(i, 1, 0, 60.0)));
+        }
+        assertFalse(bus.publish(TestPositions.create(4, 1, 0, 60.0)));
+        assertEquals(4, bus.getBacklog());
+
+        release.countDown();
+        bus.stop();
+        assertEquals(0, bus.getBacklog());
+        assertTrue(bus.publish(TestPositions.create(5, 1, 0, 60.0)));
+    }
+
+    @Test
+    public void testIdleWakeUp() throws Exception {
+
+        PositionBus bus = new PositionBus(16, 4);
+        CollectingConsumer consumer = new CollectingConsumer();
+        bus.addConsumer("consumer", consumer);
+        bus.start();
+
+        // Idle consumer ends up parked without timeout
+        Thread thread = null;
+        for (Thread candidate : Thread.getAllStackTraces().keySet()) {
+            if (candidate.getName().equals("position-bus-consumer")) {
+                thread = candidate;
+            }
+        }
+        assertNotNull(thread);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+
+        for (long i = 0; i < 100; i++) {
+            assertTrue(bus.publish(TestPositions.create(i, 1, 0, 60.0)));
+            Thread.sleep(1);
+        }
+        deadline = System.currentTimeMillis() + 5000;
+        while (consumer.ids.size() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(100, consumer.ids.size());
+        bus.stop();
+    }
+
+}
@@ -0,0 +1,203 @@
+package org.traccar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.traccar.helper.TestDataManager;
+import org.traccar.helper.TestPositions;
+import org.traccar.model.Position;
+
+public class PositionSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendPeekCommit() throws Exception {
+
+        PositionSpool spool = new PositionSpool(folder.getRoot(), 4096, 1, 10, 100);
+        assertTrue(spool.isEmpty());
+
+        spool.append(TestPositions.createComplete(60.0));
+        spool.append(TestPositions.createComplete(61.0));
+        assertFalse(spool.isEmpty());
+
+        List<Position> positions = spool.peek(10);
+        assertEquals(2, positions.size());
+        assertEquals(60.0, positions.get(0).getLatitude(), 0.0);
+        assertEquals("123456789012345", positions.get(0).getDeviceIMEI());
+        assertEquals(new Date(1000000), positions.get(0).getTime());
+        assertTrue(positions.get(0).getValid());
+        assertNull(positions.get(0).getAddress());
+
+        // Not committed, same positions again
+        assertEquals(2, spool.peek(10).size());
+
+        spool.commit();
+        assertTrue(spool.isEmpty());
+        assertTrue(spool.peek(10).isEmpty());
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+
+        PositionSpool spool = new PositionSpool(folder.getRoot(), 4096, 1, 10, 100);
+        for (int i = 0; i < 5; i++) {
+            spool.append(TestPositions.createComplete(i));
+        }
+        spool.peek(2);
+        spool.commit();
+        spool.stop();
+
+        spool = new PositionSpool(folder.getRoot(), 4096, 1, 10, 100);
+        List<Position> positions = spool.peek(10);
+        assertEquals(3, positions.size());
+        assertEquals(2.0, positions.get(0).getLatitude(), 0.0);
+
+        // New records go after recovered ones
+        spool.append(TestPositions.createComplete(5.0));
+        assertEquals(4, spool.peek(10).size());
+    }
+
+    @Test
+    public void testRollover() throws Exception {
+
+        PositionSpool spool = new PositionSpool(folder.getRoot(), 512, 1, 10, 100);
+        for (int i = 0; i < 20; i++) {
+            spool.append(TestPositions.createComplete(i));
+        }
+
+        int count = 0;
+        List<Position> positions;
+        while (!(positions = spool.peek(3)).isEmpty()) {
+            for (Position position : positions) {
+                assertEquals(count++, position.getLatitude(), 0.0);
+            }
+            spool.commit();
+        }
+        assertEquals(20, count);
+
+        // Finished segments are recycled, only current and spare files remain
+        File[] files = folder.getRoot().listFiles();
+        int segments = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".seg")) {
+                segments++;
+            }
+        }
+        assertTrue(segments <= 2);
+
+        // Spare segment content is not valid after reuse
+        for (int i = 0; i < 10; i++) {
+            spool.append(TestPositions.createComplete(100 + i));
+        }
+        positions = new ArrayList<Position>();
+        List<Position> batch;
+        while (!(batch = spool.peek(3)).isEmpty()) {
+            positions.addAll(batch);
+            spool.commit();
+        }
+        assertEquals(10, positions.size());
+        assertEquals(100.0, positions.get(0).getLatitude(), 0.0);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+
+        final AtomicInteger failures = new AtomicInteger(1);
+        final BlockingQueue<Position> received = new LinkedBlockingQueue<Position>();
+
+        PositionSpool spool = new PositionSpool(folder.getRoot(), 4096, 1, 10, 10);
+        spool.append(Collections.nCopies(3, TestPositions.createComplete(60.0)));
+        spool.start(new PositionSpool.Sink() {
+            @Override
+            public void write(List<Position> positions) throws Exception {
+                if (failures.getAndDecrement() > 0) {
+                    throw new Exception("Sink is down");
+                }
+                received.addAll(positions);
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+        }
+        spool.stop();
+        assertTrue(spool.isEmpty());
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testEventHandlerOrder() throws Exception {
+
+        final List<Double> written = new ArrayList<Double>();
+        final AtomicInteger failures = new AtomicInteger(1);
+        TestDataManager dataManager = new TestDataManager() {
+            @Override
+            public Long addPosition(Position position) {
+                if (failures.getAndDecrement() > 0) {
+                    throw new RuntimeException("database is down");
+                }
+                written.add(position.getLatitude());
+                return null;
+            }
+        };
+
+        PositionSpool spool = new PositionSpool(folder.getRoot(), 4096, 1, 10, 100);
+        DecoderEmbedder<Object> handler = new DecoderEmbedder<Object>(new TrackerEventHandler(
+                dataManager, null, null, null, null, null, null, spool));
+
+        // Failed write is spooled, later positions wait behind it although database is back
+        handler.offer(TestPositions.createComplete(60.0));
+        handler.offer(TestPositions.createComplete(61.0));
+        assertTrue(written.isEmpty());
+
+        List<Position> positions = spool.peek(10);
+        assertEquals(2, positions.size());
+        assertEquals(60.0, positions.get(0).getLatitude(), 0.0);
+        assertEquals(61.0, positions.get(1).getLatitude(), 0.0);
+        spool.commit();
+
+        // Empty spool, positions are written directly again
+        handler.offer(TestPositions.createComplete(62.0));
+        assertEquals(1, written.size());
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void testAppendFailure() throws Exception {
+
+        PositionSpool spool = new PositionSpool(folder.getRoot(), 4096, 1, 10, 100);
+        Position big = TestPositions.createComplete(61.0);
+        StringBuilder info = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            info.append('x');
+        }
+        big.setExtendedInfo(info.toString());
+
+        List<Position> positions = new ArrayList<Position>();
+        positions.add(TestPositions.createComplete(60.0));
+        positions.add(big);
+        try {
+            spool.append(positions);
+            fail("Failure must reach the caller");
+        } catch (IOException error) {
+            // expected
+        }
+        assertEquals(1, spool.peek(10).size());
+        spool.stop();
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.traccar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.TestDataManager;
+import org.traccar.model.Position;
+
+public class PositionWriterTest {
+
+    private static class RecordingDataManager extends TestDataManager {
+
+        private final Map<Long, List<Long>> written = new HashMap<Long, List<Long>>();
+        private final CountDownLatch latch;
+
+        public RecordingDataManager(int count) {
+            latch = new CountDownLatch(count);
+        }
+
+        @Override
+        public synchronized void addPositions(List<Position> positions) {
+            for (Position position : positions) {
+                List<Long> list = written.get(position.getDeviceId());
+                if (list == null) {
+                    list = new ArrayList<Long>();
+                    written.put(position.getDeviceId(), list);
+                }
+                list.add(position.getId());
+                latch.countDown();
+            }
+        }
+
+    }
+
+    @Test
+    public void testOrdering() throws Exception {
+
+        int devices = 16;
+        int count = 50;
+
+        RecordingDataManager dataManager = new RecordingDataManager(devices * count);
+        PositionWriter writer = new PositionWriter(dataManager, 10000, 4, 10, 10);
+        writer.start();
+
+        for (long i = 0; i < count; i++) {
+            for (long device = 0; device < devices; device++) {
+                Position position = new Position();
+                position.setId(i);
+                position.setDeviceId(device);
+                assertTrue(writer.write(position));
+            }
+        }
+
+        assertTrue(dataManager.latch.await(5, TimeUnit.SECONDS));
+        writer.stop();
+
+        assertEquals(devices, dataManager.written.size());
+        for (List<Long> ids : dataManager.written.values()) {
+            List<Long> sorted = new ArrayList<Long>(ids);
+            Collections.sort(sorted);
+            assertEquals(sorted, ids);
+            assertEquals(count, ids.size());
+        }
+
+        long total = 0;
+        int used = 0;
+        for (int i = 0; i < writer.getLaneCount(); i++) {
+            total += writer.getWrittenCount(i);
+            if (writer.getWrittenCount(i) > 0) {
+                used++;
+            }
+            assertEquals(0, writer.getQueueSize(i));
+        }
+        assertEquals(devices * count, total);
+        assertTrue(used > 1);
+    }
+
+    @Test
+    public void testQueueSize() throws Exception {
+
+        RecordingDataManager dataManager = new RecordingDataManager(20);
+        PositionWriter writer = new PositionWriter(dataManager, 100, 4, 10, 10);
+        for (long i = 0; i < 20; i++) {
+            Position position = new Position();
+            position.setDeviceId(i);
+            assertTrue(writer.write(position));
+        }
+        assertEquals(20, writer.getQueueSize());
+
+        writer.start();
+        assertTrue(dataManager.latch.await(5, TimeUnit.SECONDS));
+        writer.stop();
+        assertEquals(0, writer.getQueueSize());
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.traccar;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.geocode.CachingReverseGeocoder;
+import org.traccar.geocode.ReverseGeocoder;
+import org.traccar.helper.TestPositions;
+import org.traccar.model.Position;
+
+public class ReverseGeocoderHandlerTest {
+
+    @Test
+    public void testPassOnInChannelThread() throws Exception {
+
+        CachingReverseGeocoder geocoder = new CachingReverseGeocoder(new ReverseGeocoder() {
+            @Override
+            public String getAddress(double latitude, double longitude) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                }
+                return "address " + latitude;
+            }
+        }, 4, 100, 0, 2, 100);
+        geocoder.start();
+
+        final BlockingQueue<String> received = new LinkedBlockingQueue<String>();
+        ExecutionHandler executionHandler = new ExecutionHandler(new OrderedMemoryAwareThreadPoolExecutor(2, 0, 0));
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(
+                executionHandler, new ReverseGeocoderHandler(geocoder), new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                Position position = (Position) e.getMessage();
+                received.add(position.getAddress() + " " + Thread.currentThread().getName());
+            }
+        });
+
+        for (int i = 1; i <= 3; i++) {
+            embedder.offer(TestPositions.create(1, 0, i));
+        }
+
+        // Order is kept and following handlers don't run on geocoder threads
+        for (int i = 1; i <= 3; i++) {
+            String message = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(message);
+            assertTrue(message.startsWith("address " + (double) i + " "));
+            assertFalse(message.contains("geocoder"));
+        }
+
+        executionHandler.releaseExternalResources();
+        geocoder.stop();
+    }
+
+}
@@ -0,0 +1,128 @@
+package org.traccar;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TrafficCaptureTest {
+
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead() throws Exception {
+
+        File directory = folder.newFolder("capture");
+        TrafficCapture capture = new TrafficCapture(directory, 128, 10, 1);
+        InetSocketAddress remote = new InetSocketAddress("10.0.0.1", 40000);
+
+        for (int i = 0; i < 10; i++) {
+            capture.write(1000 + i, TrafficCapture.TYPE_DATA, TrafficCapture.TRANSPORT_TCP, 5001,
+                    remote, ChannelBuffers.copiedBuffer("message" + i, CHARSET));
+        }
+        capture.write(2000, TrafficCapture.TYPE_CLOSE, TrafficCapture.TRANSPORT_TCP, 5001, remote, null);
+        capture.write(3000, TrafficCapture.TYPE_DATA, TrafficCapture.TRANSPORT_TCP, 5001,
+                remote, ChannelBuffers.wrappedBuffer(new byte[200]));
+        capture.close();
+        assertEquals(1, capture.getDropped());
+
+        File[] files = TrafficCapture.listFiles(directory);
+        assertTrue(files.length > 1);
+
+        int count = 0;
+        for (File file : files) {
+            TrafficCapture.Reader reader = new TrafficCapture.Reader(file);
+            while (reader.next()) {
+                assertEquals(5001, reader.getLocalPort());
+                assertEquals(remote, reader.getRemoteAddress());
+                assertEquals(TrafficCapture.TRANSPORT_TCP, reader.getTransport());
+                if (count < 10) {
+                    assertEquals(1000 + count, reader.getTime());
+                    assertEquals(TrafficCapture.TYPE_DATA, reader.getType());
+                    assertEquals("message" + count, reader.getPayload().toString(CHARSET));
+                } else {
+                    assertEquals(TrafficCapture.TYPE_CLOSE, reader.getType());
+                    assertEquals(0, reader.getPayload().readableBytes());
+                }
+                count++;
+            }
+        }
+        assertEquals(11, count);
+    }
+
+    @Test
+    public void testRotate() throws Exception {
+
+        File directory = folder.newFolder("capture");
+        TrafficCapture capture = new TrafficCapture(directory, 64, 2, 1);
+        for (int i = 0; i < 20; i++) {
+            capture.write(i, TrafficCapture.TYPE_DATA, TrafficCapture.TRANSPORT_UDP, 5001,
+                    new InetSocketAddress("10.0.0.1", 40000), ChannelBuffers.wrappedBuffer(new byte[20]));
+        }
+        capture.close();
+        assertEquals(2, TrafficCapture.listFiles(directory).length);
+    }
+
+    @Test
+    public void testSample() throws Exception {
+
+        TrafficCapture capture = new TrafficCapture(folder.newFolder("capture"), 1024, 1, 4);
+        int sampled = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (capture.isSampled(new InetSocketAddress("10.0.0.1", 40000 + i))) {
+                sampled++;
+            }
+        }
+        assertTrue(sampled > 150 && sampled < 350);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+
+        ServerSocket server = new ServerSocket(0);
+        try {
+            File directory = folder.newFolder("capture");
+            TrafficCapture capture = new TrafficCapture(directory, 1024, 1, 1);
+            InetSocketAddress remote = new InetSocketAddress("10.0.0.1", 40000);
+            capture.write(1000, TrafficCapture.TYPE_DATA, TrafficCapture.TRANSPORT_TCP, server.getLocalPort(),
+                    remote, ChannelBuffers.copiedBuffer("first;", CHARSET));
+            capture.write(1050, TrafficCapture.TYPE_DATA, TrafficCapture.TRANSPORT_TCP, server.getLocalPort(),
+                    remote, ChannelBuffers.copiedBuffer("second;", CHARSET));
+            capture.write(1100, TrafficCapture.TYPE_CLOSE, TrafficCapture.TRANSPORT_TCP, server.getLocalPort(),
+                    remote, null);
+            capture.close();
+
+            TrafficReplay replay = new TrafficReplay("localhost", 1);
+            long start = System.currentTimeMillis();
+            replay.replay(TrafficCapture.listFiles(directory)[0]);
+            assertTrue(System.currentTimeMillis() - start >= 100);
+
+            Socket socket = server.accept();
+            InputStream input = socket.getInputStream();
+            StringBuilder received = new StringBuilder();
+            int b;
+            while ((b = input.read()) != -1) {
+                received.append((char) b);
+            }
+            socket.close();
+            replay.close();
+
+            assertEquals("first;second;", received.toString());
+            assertEquals(3, replay.getRecords());
+            assertEquals(1, replay.getSessions());
+        } finally {
+            server.close();
+        }
+    }
+
+}
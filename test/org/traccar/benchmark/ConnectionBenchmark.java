@@ -0,0 +1,167 @@
+package org.traccar.benchmark;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.LineBasedFrameDecoder;
+import org.traccar.GlobalChannelFactory;
+
+/**
+ * Opens given numbers of simulated device connections to a server using the
+ * shared channel factory and measures connect rate, heap per connection and
+ * message throughput
+ *
+ * Arguments: connection counts (default "10000,50000,100000") and worker
+ * threads (default 0, twice the number of cores). Client and server run in
+ * one process, so open files limit has to be above twice the connection
+ * count. Clients bind to different loopback addresses to avoid running out
+ * of local ports. Heap per connection includes both client and server side.
+ */
+public class ConnectionBenchmark {
+
+    private static final int ROUNDS = 3;
+    private static final int CONNECTIONS_PER_ADDRESS = 20000;
+    private static final byte[] MESSAGE =
+            "imei:123456789012345,tracker,1201011200,,F,120000.000,A,6000.0000,N,03000.0000,E,0.00,0;\n".getBytes();
+
+    private static final AtomicInteger received = new AtomicInteger();
+
+    private static class CountingHandler extends SimpleChannelUpstreamHandler {
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void run(int count, int workers) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("io.workerThreads", String.valueOf(workers));
+        GlobalChannelFactory.setProperties(properties);
+        received.set(0);
+
+        ServerBootstrap server = new ServerBootstrap(GlobalChannelFactory.getFactory());
+        server.setOption("backlog", 4096);
+        server.setOption("child.tcpNoDelay", true);
+        server.setPipelineFactory(new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new LineBasedFrameDecoder(1024), new CountingHandler());
+            }
+        });
+        Channel serverChannel = server.bind(new InetSocketAddress("127.0.0.1", 0));
+        InetSocketAddress remote = (InetSocketAddress) serverChannel.getLocalAddress();
+
+        NioClientSocketChannelFactory clientFactory = new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool(), 1, 4);
+        ClientBootstrap client = new ClientBootstrap(clientFactory);
+        client.setOption("tcpNoDelay", true);
+        client.setPipelineFactory(new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(new CountingHandler());
+            }
+        });
+
+        long memoryBefore = usedMemory();
+        List<Channel> channels = new ArrayList<Channel>(count);
+        String failure = null;
+
+        // Connect in windows to keep accept queue bounded
+        long start = System.nanoTime();
+        List<ChannelFuture> window = new ArrayList<ChannelFuture>();
+        for (int i = 0; i < count && failure == null; i++) {
+            InetSocketAddress local = new InetSocketAddress("127.0.0." + (1 + i / CONNECTIONS_PER_ADDRESS), 0);
+            window.add(client.connect(remote, local));
+            if (window.size() == 1000 || i == count - 1) {
+                for (ChannelFuture future : window) {
+                    future.awaitUninterruptibly();
+                    if (future.isSuccess()) {
+                        channels.add(future.getChannel());
+                    } else if (failure == null) {
+                        failure = String.valueOf(future.getCause());
+                    }
+                }
+                window.clear();
+            }
+        }
+        long connectTime = System.nanoTime() - start;
+        long memoryPerConnection = (usedMemory() - memoryBefore) / Math.max(channels.size(), 1);
+
+        // Every device sends a few messages
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Channel channel : channels) {
+                ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(MESSAGE);
+                channel.write(buffer);
+            }
+        }
+        int expected = channels.size() * ROUNDS;
+        long deadline = System.currentTimeMillis() + 60000;
+        while (received.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        long messageTime = System.nanoTime() - start;
+
+        System.out.println("connections: " + channels.size() + "/" + count
+                + ", workers: " + (workers > 0 ? workers : Runtime.getRuntime().availableProcessors() * 2)
+                + ", connect: " + channels.size() * 1000000000L / Math.max(connectTime, 1) + "/s"
+                + ", heap: " + memoryPerConnection + " bytes/connection"
+                + ", messages: " + received.get() * 1000000000L / Math.max(messageTime, 1) + "/s"
+                + (received.get() < expected ? " (" + received.get() + " of " + expected + " received)" : ""));
+        if (failure != null) {
+            System.out.println("  stopped by: " + failure);
+        }
+
+        for (Channel channel : channels) {
+            channel.close();
+        }
+        for (Channel channel : channels) {
+            channel.getCloseFuture().awaitUninterruptibly();
+        }
+        serverChannel.close().awaitUninterruptibly();
+        clientFactory.releaseExternalResources();
+        GlobalChannelFactory.release();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String counts = args.length > 0 ? args[0] : "10000,50000,100000";
+        int workers = args.length > 1 ? Integer.valueOf(args[1]) : 0;
+        for (String count : counts.split(",")) {
+            run(Integer.valueOf(count), workers);
+        }
+        System.exit(0);
+    }
+
+}
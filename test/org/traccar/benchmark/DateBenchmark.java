@@ -0,0 +1,63 @@
+package org.traccar.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Calendar;
+import java.util.TimeZone;
+import org.traccar.helper.DateBuilder;
+
+/**
+ * Compares UTC Calendar used by decoders with DateBuilder
+ */
+public class DateBenchmark {
+
+    private static final int COUNT = 2000000;
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long calendar(int i) {
+        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        time.clear();
+        time.set(Calendar.YEAR, 2014);
+        time.set(Calendar.MONTH, 2);
+        time.set(Calendar.DAY_OF_MONTH, 10 + i / 86400 % 2);
+        time.set(Calendar.HOUR, i / 3600 % 24);
+        time.set(Calendar.MINUTE, i / 60 % 60);
+        time.set(Calendar.SECOND, i % 60);
+        return time.getTimeInMillis();
+    }
+
+    private static long builder(int i) {
+        DateBuilder time = new DateBuilder();
+        time.setYear(2014);
+        time.setMonth(3);
+        time.setDay(10 + i / 86400 % 2);
+        time.setHour(i / 3600 % 24);
+        time.setMinute(i / 60 % 60);
+        time.setSecond(i % 60);
+        return time.getMillis();
+    }
+
+    private static void run(String name, boolean calendar) {
+        long result = 0;
+        long bytes = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            result += calendar ? calendar(i) : builder(i);
+        }
+        long time = System.nanoTime() - start;
+        bytes = getAllocatedBytes() - bytes;
+        System.out.println(String.format("%-8s %6.1f ns/date %7.1f bytes/date (%d)",
+                name, (double) time / COUNT, (double) bytes / COUNT, result));
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 3; i++) {
+            run("calendar", true);
+            run("builder", false);
+        }
+    }
+
+}
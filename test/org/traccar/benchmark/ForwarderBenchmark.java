@@ -0,0 +1,124 @@
+package org.traccar.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.traccar.http.PositionForwarder;
+import org.traccar.model.Position;
+
+/**
+ * Compares per-point GET with the pooled forwarder against a local stub
+ * with simulated upstream latency
+ */
+public class ForwarderBenchmark {
+
+    private static final int COUNT = 2000;
+    private static final int LATENCY = 2;
+
+    private static final AtomicInteger received = new AtomicInteger();
+
+    private static Position createPosition(int i) {
+        Position position = new Position();
+        position.setDeviceIMEI("123456789012345");
+        position.setTime(new Date());
+        position.setLatitude(60.0 + i * 0.0001);
+        position.setLongitude(30.0);
+        position.setAltitude(0.0);
+        position.setSpeed(0.0);
+        position.setCourse(0.0);
+        position.setExtendedInfo("<info><protocol>test</protocol></info>");
+        return position;
+    }
+
+    /**
+     * Previous implementation: new connection for every position, no timeouts
+     */
+    private static void sendGet(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Connection", "close");
+        InputStream in = connection.getInputStream();
+        while (in.read() != -1) {
+            // discard
+        }
+        in.close();
+    }
+
+    private static long runPerPoint(String url) throws Exception {
+        received.set(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            sendGet(url + "?" + PositionForwarder.formatPosition(createPosition(i)));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runForwarder(String url, int batchSize) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("forward.url", url);
+        properties.setProperty("forward.threads", "4");
+        properties.setProperty("forward.batchSize", String.valueOf(batchSize));
+
+        PositionForwarder forwarder = new PositionForwarder(properties);
+        received.set(0);
+        forwarder.start();
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            forwarder.forward(createPosition(i));
+        }
+        while (received.get() < COUNT) {
+            Thread.sleep(1);
+        }
+        long time = System.nanoTime() - start;
+        forwarder.stop();
+        return time;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                int lines = 0;
+                int b;
+                while ((b = in.read()) != -1) {
+                    if (b == '\n') {
+                        lines++;
+                    }
+                }
+                try {
+                    Thread.sleep(LATENCY);
+                } catch (InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                }
+                received.addAndGet(Math.max(lines, 1));
+                exchange.sendResponseHeaders(200, -1); // single write avoids delayed ACK stalls
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.start();
+
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/devices/new_point";
+
+        runPerPoint(url); // warm up
+
+        System.out.println("per-point GET:       " + COUNT * 1000000000L / runPerPoint(url) + " positions/s");
+        System.out.println("forwarder GET:       " + COUNT * 1000000000L / runForwarder(url, 1) + " positions/s");
+        System.out.println("forwarder POST x50:  " + COUNT * 1000000000L / runForwarder(url, 50) + " positions/s");
+
+        server.stop(0);
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.traccar.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.traccar.helper.ChannelBufferTools;
+import org.traccar.protocol.H02FrameDecoder;
+
+/**
+ * Compares allocated bytes and time per frame for copying and slicing
+ * H02 frame decoders, frames arrive in chunks of several messages
+ */
+public class FrameDecoderBenchmark {
+
+    private static final int CHUNKS = 200000;
+    private static final int FRAMES_PER_CHUNK = 8;
+    private static final String MESSAGE =
+            "*HQ,123456789012345,V1,155850,A,5214.5346,N,2117.4683,E,0.00,270.90,131012,ffffffff,000000#";
+
+    /**
+     * Previous implementation: string markers and copied frames
+     */
+    private static class CopyingFrameDecoder extends FrameDecoder {
+
+        @Override
+        protected Object decode(
+                ChannelHandlerContext ctx, Channel channel, ChannelBuffer buf) throws Exception {
+
+            String marker = buf.toString(buf.readerIndex(), 1, Charset.defaultCharset());
+            while (!marker.equals("*") && !marker.equals("$") && buf.readableBytes() > 0) {
+                buf.skipBytes(1);
+                marker = buf.toString(buf.readerIndex(), 1, Charset.defaultCharset());
+            }
+            if (marker.equals("*")) {
+                Integer index = ChannelBufferTools.find(buf, buf.readerIndex(), buf.readableBytes(), "#");
+                if (index != null) {
+                    return buf.readBytes(index + 1 - buf.readerIndex());
+                }
+            }
+            return null;
+        }
+
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void run(String name, FrameDecoder decoder, byte[] chunk) {
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(decoder);
+
+        long frames = 0;
+        long bytes = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < CHUNKS; i++) {
+            embedder.offer(ChannelBuffers.wrappedBuffer(chunk));
+            while (embedder.poll() != null) {
+                frames++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        bytes = getAllocatedBytes() - bytes;
+
+        System.out.println(String.format("%-8s %6.1f ns/frame %8.1f bytes/frame",
+                name, (double) time / frames, (double) bytes / frames));
+    }
+
+    public static void main(String[] args) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < FRAMES_PER_CHUNK; i++) {
+            s.append(MESSAGE);
+        }
+        byte[] chunk = s.toString().getBytes(Charset.defaultCharset());
+
+        for (int i = 0; i < 3; i++) {
+            run("copy", new CopyingFrameDecoder(), chunk);
+            run("slice", new H02FrameDecoder(), chunk);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.traccar.benchmark;
+
+import java.util.Random;
+import org.traccar.geocode.OfflineReverseGeocoder;
+
+/**
+ * Measures offline geocoder index build time and query latency
+ */
+public class GeocoderBenchmark {
+
+    private static final int PLACES = 1000000;
+    private static final int QUERIES = 1000000;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(50000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < PLACES; i++) {
+            geocoder.add(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, "place");
+        }
+        geocoder.build();
+        System.out.println("build: " + (System.nanoTime() - start) / 1000000 + " ms for " + PLACES + " places");
+
+        for (int round = 0; round < 3; round++) {
+            int found = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                if (geocoder.getAddress(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180) != null) {
+                    found++;
+                }
+            }
+            long time = System.nanoTime() - start;
+            System.out.println("query: " + (time / QUERIES) + " ns average, found " + found);
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.traccar.benchmark;
+
+import java.io.File;
+import java.util.Properties;
+import org.traccar.helper.Log;
+import org.traccar.model.Position;
+
+/**
+ * Measures caller side cost of position logging with synchronous and
+ * asynchronous appenders, and with logging disabled by level
+ */
+public class LogBenchmark {
+
+    private static final int COUNT = 500000;
+
+    private static void run(String name, Properties properties) throws Exception {
+        Log.setupLogger(properties);
+        Position position = new Position();
+        position.setDeviceId(1L);
+        position.setTimeMillis(System.currentTimeMillis());
+        position.setLatitude(60.0);
+        position.setLongitude(30.0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            Log.info("device: {}, lat: {}, lon: {}",
+                    position.getDeviceId(), position.getLatitudeValue(), position.getLongitudeValue());
+        }
+        long time = System.nanoTime() - start;
+        Log.close();
+        System.out.println(String.format("%-8s %7.1f ns/message", name, (double) time / COUNT));
+    }
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("traccar", ".log");
+        file.deleteOnExit();
+
+        Properties properties = new Properties();
+        properties.setProperty("logger.file", file.getPath());
+
+        for (int i = 0; i < 3; i++) {
+            properties.setProperty("logger.async", "false");
+            properties.setProperty("logger.level", "all");
+            run("sync", properties);
+            properties.setProperty("logger.async", "true");
+            properties.setProperty("logger.bufferSize", String.valueOf(COUNT));
+            run("async", properties);
+            properties.setProperty("logger.level", "warn");
+            run("disabled", properties);
+        }
+    }
+
+}
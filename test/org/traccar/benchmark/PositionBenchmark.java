@@ -0,0 +1,48 @@
+package org.traccar.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import org.traccar.model.Position;
+
+/**
+ * Allocated bytes per position created the way decoders do it
+ */
+public class PositionBenchmark {
+
+    private static final int COUNT = 1000000;
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static Position createPosition(int i) {
+        Position position = new Position();
+        position.setDeviceId(1L);
+        position.setTime(new Date(1400000000000L + i * 1000L));
+        position.setValid(true);
+        position.setLatitude(60.0 + i * 0.00001);
+        position.setLongitude(30.0 + i * 0.00001);
+        position.setAltitude(100.0 + i);
+        position.setSpeed(10.0 + i % 100);
+        position.setCourse(1.0 + i % 360);
+        return position;
+    }
+
+    public static void main(String[] args) {
+        for (int k = 0; k < 3; k++) {
+            Position[] positions = new Position[COUNT];
+            long bytes = getAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < COUNT; i++) {
+                positions[i] = createPosition(i);
+            }
+            long time = System.nanoTime() - start;
+            bytes = getAllocatedBytes() - bytes - 16 - 4L * COUNT;
+
+            System.out.println(String.format("%5.1f ns/position %6.1f bytes/position",
+                    (double) time / COUNT, (double) bytes / COUNT));
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package org.traccar.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.traccar.BaseProtocolDecoder;
+import org.traccar.helper.TestDataManager;
+import org.traccar.protocol.Gl200ProtocolDecoder;
+import org.traccar.protocol.Gps103ProtocolDecoder;
+import org.traccar.protocol.T55ProtocolDecoder;
+import org.traccar.protocol.Tk103ProtocolDecoder;
+
+/**
+ * Time and allocated bytes per message for high volume text decoders,
+ * "string" mode converts frame to String first same as StringDecoder did
+ */
+public class TextDecoderBenchmark {
+
+    private static final int COUNT = 500000;
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void run(String name, BaseProtocolDecoder decoder, boolean string, String... messages)
+            throws Exception {
+
+        ChannelBuffer[] buffers = new ChannelBuffer[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            buffers[i] = ChannelBuffers.copiedBuffer(messages[i], CHARSET);
+        }
+
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(decoder);
+        if (name.equals("t55")) {
+            String id = "$PGID,359853000144328*0F";
+            embedder.offer(string ? id : ChannelBuffers.copiedBuffer(id, CHARSET));
+        }
+
+        int decoded = 0;
+        long bytes = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            ChannelBuffer buf = buffers[i % buffers.length];
+            Object msg = string ? buf.toString(CHARSET) : buf.duplicate();
+            embedder.offer(msg);
+            while (embedder.poll() != null) {
+                decoded++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        bytes = getAllocatedBytes() - bytes;
+
+        if (decoded == 0) {
+            throw new IllegalStateException(name + " decoded nothing");
+        }
+        System.out.println(String.format("%-8s %-6s %7.1f ns/msg %8.1f bytes/msg",
+                name, string ? "string" : "buffer", (double) time / COUNT, (double) bytes / COUNT));
+    }
+
+    private static BaseProtocolDecoder init(BaseProtocolDecoder decoder) {
+        decoder.setDataManager(new TestDataManager());
+        return decoder;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean string = args.length > 0 && args[0].equals("string");
+
+        for (int i = 0; i < 3; i++) {
+            run("gps103", init(new Gps103ProtocolDecoder(null)), string,
+                    "imei:359587010124900,tracker,0809231929,13554900601,F,112909.397,A,2234.4669,N,11354.3287,E,0.11,321.53,",
+                    "imei:869039001186913,tracker,1308282156,0,F,215630.000,A,5602.11015,N,9246.30767,E,1.4,,175.9,");
+            run("tk103", init(new Tk103ProtocolDecoder(null)), string,
+                    "(035988863964BP05000035988863964110524A4241.7977N02318.7561E000.0123536356.5100000000L000946BB");
+            run("gl200", init(new Gl200ProtocolDecoder(null)), string,
+                    "+RESP:GTFRI,020102,000035988863964,,0,0,1,1,4.3,92,70.0,121.354335,31.222073,20090214013254,0460,0000,18d8,6141,00,,20090214093254,11F0");
+            run("t55", init(new T55ProtocolDecoder(null)), string,
+                    "$GPRMC,094907.000,A,6000.5332,N,03020.5192,E,1.17,60.26,091111,,*33");
+        }
+    }
+
+}
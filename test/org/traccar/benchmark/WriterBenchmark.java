@@ -0,0 +1,89 @@
+package org.traccar.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.traccar.PositionWriter;
+import org.traccar.model.DatabaseDataManager;
+import org.traccar.model.DatabaseDataManagerTest;
+import org.traccar.model.Position;
+
+/**
+ * Measures writer throughput with different number of lanes against
+ * DatabaseDataManager on a file based H2 database
+ *
+ * Arguments: optional JDBC URL prefix, default is a temporary directory.
+ * Every lane count gets a fresh database.
+ */
+public class WriterBenchmark {
+
+    private static final int COUNT = 100000;
+    private static final int DEVICES = 1000;
+
+    private static class CountingDataManager extends DatabaseDataManager {
+
+        private final AtomicInteger written = new AtomicInteger();
+
+        public CountingDataManager(Properties properties) throws Exception {
+            super(properties);
+        }
+
+        @Override
+        public void addPositions(List<Position> positions) throws java.sql.SQLException {
+            super.addPositions(positions);
+            written.addAndGet(positions.size());
+        }
+
+    }
+
+    private static long run(String url, int lanes) throws Exception {
+        Properties properties = DatabaseDataManagerTest.createProperties(url);
+        properties.setProperty("database.maxPoolSize", String.valueOf(lanes));
+        CountingDataManager dataManager = new CountingDataManager(properties);
+        PositionWriter writer = new PositionWriter(dataManager, COUNT, lanes, 100, 10);
+        writer.start();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            Position position = new Position();
+            position.setDeviceId((long) (i % DEVICES));
+            position.setTimeMillis(i * 1000L);
+            position.setValid(true);
+            position.setLatitude(60.0);
+            position.setLongitude(30.0);
+            position.setSpeed(0.0);
+            position.setCourse(0.0);
+            writer.write(position);
+        }
+        while (dataManager.written.get() < COUNT) {
+            Thread.sleep(1);
+        }
+        long time = System.nanoTime() - start;
+
+        writer.stop();
+        dataManager.close();
+        return time;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        String prefix;
+        if (args.length > 0) {
+            prefix = args[0];
+        } else {
+            File directory = File.createTempFile("writer", "");
+            directory.delete();
+            directory.mkdirs();
+            prefix = "jdbc:h2:" + directory.getAbsolutePath() + "/benchmark";
+        }
+
+        run(prefix + "-warmup", 1);
+
+        for (int lanes = 1; lanes <= 16; lanes *= 2) {
+            long time = run(prefix + "-" + lanes, lanes);
+            System.out.println(lanes + " lanes: " + COUNT * 1000000000L / time + " rows/s");
+        }
+    }
+
+}
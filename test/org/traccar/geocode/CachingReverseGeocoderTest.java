@@ -0,0 +1,135 @@
+package org.traccar.geocode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static org.junit.Assert.*;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingReverseGeocoderTest {
+
+    private Server server;
+    private String url;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long delay;
+
+    /**
+     * Provider stub answering in Google format
+     */
+    private class StubServlet extends HttpServlet {
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            requests.incrementAndGet();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException error) {
+                    return;
+                }
+            }
+            response.setContentType("application/json; charset=UTF-8");
+            response.getWriter().print("{\n   \"results\" : [\n      {\n"
+                    + "         \"formatted_address\" : \"Address " + request.getParameter("latlng") + "\",\n"
+                    + "      }\n   ]\n}\n");
+        }
+
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/geocode");
+        context.addServlet(new ServletHolder(new StubServlet()), "/*");
+        server.setHandler(context);
+        server.start();
+        url = "http://127.0.0.1:" + server.getConnectors()[0].getLocalPort() + "/geocode";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    private CachingReverseGeocoder createGeocoder() {
+        return new CachingReverseGeocoder(new GoogleReverseGeocoder(url, 5000), 3, 100, 0, 2, 100);
+    }
+
+    @Test
+    public void testCache() {
+
+        CachingReverseGeocoder geocoder = createGeocoder();
+
+        assertEquals("Address 60.0,30.0", geocoder.getAddress(60.0001, 30.0001));
+        assertEquals("Address 60.0,30.0", geocoder.getAddress(59.9999, 29.9999));
+        assertEquals(1, requests.get());
+        assertEquals(1, geocoder.getHitCount());
+
+        assertEquals("Address -33.9,-70.7", geocoder.getAddress(-33.9, -70.7));
+        assertEquals(2, requests.get());
+        assertEquals(geocoder.getCell(-33.9, -70.7), geocoder.getCell(-33.9002, -70.6998));
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+
+        delay = 200;
+        CachingReverseGeocoder geocoder = createGeocoder();
+        geocoder.start();
+
+        final CountDownLatch latch = new CountDownLatch(10);
+        final AtomicInteger resolved = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            geocoder.getAddress(10.0, 20.0, new CachingReverseGeocoder.Callback() {
+                @Override
+                public void onAddress(String address) {
+                    if (address != null) {
+                        resolved.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        geocoder.stop();
+
+        assertEquals(10, resolved.get());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+
+        File file = File.createTempFile("geocoder", ".cache");
+        file.delete();
+        try {
+            CachingReverseGeocoder geocoder = createGeocoder();
+            geocoder.setCacheFile(file);
+            geocoder.start();
+            assertEquals("Address 60.0,30.0", geocoder.getAddress(60.0, 30.0));
+            geocoder.stop();
+            assertTrue(file.exists());
+
+            geocoder = createGeocoder();
+            geocoder.setCacheFile(file);
+            geocoder.start();
+            assertEquals("Address 60.0,30.0", geocoder.getCachedAddress(60.0, 30.0));
+            geocoder.stop();
+            assertEquals(1, requests.get());
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package org.traccar.geocode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OfflineReverseGeocoderTest {
+
+    @Test
+    public void testLoad() throws Exception {
+
+        File file = File.createTempFile("places", ".csv");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write("# latitude,longitude,address\n");
+            writer.write("60.0,30.0,Saint Petersburg, Russia\n");
+            writer.write("55.75,37.62,Moscow, Russia\n");
+            writer.write("-33.45,-70.67,Santiago, Chile\n");
+            writer.write("invalid line\n");
+            writer.close();
+
+            OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(100000);
+            geocoder.load(file);
+            assertEquals(3, geocoder.size());
+
+            assertEquals("Saint Petersburg, Russia", geocoder.getAddress(60.1, 30.2));
+            assertEquals("Moscow, Russia", geocoder.getAddress(55.7, 37.5));
+            assertEquals("Santiago, Chile", geocoder.getAddress(-33.5, -70.6));
+            assertNull(geocoder.getAddress(0.0, 0.0));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testNearest() {
+
+        Random random = new Random(1);
+        double[] latitudes = new double[5000];
+        double[] longitudes = new double[5000];
+        OfflineReverseGeocoder geocoder = new OfflineReverseGeocoder(Double.MAX_VALUE);
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = random.nextDouble() * 180 - 90;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+            geocoder.add(latitudes[i], longitudes[i], String.valueOf(i));
+        }
+        geocoder.add(10.0, 10.0, "duplicate");
+        geocoder.add(10.0, 10.0, "duplicate");
+        geocoder.build();
+
+        // Compare with linear search
+        for (int n = 0; n < 200; n++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            int best = 0;
+            double bestDistance = Double.MAX_VALUE;
+            for (int i = 0; i < latitudes.length; i++) {
+                double distance = distance(latitude, longitude, latitudes[i], longitudes[i]);
+                if (distance < bestDistance) {
+                    best = i;
+                    bestDistance = distance;
+                }
+            }
+            assertEquals(String.valueOf(best), geocoder.getAddress(latitude, longitude));
+        }
+        assertEquals("duplicate", geocoder.getAddress(10.001, 10.001));
+    }
+
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+}
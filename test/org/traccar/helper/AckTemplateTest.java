@@ -0,0 +1,53 @@
+package org.traccar.helper;
+
+import java.nio.ByteOrder;
+import static org.junit.Assert.*;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+public class AckTemplateTest {
+
+    @Test
+    public void testCrc16Ccitt() {
+
+        AckTemplate template = new AckTemplate(new byte[] {
+                0x78, 0x78, 0x05, 0x00, 0x00, 0x00, 0x00, 0x00, 0x0D, 0x0A})
+                .field(3, 1).field(4, 2).crc(AckTemplate.CRC16_CCITT, 2, 6, 6);
+
+        for (int index = 0; index < 1000; index += 37) {
+            ChannelBuffer expected = ChannelBuffers.buffer(10);
+            expected.writeByte(0x78); expected.writeByte(0x78);
+            expected.writeByte(0x05);
+            expected.writeByte(0x13);
+            expected.writeShort(index);
+            expected.writeShort(Crc.crc16Ccitt(expected.toByteBuffer(2, 4)));
+            expected.writeByte(0x0D); expected.writeByte(0x0A);
+
+            assertEquals(ChannelBuffers.hexDump(expected), ChannelBuffers.hexDump(template.create(0x13, index)));
+        }
+    }
+
+    @Test
+    public void testCrc16X25() {
+
+        AckTemplate template = new AckTemplate(ByteOrder.LITTLE_ENDIAN, new byte[] {
+                0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x11, 0x22})
+                .field(2, 4).field(6, 2).crc(AckTemplate.CRC16_X25, 6, 10, 0);
+
+        ChannelBuffer buffer = template.create(0x12345678, 0xABCD);
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        assertEquals(0x12345678, buffer.getInt(2));
+        assertEquals(0xABCD, buffer.getUnsignedShort(6));
+        assertEquals(Crc.crc16X25Ccitt(buffer.toByteBuffer(6, 4)), buffer.getUnsignedShort(0));
+    }
+
+    @Test
+    public void testConstant() {
+
+        AckTemplate template = new AckTemplate(new byte[] {0x01});
+        assertEquals("01", ChannelBuffers.hexDump(template.create()));
+        assertEquals("00000005", ChannelBuffers.hexDump(new AckTemplate(new byte[4]).field(0, 4).create(5)));
+    }
+
+}
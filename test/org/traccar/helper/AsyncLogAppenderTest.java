@@ -0,0 +1,127 @@
+package org.traccar.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class AsyncLogAppenderTest {
+
+    private static class ListAppender extends AppenderSkeleton {
+
+        private final List<String> messages = new ArrayList<String>();
+        private final CountDownLatch blocked;
+        private boolean closed;
+
+        public ListAppender(CountDownLatch blocked) {
+            this.blocked = blocked;
+        }
+
+        @Override
+        protected synchronized void append(LoggingEvent event) {
+            try {
+                blocked.await();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(event.getRenderedMessage());
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+
+    }
+
+    private static LoggingEvent event(Level level, String message) {
+        return new LoggingEvent(
+                AsyncLogAppenderTest.class.getName(), Logger.getRootLogger(), level, message, null);
+    }
+
+    private static LoggingEvent event(String message) {
+        return event(Level.INFO, message);
+    }
+
+    @Test
+    public void testOrder() {
+
+        ListAppender target = new ListAppender(new CountDownLatch(0));
+        AsyncLogAppender appender = new AsyncLogAppender(target, 128);
+        for (int i = 0; i < 100; i++) {
+            appender.doAppend(event(String.valueOf(i)));
+        }
+        appender.close();
+
+        assertTrue(target.closed);
+        assertEquals(0, appender.getDropped());
+        assertEquals(100, target.messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(String.valueOf(i), target.messages.get(i));
+        }
+    }
+
+    @Test
+    public void testDrop() {
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        ListAppender target = new ListAppender(blocked);
+        AsyncLogAppender appender = new AsyncLogAppender(target, 4);
+
+        // Writer takes at most one batch and blocks on it, the rest fills the ring
+        for (int i = 0; i < 20; i++) {
+            appender.doAppend(event(String.valueOf(i)));
+        }
+        assertTrue(appender.getDropped() >= 20 - 8);
+
+        blocked.countDown();
+        appender.close();
+
+        assertEquals(20 - appender.getDropped() + 1, target.messages.size());
+        assertEquals(appender.getDropped() + " log messages dropped",
+                target.messages.get(target.messages.size() - 1));
+    }
+
+    @Test
+    public void testWarningNotDropped() throws Exception {
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        ListAppender target = new ListAppender(blocked);
+        final AsyncLogAppender appender = new AsyncLogAppender(target, 4);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 20; i++) {
+                    appender.doAppend(event(Level.WARN, String.valueOf(i)));
+                }
+            }
+        });
+        thread.start();
+
+        // Logging thread waits for the writer instead of dropping
+        Thread.sleep(50);
+        assertTrue(thread.isAlive());
+        blocked.countDown();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        appender.close();
+
+        assertEquals(0, appender.getDropped());
+        assertEquals(20, target.messages.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(String.valueOf(i), target.messages.get(i));
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.traccar.helper;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1";
+
+    @Test
+    public void testBorrow() throws Exception {
+
+        ConnectionPool pool = new ConnectionPool(URL, "sa", "", 1, 2, 100, 1);
+        pool.init();
+
+        AdvancedConnection first = pool.borrow();
+        AdvancedConnection second = pool.borrow();
+        assertNotSame(first, second);
+
+        try {
+            pool.borrow();
+            fail("Pool should be exhausted");
+        } catch (SQLException error) {
+        }
+
+        pool.release(first);
+        assertSame(first, pool.borrow());
+
+        pool.release(first);
+        pool.release(second);
+        pool.close();
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+
+        ConnectionPool pool = new ConnectionPool(URL, "sa", "", 1, 1, 100, 1);
+        pool.init();
+
+        AdvancedConnection connection = pool.borrow();
+        connection.getInstance().close();
+        pool.release(connection);
+
+        connection = pool.borrow();
+        assertFalse(connection.getInstance().isClosed());
+        pool.release(connection);
+        pool.close();
+    }
+
+    @Test
+    public void testStatementCache() throws Exception {
+
+        ConnectionPool pool = new ConnectionPool(URL, "sa", "", 1, 1, 100, 1);
+        pool.init();
+
+        AdvancedConnection connection = pool.borrow();
+        PreparedStatement statement = connection.prepareStatement("SELECT 1", Statement.NO_GENERATED_KEYS);
+        assertSame(statement, connection.prepareStatement("SELECT 1", Statement.NO_GENERATED_KEYS));
+        assertNotSame(statement, connection.prepareStatement("SELECT 1", Statement.RETURN_GENERATED_KEYS));
+
+        connection.reset();
+        assertNotSame(statement, connection.prepareStatement("SELECT 1", Statement.NO_GENERATED_KEYS));
+        pool.release(connection);
+        pool.close();
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.traccar.helper;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class DateBuilderTest {
+
+    private static long calendar(int year, int month, int day, int hour, int minute, int second) {
+        Calendar time = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        time.clear();
+        time.set(Calendar.YEAR, year);
+        time.set(Calendar.MONTH, month - 1);
+        time.set(Calendar.DAY_OF_MONTH, day);
+        time.set(Calendar.HOUR, hour);
+        time.set(Calendar.MINUTE, minute);
+        time.set(Calendar.SECOND, second);
+        return time.getTimeInMillis();
+    }
+
+    @Test
+    public void testCalendar() {
+
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            int year = 1980 + random.nextInt(100);
+            int month = random.nextInt(14);
+            int day = random.nextInt(33);
+            int hour = random.nextInt(25);
+            int minute = random.nextInt(61);
+            int second = random.nextInt(61);
+            assertEquals(calendar(year, month, day, hour, minute, second),
+                    DateBuilder.getMillis(year, month, day, hour, minute, second, 0));
+        }
+
+        assertEquals(calendar(2014, 2, 29, 0, 0, 0), new DateBuilder().setDate(2014, 2, 29).getMillis());
+
+    }
+
+    @Test
+    public void testDay() {
+
+        long time = calendar(2012, 2, 29, 13, 45, 10);
+        assertEquals(calendar(2012, 2, 29, 0, 0, 0), new DateBuilder(time).getMillis());
+
+        time = calendar(1969, 12, 31, 23, 0, 0);
+        assertEquals(calendar(1969, 12, 31, 0, 0, 0), new DateBuilder(time).getMillis());
+
+    }
+
+    @Test
+    public void testGps() {
+
+        assertEquals(calendar(1980, 1, 6, 0, 0, 0), DateBuilder.GPS_EPOCH);
+        assertEquals(calendar(2014, 3, 9, 0, 0, 10), DateBuilder.getGpsMillis(1783, 10000));
+
+        assertEquals(12, DateBuilder.fromBcd(0x12));
+
+    }
+
+}
@@ -0,0 +1,42 @@
+package org.traccar.helper;
+
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LogTest {
+
+    @Test
+    public void testFormat() {
+
+        assertEquals("a 1 b 2", Log.format("a {} b {}", 1, 2));
+        assertEquals("a null", Log.format("a {}", (Object) null));
+        assertEquals("a 1 {}", Log.format("a {} {}", 1));
+        assertEquals("a 1", Log.format("a {}", 1, 2));
+    }
+
+    @Test
+    public void testSample() {
+
+        Properties properties = new Properties();
+        properties.setProperty("logger.sample.every", "3");
+        properties.setProperty("logger.rate.limited", "2");
+        Log.setupSamplers(properties);
+
+        assertTrue(Log.sample("other"));
+        assertTrue(Log.sample("other"));
+
+        assertTrue(Log.sample("every"));
+        assertFalse(Log.sample("every"));
+        assertFalse(Log.sample("every"));
+        assertTrue(Log.sample("every"));
+
+        assertTrue(Log.sample("limited"));
+        assertTrue(Log.sample("limited"));
+        assertFalse(Log.sample("limited"));
+
+        Log.setupSamplers(new Properties());
+        assertTrue(Log.sample("limited"));
+    }
+
+}
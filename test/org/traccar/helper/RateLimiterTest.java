@@ -0,0 +1,24 @@
+package org.traccar.helper;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testLimit() throws Exception {
+
+        RateLimiter limiter = new RateLimiter(20, 2);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        long start = System.currentTimeMillis();
+        limiter.acquire();
+        limiter.acquire();
+        assertTrue(System.currentTimeMillis() - start >= 80);
+
+        assertTrue(new RateLimiter(0, 0).tryAcquire());
+    }
+
+}
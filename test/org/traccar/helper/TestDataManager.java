@@ -1,6 +1,7 @@
 package org.traccar.helper;
 
 import java.util.List;
+import java.util.Map;
 import org.traccar.model.DataManager;
 import org.traccar.model.Device;
 import org.traccar.model.Position;
@@ -23,11 +24,22 @@ public class TestDataManager implements DataManager {
         return null;
     }
     @Override
+    public void addPositions(List<Position> positions) {
+    }
+    @Override
     public Device addDevice(String imei) {
         return null;
     }
+    @Override
+    public List<Device> addDevices(List<String> imeis) {
+        return null;
+    }
 
     @Override
     public void updateLatestPosition(Long deviceId, Long positionId) throws Exception {
     }
+
+    @Override
+    public void updateLatestPositions(Map<Long, Long> positionIds) {
+    }
 }
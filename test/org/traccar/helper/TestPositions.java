@@ -0,0 +1,40 @@
+package org.traccar.helper;
+
+import java.util.Date;
+import org.traccar.model.Position;
+
+public class TestPositions {
+
+    /**
+     * Position with device, time and latitude, longitude is fixed
+     */
+    public static Position create(long deviceId, long time, double latitude) {
+        Position position = new Position();
+        position.setDeviceId(deviceId);
+        position.setTime(new Date(time));
+        position.setLatitude(latitude);
+        position.setLongitude(30.0);
+        return position;
+    }
+
+    public static Position create(long id, long deviceId, long time, double latitude) {
+        Position position = create(deviceId, time, latitude);
+        position.setId(id);
+        return position;
+    }
+
+    /**
+     * Position with all stored and forwarded fields set
+     */
+    public static Position createComplete(double latitude) {
+        Position position = create(1, 1000000, latitude);
+        position.setDeviceIMEI("123456789012345");
+        position.setValid(true);
+        position.setAltitude(0.0);
+        position.setSpeed(0.0);
+        position.setCourse(0.0);
+        position.setExtendedInfo("<info><protocol>test</protocol></info>");
+        return position;
+    }
+
+}
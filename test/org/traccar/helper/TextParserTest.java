@@ -0,0 +1,76 @@
+package org.traccar.helper;
+
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TextParserTest {
+
+    @Test
+    public void testFields() {
+
+        ChannelBuffer buf = ChannelBuffers.copiedBuffer(
+                "xx$GPRMC,094907.000,A,6000.5332,N,03020.5192,E,-1.17,60.,1F,091111", Charset.defaultCharset());
+        buf.skipBytes(2);
+        TextParser parser = new TextParser(buf);
+
+        assertTrue(parser.startsWith("$GPRMC"));
+        parser.expect("$GPRMC,");
+        assertEquals(9, parser.readInt(2));
+        assertEquals(4907, parser.readInt(4));
+        parser.expect('.');
+        assertEquals("000", parser.readDigits());
+        parser.expect(',');
+        assertEquals('A', parser.readChar("AV"));
+        parser.expect(',');
+        assertEquals(60 + 0.5332 / 60, parser.readCoordinate(2), 0.0000001);
+        parser.skipField(',');
+        parser.skipField(',');
+        assertEquals(30 + 20.5192 / 60, parser.readCoordinate(0), 0.0000001);
+        parser.expect(",E,");
+        assertEquals(-1.17, parser.readDouble(), 0.0);
+        parser.expect(',');
+        assertEquals(60.0, parser.readDouble(), 0.0);
+        parser.expect(',');
+        assertEquals(0x1F, parser.readHex());
+        parser.expect(',');
+        assertEquals("0911", parser.readString(4));
+        assertEquals(11, parser.readInt());
+
+        assertFalse(parser.hasError());
+        assertFalse(parser.hasRemaining());
+        assertEquals(2, buf.readerIndex());
+
+    }
+
+    @Test
+    public void testError() {
+
+        TextParser parser = new TextParser("12a,b");
+
+        assertEquals(-1, parser.indexOf('x'));
+        assertEquals(3, parser.indexOf(','));
+        assertTrue(parser.contains("a,"));
+
+        assertEquals(0, parser.readInt(3));
+        assertTrue(parser.hasError());
+        assertNull(parser.readString(','));
+
+        parser.reset(4);
+        assertFalse(parser.hasError());
+        assertEquals(0, parser.readChar("AV"));
+        assertTrue(parser.hasError());
+
+        parser.reset(0);
+        assertEquals(12.0, parser.readDouble(2), 0.0);
+        assertEquals(0.0, parser.readDouble(), 0.0);
+        assertTrue(parser.hasError());
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.traccar.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import static org.junit.Assert.*;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.traccar.FleetState;
+import org.traccar.helper.TestPositions;
+import org.traccar.model.ExtendedInfoFormatter;
+import org.traccar.model.Position;
+
+public class FleetServletTest {
+
+    private Server server;
+    private FleetState state;
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        state = new FleetState();
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/api/fleet");
+        context.addServlet(new ServletHolder(new FleetServlet(state)), "/*");
+        server.setHandler(context);
+        server.start();
+        url = "http://127.0.0.1:" + server.getConnectors()[0].getLocalPort() + "/api/fleet";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    private HttpURLConnection request(String query) throws Exception {
+        return (HttpURLConnection) new URL(url + query).openConnection();
+    }
+
+    private String read(HttpURLConnection connection) throws Exception {
+        InputStream in = connection.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+
+        Position position = TestPositions.create(1, 1000, 60.0);
+        ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("test");
+        extendedInfo.set("index", 1);
+        position.setAttributes(extendedInfo.getAttributes());
+        state.update(position);
+        state.update(TestPositions.create(2, 1000, 60.0));
+
+        HttpURLConnection connection = request("");
+        assertEquals(200, connection.getResponseCode());
+        String body = read(connection);
+        assertTrue(body.startsWith("{\"version\":2,\"positions\":[{\"version\":1,\"deviceId\":1,"));
+        assertTrue(body.contains("\"attributes\":{\"protocol\":\"test\",\"index\":1}"));
+        String etag = connection.getHeaderField("ETag");
+
+        // Conditional requests
+        connection = request("");
+        connection.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, connection.getResponseCode());
+        assertEquals(304, request("?since=2").getResponseCode());
+
+        state.update(TestPositions.create(2, 2000, 60.0));
+        connection = request("?since=2");
+        assertEquals(200, connection.getResponseCode());
+        body = read(connection);
+        assertTrue(body.startsWith("{\"version\":3,\"positions\":[{\"version\":3,\"deviceId\":2,"));
+
+        assertTrue(read(request("?device=1")).contains("\"deviceId\":1"));
+        assertEquals(400, request("?since=x").getResponseCode());
+    }
+
+}
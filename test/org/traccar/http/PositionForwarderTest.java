@@ -0,0 +1,139 @@
+package org.traccar.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.traccar.PositionSpool;
+import org.traccar.helper.TestPositions;
+
+public class PositionForwarderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final BlockingQueue<String> requests = new LinkedBlockingQueue<String>();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/devices/new_point", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int length;
+                while ((length = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, length);
+                }
+                if (failures.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(500, -1);
+                } else {
+                    requests.add(exchange.getRequestMethod() + " "
+                            + exchange.getRequestURI().getRawQuery() + " " + body.toString("UTF-8"));
+                    exchange.sendResponseHeaders(200, 2);
+                    exchange.getResponseBody().write("OK".getBytes("UTF-8"));
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private Properties createProperties(int batchSize) {
+        Properties properties = new Properties();
+        properties.setProperty("forward.url",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/devices/new_point");
+        properties.setProperty("forward.threads", "1");
+        properties.setProperty("forward.batchSize", String.valueOf(batchSize));
+        properties.setProperty("forward.retryDelay", "10");
+        return properties;
+    }
+
+    @Test
+    public void testForward() throws Exception {
+
+        PositionForwarder forwarder = new PositionForwarder(createProperties(1));
+        forwarder.start();
+        assertTrue(forwarder.forward(TestPositions.createComplete(60.0)));
+
+        String request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertTrue(request.startsWith("GET latitude=60.0&longitude=30.0&imei=123456789012345"));
+        assertTrue(request.contains("&datetime=1000&"));
+        assertTrue(request.contains("&extended=%3Cinfo%3E"));
+
+        forwarder.stop();
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+
+        failures.set(2);
+
+        PositionForwarder forwarder = new PositionForwarder(createProperties(1));
+        forwarder.start();
+        forwarder.forward(TestPositions.createComplete(60.0));
+
+        assertNotNull(requests.poll(5, TimeUnit.SECONDS));
+        assertTrue(failures.get() < 0);
+
+        forwarder.stop();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+
+        PositionForwarder forwarder = new PositionForwarder(createProperties(10));
+        for (int i = 0; i < 3; i++) {
+            forwarder.forward(TestPositions.createComplete(i));
+        }
+        forwarder.start();
+
+        String request = requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(request);
+        assertTrue(request.startsWith("POST null latitude=0.0&"));
+        assertEquals(3, request.split("\n").length);
+
+        forwarder.stop();
+    }
+
+    @Test
+    public void testStopSpoolsQueue() throws Exception {
+
+        PositionSpool spool = new PositionSpool(folder.getRoot(), 4096, 1, 10, 100);
+        PositionForwarder forwarder = new PositionForwarder(createProperties(1));
+        forwarder.setSpool(spool);
+        for (int i = 0; i < 3; i++) {
+            forwarder.forward(TestPositions.createComplete(i));
+        }
+        forwarder.stop();
+
+        assertEquals(0, forwarder.getQueueSize());
+        assertEquals(3, spool.peek(10).size());
+        spool.stop();
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.traccar.http;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.FleetState;
+import org.traccar.helper.TestPositions;
+
+public class PushBrokerTest {
+
+    private static FleetState.Entry createEntry(long deviceId, long version) {
+        return new FleetState.Entry(TestPositions.create(deviceId, version, 60.0), version);
+    }
+
+    @Test
+    public void testCoalesce() {
+
+        PushBroker broker = new PushBroker(10, 60000);
+        PushBroker.Subscriber all = broker.subscribe(null);
+        PushBroker.Subscriber single = broker.subscribe(Collections.singleton(2L));
+
+        broker.onUpdate(createEntry(1, 1));
+        broker.onUpdate(createEntry(2, 2));
+        broker.onUpdate(createEntry(1, 3));
+
+        List<FleetState.Entry> entries = all.drain();
+        assertEquals(2, entries.size());
+        assertEquals(2, entries.get(0).getVersion());
+        assertEquals(3, entries.get(1).getVersion());
+        assertTrue(all.drain().isEmpty());
+
+        entries = single.drain();
+        assertEquals(1, entries.size());
+        assertEquals(Long.valueOf(2), entries.get(0).getPosition().getDeviceId());
+    }
+
+    @Test
+    public void testOverflow() {
+
+        PushBroker broker = new PushBroker(2, 60000);
+        PushBroker.Subscriber subscriber = broker.subscribe(null);
+
+        broker.onUpdate(createEntry(1, 1));
+        broker.onUpdate(createEntry(2, 2));
+        broker.onUpdate(createEntry(3, 3));
+
+        assertTrue(subscriber.takeOverflow());
+        assertFalse(subscriber.takeOverflow());
+        List<FleetState.Entry> entries = subscriber.drain();
+        assertEquals(2, entries.size());
+        assertEquals(2, entries.get(0).getVersion());
+    }
+
+    @Test
+    public void testWaiter() {
+
+        PushBroker broker = new PushBroker(10, 60000);
+        PushBroker.Subscriber subscriber = broker.subscribe(null);
+        final AtomicInteger woken = new AtomicInteger();
+        PushBroker.Waiter waiter = new PushBroker.Waiter() {
+            @Override
+            public void wake() {
+                woken.incrementAndGet();
+            }
+        };
+
+        assertTrue(subscriber.await(waiter));
+        broker.onUpdate(createEntry(1, 1));
+        assertEquals(1, woken.get());
+        assertFalse(subscriber.cancel(waiter));
+
+        // Data is already waiting
+        assertFalse(subscriber.await(waiter));
+
+        subscriber.drain();
+        assertTrue(subscriber.await(waiter));
+        assertTrue(subscriber.cancel(waiter));
+        broker.onUpdate(createEntry(1, 2));
+        assertEquals(1, woken.get());
+    }
+
+    @Test
+    public void testUnsubscribe() {
+
+        PushBroker broker = new PushBroker(10, 60000);
+        PushBroker.Subscriber subscriber = broker.subscribe(Collections.singleton(1L));
+        assertSame(subscriber, broker.getSubscriber(subscriber.getId()));
+
+        broker.unsubscribe(subscriber);
+        assertNull(broker.getSubscriber(subscriber.getId()));
+        broker.onUpdate(createEntry(1, 1));
+        assertTrue(subscriber.drain().isEmpty());
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.traccar.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static org.junit.Assert.*;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.traccar.FleetState;
+import org.traccar.helper.TestPositions;
+
+public class PushServletTest {
+
+    private Server server;
+    private FleetState state;
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        state = new FleetState();
+        PushBroker broker = new PushBroker(100, 60000);
+        state.addListener(broker);
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/api/push");
+        ServletHolder holder = new ServletHolder(new PushServlet(state, broker, 500));
+        holder.setAsyncSupported(true);
+        context.addServlet(holder, "/*");
+        server.setHandler(context);
+        server.start();
+        url = "http://127.0.0.1:" + server.getConnectors()[0].getLocalPort() + "/api/push";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    private HttpURLConnection request(String query) throws Exception {
+        return (HttpURLConnection) new URL(url + query).openConnection();
+    }
+
+    private String read(HttpURLConnection connection) throws Exception {
+        InputStream in = connection.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private static String getSubscription(String body) {
+        Matcher matcher = Pattern.compile("\"subscription\":\"([^\"]+)\"").matcher(body);
+        assertTrue(matcher.find());
+        return matcher.group(1);
+    }
+
+    @Test
+    public void testPoll() throws Exception {
+
+        state.update(TestPositions.create(1, 1000, 60.0));
+
+        String body = read(request("?devices=1,2"));
+        assertTrue(body.contains("\"deviceId\":1"));
+        String subscription = getSubscription(body);
+
+        // Waiting request is answered when position arrives
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException error) {
+                    return;
+                }
+                state.update(TestPositions.create(2, 2000, 60.0));
+                state.update(TestPositions.create(3, 2000, 60.0));
+            }
+        }.start();
+        body = read(request("?subscription=" + subscription));
+        assertTrue(body.contains("\"deviceId\":2"));
+        assertFalse(body.contains("\"deviceId\":3"));
+
+        // Timeout gives empty response
+        long start = System.currentTimeMillis();
+        body = read(request("?subscription=" + subscription));
+        assertTrue(body.endsWith("\"positions\":[]}"));
+        assertTrue(System.currentTimeMillis() - start >= 400);
+
+        assertEquals(404, request("?subscription=unknown").getResponseCode());
+        assertEquals(400, request("?devices=x").getResponseCode());
+    }
+
+}
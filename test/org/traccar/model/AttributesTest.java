@@ -0,0 +1,68 @@
+package org.traccar.model;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class AttributesTest {
+
+    @Test
+    public void testTypes() {
+
+        Attributes attributes = new Attributes();
+        attributes.set("index", (Object) 15);
+        attributes.set("power", (Object) 12.5);
+        attributes.set("alarm", (Object) true);
+        attributes.set("status", (Object) "A");
+
+        assertEquals(4, attributes.size());
+        assertEquals(Long.valueOf(15), attributes.get("index"));
+        assertEquals(Long.valueOf(15), attributes.getLong("index"));
+        assertEquals(Double.valueOf(12.5), attributes.getDouble("power"));
+        assertEquals(Boolean.TRUE, attributes.get("alarm"));
+        assertEquals("A", attributes.get("status"));
+        assertNull(attributes.getLong("status"));
+        assertNull(attributes.get("unknown"));
+
+        // Keys are compared by value, not only by reference
+        assertTrue(attributes.contains(new String("index")));
+        assertSame(Attributes.intern(new String("index")), attributes.getKey(0));
+
+        attributes.set("index", (Object) "16");
+        assertEquals(4, attributes.size());
+        assertEquals(Long.valueOf(16), attributes.getLong("index"));
+    }
+
+    @Test
+    public void testGrow() {
+
+        Attributes attributes = new Attributes();
+        for (int i = 0; i < 20; i++) {
+            attributes.set("key" + i, (Object) ("value" + i));
+        }
+        assertEquals(20, attributes.size());
+        assertEquals("value19", attributes.get("key19"));
+    }
+
+    @Test
+    public void testFormat() {
+
+        ExtendedInfoFormatter extendedInfo = new ExtendedInfoFormatter("test");
+        extendedInfo.set("index", 1);
+        extendedInfo.set("power", 12.5);
+        extendedInfo.set("empty", "");
+        extendedInfo.set("missing", null);
+        extendedInfo.set("name", "a\"b");
+
+        assertEquals(
+                "<info><protocol>test</protocol><index>1</index><power>12.5</power><name>a\"b</name></info>",
+                extendedInfo.toString());
+        assertEquals(
+                "{\"protocol\":\"test\",\"index\":1,\"power\":12.5,\"name\":\"a\\\"b\"}",
+                extendedInfo.getAttributes().toJson());
+
+        Position position = new Position();
+        position.setAttributes(extendedInfo.getAttributes());
+        assertEquals(extendedInfo.toString(), position.getExtendedInfo());
+    }
+
+}
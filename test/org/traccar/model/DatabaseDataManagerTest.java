@@ -0,0 +1,128 @@
+package org.traccar.model;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.traccar.helper.TestPositions;
+
+public class DatabaseDataManagerTest {
+
+    private static final String URL = "jdbc:h2:mem:manager;DB_CLOSE_DELAY=-1";
+
+    public static Properties createProperties(String url) throws Exception {
+        Class.forName("org.h2.Driver");
+        Connection connection = DriverManager.getConnection(url, "sa", "");
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("CREATE TABLE IF NOT EXISTS devices (id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+                    + " uniqueId VARCHAR(128), name VARCHAR(128), latestPosition_id BIGINT)");
+            statement.execute("CREATE TABLE IF NOT EXISTS positions (id BIGINT AUTO_INCREMENT PRIMARY KEY,"
+                    + " device_id BIGINT, time TIMESTAMP, valid BOOLEAN, latitude DOUBLE, longitude DOUBLE,"
+                    + " altitude DOUBLE, speed DOUBLE, course DOUBLE, power DOUBLE, other VARCHAR(4096))");
+        } finally {
+            connection.close();
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("database.driver", "org.h2.Driver");
+        properties.setProperty("database.url", url);
+        properties.setProperty("database.user", "sa");
+        properties.setProperty("database.password", "");
+        properties.setProperty("database.refreshDelay", "0");
+        properties.setProperty("database.selectDevice", "SELECT id, uniqueId AS imei FROM devices;");
+        properties.setProperty("database.selectDeviceByImei",
+                "SELECT id, uniqueId AS imei FROM devices WHERE uniqueId = :imei;");
+        properties.setProperty("database.addDevice", "INSERT INTO devices (uniqueId, name) VALUES (:imei, :name);");
+        properties.setProperty("database.insertPosition",
+                "INSERT INTO positions (device_id, time, valid, latitude, longitude, altitude, speed, course,"
+                + " power, other) VALUES (:device_id, :time, :valid, :latitude, :longitude, :altitude, :speed,"
+                + " :course, :power, :extended_info);");
+        properties.setProperty("database.updateLatestPosition",
+                "UPDATE devices SET latestPosition_id = :id WHERE id = :device_id;");
+        return properties;
+    }
+
+    @Test
+    public void testAddPositions() throws Exception {
+
+        DatabaseDataManager dataManager = new DatabaseDataManager(createProperties(URL));
+        try {
+            for (int round = 0; round < 2; round++) {
+                List<Position> positions = new ArrayList<Position>();
+                for (long i = 1; i <= 5; i++) {
+                    positions.add(TestPositions.create(i, 1000, 60.0));
+                }
+                dataManager.addPositions(positions);
+
+                // Every position gets own id, also when driver returns only last batch key
+                Set<Long> ids = new HashSet<Long>();
+                for (Position position : positions) {
+                    assertNotNull(position.getId());
+                    ids.add(position.getId());
+                }
+                assertEquals(5, ids.size());
+            }
+        } finally {
+            dataManager.close();
+        }
+    }
+
+    @Test
+    public void testAddPosition() throws Exception {
+
+        DatabaseDataManager dataManager = new DatabaseDataManager(createProperties(URL));
+        Connection connection = DriverManager.getConnection(URL, "sa", "");
+        try {
+            Long id = dataManager.addPosition(TestPositions.create(7, 1000, 60.0));
+            assertNotNull(id);
+
+            ResultSet result = connection.createStatement().executeQuery(
+                    "SELECT device_id FROM positions WHERE id = " + id);
+            assertTrue(result.next());
+            assertEquals(7, result.getLong(1));
+        } finally {
+            connection.close();
+            dataManager.close();
+        }
+    }
+
+    @Test
+    public void testAddExistingDevice() throws Exception {
+
+        DatabaseDataManager dataManager = new DatabaseDataManager(createProperties(URL));
+        Connection connection = DriverManager.getConnection(URL, "sa", "");
+        try {
+            // Device created elsewhere after negative result was cached
+            assertNull(dataManager.getDeviceByImei("100000000000001"));
+            connection.createStatement().execute(
+                    "INSERT INTO devices (uniqueId, name) VALUES ('100000000000001', 'test')");
+            assertNull(dataManager.getDeviceByImei("100000000000001"));
+
+            List<String> imeis = new ArrayList<String>();
+            imeis.add("100000000000001");
+            imeis.add("100000000000002");
+            List<Device> devices = dataManager.addDevices(imeis);
+            assertEquals(2, devices.size());
+            assertEquals("100000000000001", devices.get(0).getImei());
+            assertEquals("100000000000002", devices.get(1).getImei());
+
+            ResultSet result = connection.createStatement().executeQuery(
+                    "SELECT COUNT(*) FROM devices WHERE uniqueId = '100000000000001'");
+            result.next();
+            assertEquals(1, result.getInt(1));
+            assertEquals(devices.get(0).getId(), dataManager.getDeviceByImei("100000000000001").getId());
+        } finally {
+            connection.close();
+            dataManager.close();
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package org.traccar.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class DeviceRegistryTest {
+
+    private static Device createDevice(long id, String imei) {
+        Device device = new Device();
+        device.setId(id);
+        device.setImei(imei);
+        return device;
+    }
+
+    private static class TestLoader implements DeviceRegistry.Loader {
+
+        private final List<Device> table = new ArrayList<Device>();
+        private final List<Long> requests = new ArrayList<Long>();
+        private final List<Device> changed = new ArrayList<Device>();
+
+        @Override
+        public synchronized List<Device> load(Long sinceId) {
+            requests.add(sinceId);
+            List<Device> result = new ArrayList<Device>();
+            for (Device device : table) {
+                if (sinceId == null || device.getId() > sinceId) {
+                    result.add(device);
+                }
+            }
+            if (sinceId != null) {
+                result.addAll(changed);
+            }
+            return result;
+        }
+
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+
+        TestLoader loader = new TestLoader();
+        loader.table.add(createDevice(1, "111"));
+        loader.table.add(createDevice(2, "222"));
+
+        DeviceRegistry registry = new DeviceRegistry(loader, 0, 0, 60000);
+        registry.loadAll();
+        assertEquals(2, registry.size());
+        assertEquals(Long.valueOf(1), registry.getDeviceByImei("111").getId());
+
+        // Hits don't touch the database
+        assertEquals(1, loader.requests.size());
+
+        // Miss loads only new rows
+        loader.table.add(createDevice(3, "333"));
+        Thread.sleep(2);
+        assertEquals(Long.valueOf(3), registry.getDeviceByImei("333").getId());
+        assertEquals(Long.valueOf(2), loader.requests.get(1));
+    }
+
+    @Test
+    public void testUnknown() throws Exception {
+
+        TestLoader loader = new TestLoader();
+        DeviceRegistry registry = new DeviceRegistry(loader, 0, 0, 60000);
+        registry.loadAll();
+
+        Thread.sleep(2);
+        assertNull(registry.getDeviceByImei("444"));
+        int requests = loader.requests.size();
+
+        // Negative result is cached
+        Thread.sleep(2);
+        assertNull(registry.getDeviceByImei("444"));
+        assertEquals(requests, loader.requests.size());
+
+        // Created device is visible immediately
+        registry.add(createDevice(4, "444"));
+        assertEquals(Long.valueOf(4), registry.getDeviceByImei("444").getId());
+    }
+
+    @Test
+    public void testFullReload() throws Exception {
+
+        TestLoader loader = new TestLoader();
+        loader.table.add(createDevice(1, "111"));
+        loader.table.add(createDevice(2, "222"));
+
+        DeviceRegistry registry = new DeviceRegistry(loader, 0, 0, 0);
+        registry.loadAll();
+
+        loader.table.remove(0);
+        registry.add(createDevice(5, "555"));
+        registry.loadAll();
+
+        assertEquals(2, registry.size());
+        assertNotNull(registry.getDeviceByImei("555"));
+    }
+
+    @Test
+    public void testMissDuringReload() throws Exception {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final TestLoader loader = new TestLoader() {
+            @Override
+            public List<Device> load(Long sinceId) {
+                if (sinceId == null) {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException error) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.load(sinceId);
+            }
+        };
+        loader.table.add(createDevice(1, "111"));
+
+        final DeviceRegistry registry = new DeviceRegistry(loader, 0, 0, 60000);
+        Thread reload = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    registry.loadAll();
+                } catch (Exception error) {
+                    throw new RuntimeException(error);
+                }
+            }
+        };
+        reload.start();
+        started.await();
+
+        // Miss is answered without waiting for the full reload
+        long start = System.currentTimeMillis();
+        assertNull(registry.getDeviceByImei("111"));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+
+        release.countDown();
+        reload.join();
+
+        // Loaded device replaces negative result
+        assertEquals(Long.valueOf(1), registry.getDeviceByImei("111").getId());
+    }
+
+    @Test
+    public void testChangedImei() throws Exception {
+
+        TestLoader loader = new TestLoader();
+        loader.table.add(createDevice(1, "111"));
+
+        DeviceRegistry registry = new DeviceRegistry(loader, 0, 0, 60000);
+        registry.loadAll();
+
+        loader.table.set(0, createDevice(1, "999"));
+        loader.changed.add(loader.table.get(0));
+        registry.refresh();
+
+        assertEquals(1, registry.size());
+        assertEquals(Long.valueOf(1), registry.getDeviceByImei("999").getId());
+        assertNull(registry.getDeviceByImei("111"));
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.traccar.model;
+
+import java.util.Date;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class PositionTest {
+
+    @Test
+    public void testPresence() {
+
+        Position position = new Position();
+        assertFalse(position.hasTime());
+        assertNull(position.getTime());
+        assertNull(position.getValid());
+        assertNull(position.getLatitude());
+        assertNull(position.getServerTime());
+
+        position.setTime(new Date(1000));
+        position.setValid(false);
+        position.setLatitude(60.5);
+        position.setLongitude(Double.valueOf(-30.25));
+        position.setServerTimeMillis(2000);
+
+        assertTrue(position.hasTime());
+        assertEquals(1000, position.getTimeMillis());
+        assertEquals(new Date(1000), position.getTime());
+        assertEquals(Boolean.FALSE, position.getValid());
+        assertEquals(60.5, position.getLatitude(), 0.0);
+        assertEquals(-30.25, position.getLongitudeValue(), 0.0);
+        assertEquals(new Date(2000), position.getServerTime());
+
+        position.setTime(null);
+        position.setLatitude((Double) null);
+        assertFalse(position.hasTime());
+        assertFalse(position.hasLatitude());
+        assertNull(position.getLatitude());
+        assertTrue(position.hasLongitude());
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.traccar.protocol;
+
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+public class H02FrameDecoderTest {
+
+    @Test
+    public void testDecode() throws Exception {
+
+        H02FrameDecoder decoder = new H02FrameDecoder();
+
+        ChannelBuffer buf = ChannelBuffers.copiedBuffer(
+                "xx*HQ,123,V1#*HQ,456", Charset.defaultCharset());
+
+        ChannelBuffer frame = (ChannelBuffer) decoder.decode(null, null, buf);
+        assertEquals("*HQ,123,V1#", frame.toString(Charset.defaultCharset()));
+        assertEquals(0, frame.readerIndex());
+
+        assertNull(decoder.decode(null, null, buf));
+        assertEquals("*HQ,456", buf.toString(Charset.defaultCharset()));
+
+        assertNull(decoder.decode(null, null, ChannelBuffers.copiedBuffer("abc", Charset.defaultCharset())));
+
+    }
+
+}
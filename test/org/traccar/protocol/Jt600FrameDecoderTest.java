@@ -0,0 +1,32 @@
+package org.traccar.protocol;
+
+import java.nio.charset.Charset;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+public class Jt600FrameDecoderTest {
+
+    @Test
+    public void testDecode() throws Exception {
+
+        Jt600FrameDecoder decoder = new Jt600FrameDecoder();
+
+        byte[] binary = {0x24,0x31,0x10,0x21,0x60,0x01,0x11,0x00,0x1B,0x16,0x02,0x11,0x05,0x59,0x10,0x22,0x32,(byte)0x98,0x62,0x11,0x40,0x46,0x22,0x7B,0x05,(byte)0x98,0x09,0x50,(byte)0x80,0x01,0x23,0x27,(byte)0x95,0x14,0x35,0x16,0x1F};
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+        buf.writeBytes(binary);
+        buf.writeBytes("(3110312099,W01,company)".getBytes(Charset.defaultCharset()));
+
+        ChannelBuffer frame = (ChannelBuffer) decoder.decode(null, null, buf);
+        assertEquals(binary.length, frame.readableBytes());
+
+        frame = (ChannelBuffer) decoder.decode(null, null, buf);
+        assertEquals("(3110312099,W01,company)", frame.toString(Charset.defaultCharset()));
+
+        assertNull(decoder.decode(null, null, ChannelBuffers.wrappedBuffer(binary, 0, 20)));
+
+    }
+
+}